@@ -5,14 +5,28 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.beans.factory.annotation.Value;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import lombok.extern.slf4j.Slf4j;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Configuration
 public class RedisConfig {
     
@@ -25,13 +39,54 @@ public class RedisConfig {
     @Value("${spring.redis.database:0}")
     private int redisDatabase;
     
+    @Value("${spring.redis.password:}")
+    private String redisPassword;
+    
+    // 哨兵模式：主节点名称和哨兵节点列表（host:port，逗号分隔），配置了主节点名称时启用
+    @Value("${spring.redis.sentinel.master:}")
+    private String sentinelMaster;
+    
+    @Value("${spring.redis.sentinel.nodes:}")
+    private String sentinelNodes;
+    
+    // 集群模式：集群节点列表（host:port，逗号分隔），配置了节点时启用
+    @Value("${spring.redis.cluster.nodes:}")
+    private String clusterNodes;
+    
+    @Value("${spring.redis.cluster.max-redirects:3}")
+    private int clusterMaxRedirects;
+    
     @Bean
     public LettuceConnectionFactory redisConnectionFactory() {
-        // Redis配置
-        RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration();
-        redisConfig.setHostName(redisHost);
-        redisConfig.setPort(redisPort);
-        redisConfig.setDatabase(redisDatabase);
+        // Redis配置：与Spring Boot一致，依次检查哨兵、集群，都未配置时使用单机
+        RedisConfiguration redisConfig;
+        boolean cluster = false;
+        List<String> sentinels = splitNodes(sentinelNodes);
+        List<String> clusterList = splitNodes(clusterNodes);
+        if (!sentinelMaster.trim().isEmpty()) {
+            if (sentinels.isEmpty()) {
+                throw new IllegalStateException("spring.redis.sentinel.nodes is required when spring.redis.sentinel.master is set");
+            }
+            RedisSentinelConfiguration sentinelConfig = new RedisSentinelConfiguration(sentinelMaster.trim(), new HashSet<>(sentinels));
+            sentinelConfig.setDatabase(redisDatabase);
+            sentinelConfig.setPassword(RedisPassword.of(redisPassword));
+            redisConfig = sentinelConfig;
+            log.info("Redis sentinel mode, master: {}, sentinels: {}", sentinelMaster, sentinels);
+        } else if (!clusterList.isEmpty()) {
+            RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(clusterList);
+            clusterConfig.setMaxRedirects(clusterMaxRedirects);
+            clusterConfig.setPassword(RedisPassword.of(redisPassword));
+            redisConfig = clusterConfig;
+            cluster = true;
+            log.info("Redis cluster mode, nodes: {}", clusterList);
+        } else {
+            RedisStandaloneConfiguration standaloneConfig = new RedisStandaloneConfiguration();
+            standaloneConfig.setHostName(redisHost);
+            standaloneConfig.setPort(redisPort);
+            standaloneConfig.setDatabase(redisDatabase);
+            standaloneConfig.setPassword(RedisPassword.of(redisPassword));
+            redisConfig = standaloneConfig;
+        }
         
         // 连接池配置
         GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
@@ -44,17 +99,33 @@ public class RedisConfig {
         poolConfig.setTestWhileIdle(true);
         
         // Lettuce客户端配置
-        LettucePoolingClientConfiguration clientConfig = LettucePoolingClientConfiguration.builder()
+        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder clientBuilder = LettucePoolingClientConfiguration.builder()
                 .poolConfig(poolConfig)
                 .commandTimeout(Duration.ofSeconds(5))
-                .shutdownTimeout(Duration.ofSeconds(10))
-                .build();
+                .shutdownTimeout(Duration.ofSeconds(10));
+        if (cluster) {
+            // 集群拓扑刷新：定期刷新，并在收到 MOVED / ASK 重定向或连接断开时立即刷新，主从切换后尽快路由到新的主节点
+            clientBuilder.clientOptions(ClusterClientOptions.builder()
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enablePeriodicRefresh(Duration.ofSeconds(30))
+                            .enableAllAdaptiveRefreshTriggers()
+                            .build())
+                    .build());
+        }
+        LettucePoolingClientConfiguration clientConfig = clientBuilder.build();
         
         LettuceConnectionFactory factory = new LettuceConnectionFactory(redisConfig, clientConfig);
         factory.setValidateConnection(true);
         return factory;
     }
     
+    private static List<String> splitNodes(String nodes) {
+        return Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .collect(Collectors.toList());
+    }
+    
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
@@ -73,4 +144,22 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
-}
\ No newline at end of file
+    
+    /**
+     * 延迟队列专用模板：成员与参数均按原始字符串读写，便于Lua脚本直接处理
+     */
+    @Bean
+    public StringRedisTemplate stringRedisTemplate(RedisConnectionFactory connectionFactory) {
+        return new StringRedisTemplate(connectionFactory);
+    }
+    
+    /**
+     * Redis发布/订阅监听容器，用于接收跨实例的延迟队列唤醒通知
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+}
@@ -1,6 +1,12 @@
 package com.example.controller;
 
+import com.example.queue.BulkAction;
+import com.example.queue.DelayedTask;
+import com.example.queue.QueueDefinition;
 import com.example.queue.RedisDelayQueue;
+import com.example.queue.TaskFilter;
+import com.example.queue.TaskPage;
+import com.example.queue.TaskRecord;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 
@@ -10,6 +16,8 @@ import java.util.*;
 @RequestMapping("/api")
 public class DelayQueueController {
 
+    private static final int MAX_BATCH_SIZE = 10000;
+
     private final RedisDelayQueue delayQueue;
 
     public DelayQueueController(RedisDelayQueue delayQueue) {
@@ -17,13 +25,26 @@ public class DelayQueueController {
     }
 
     @GetMapping("/delay-queue/add")
-    public String addTask(@RequestParam String taskId, @RequestParam long delaySeconds) {
-        delayQueue.addTask(taskId, delaySeconds);
+    public String addTask(@RequestParam String taskId, @RequestParam long delaySeconds,
+                          @RequestParam(required = false) String queueName,
+                          @RequestParam(required = false) String taskType) {
+        if ((queueName == null || queueName.trim().isEmpty()) && (taskType == null || taskType.trim().isEmpty())) {
+            delayQueue.addTask(taskId, delaySeconds);
+        } else {
+            // 未指定任务类型时从任务ID中取出
+            TaskRecord record = TaskRecord.ofId(taskId);
+            if (taskType != null && !taskType.trim().isEmpty()) {
+                record.setTaskType(taskType.trim());
+            }
+            record.setQueueName(queueName);
+            delayQueue.addTask(record, delaySeconds);
+        }
         return "Task added successfully";
     }
 
     @PostMapping("/delay-queue/tasks")
-    public ResponseEntity<Map<String, Object>> createTask(@RequestBody TaskRequest request) {
+    public ResponseEntity<Map<String, Object>> createTask(@RequestBody TaskRequest request,
+                                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         Map<String, Object> response = new HashMap<>();
         try {
             // 验证必要字段
@@ -37,9 +58,9 @@ public class DelayQueueController {
                 throw new IllegalArgumentException("延迟时间不能为负数");
             }
             
-            // 生成任务ID并添加到延迟队列
-            String taskId = request.generateTaskId();
-            delayQueue.addTask(taskId, request.getDelayTime());
+            // 添加到延迟队列，未指定任务ID时自动生成；幂等键可通过请求头或请求体传入
+            String key = idempotencyKey != null ? idempotencyKey : request.getIdempotencyKey();
+            String taskId = delayQueue.addTask(request.toTaskRecord(request.getTaskId()), request.getDelayTime(), key);
             response.put("success", true);
             response.put("message", "任务创建成功");
             response.put("data", Map.of("taskId", taskId));
@@ -51,14 +72,86 @@ public class DelayQueueController {
         }
     }
 
+    @PostMapping("/delay-queue/tasks/batch")
+    public ResponseEntity<Map<String, Object>> createTasks(@RequestBody List<TaskRequest> requests) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (requests == null || requests.isEmpty()) {
+                throw new IllegalArgumentException("任务列表不能为空");
+            }
+            if (requests.size() > MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("单次最多添加" + MAX_BATCH_SIZE + "个任务");
+            }
+            List<DelayedTask> tasks = new ArrayList<>(requests.size());
+            for (TaskRequest request : requests) {
+                tasks.add(new DelayedTask(request.toTaskRecord(request.getTaskId()), request.getDelayTime(),
+                        request.getIdempotencyKey()));
+            }
+            List<Map<String, Object>> results = delayQueue.addTasks(tasks);
+            long succeeded = results.stream().filter(result -> Boolean.TRUE.equals(result.get("success"))).count();
+            response.put("success", true);
+            response.put("message", "成功添加" + succeeded + "个任务，失败" + (results.size() - succeeded) + "个");
+            response.put("data", Map.of("succeeded", succeeded, "failed", results.size() - succeeded, "results", results));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "批量创建任务失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    // 批量操作请求参数：taskIds 与筛选条件二选一
+    public static class BulkTaskRequest {
+        private BulkAction action;
+        private String queueName;
+        private List<String> taskIds;
+        private String taskType;
+        private Long fromTime;
+        private Long toTime;
+        private Long delaySeconds;
+        
+        public BulkAction getAction() { return action; }
+        public void setAction(BulkAction action) { this.action = action; }
+        
+        public String getQueueName() { return queueName; }
+        public void setQueueName(String queueName) { this.queueName = queueName; }
+        
+        public List<String> getTaskIds() { return taskIds; }
+        public void setTaskIds(List<String> taskIds) { this.taskIds = taskIds; }
+        
+        public String getTaskType() { return taskType; }
+        public void setTaskType(String taskType) { this.taskType = taskType; }
+        
+        public Long getFromTime() { return fromTime; }
+        public void setFromTime(Long fromTime) { this.fromTime = fromTime; }
+        
+        public Long getToTime() { return toTime; }
+        public void setToTime(Long toTime) { this.toTime = toTime; }
+        
+        public Long getDelaySeconds() { return delaySeconds; }
+        public void setDelaySeconds(Long delaySeconds) { this.delaySeconds = delaySeconds; }
+    }
+
     // 内部类用于接收请求参数
     public static class TaskRequest {
+        private String taskId;
+        private String idempotencyKey;
         private String queueName;
         private String taskType;
         private String taskData;
         private long delayTime;
         private String priority;
         private int maxRetries;
+        // 重复任务：FIXED_RATE / FIXED_DELAY 需要 intervalMs，CRON 需要 cron（秒 分 时 日 月 周）
+        private String recurrence;
+        private Long intervalMs;
+        private String cron;
+        
+        public String getTaskId() { return taskId; }
+        public void setTaskId(String taskId) { this.taskId = taskId; }
+        
+        public String getIdempotencyKey() { return idempotencyKey; }
+        public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
         
         public String getQueueName() { return queueName; }
         public void setQueueName(String queueName) { this.queueName = queueName; }
@@ -78,9 +171,29 @@ public class DelayQueueController {
         public int getMaxRetries() { return maxRetries; }
         public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
         
-        // 生成唯一的任务ID
-        public String generateTaskId() {
-            return taskType + "_" + System.currentTimeMillis();
+        public String getRecurrence() { return recurrence; }
+        public void setRecurrence(String recurrence) { this.recurrence = recurrence; }
+        
+        public Long getIntervalMs() { return intervalMs; }
+        public void setIntervalMs(Long intervalMs) { this.intervalMs = intervalMs; }
+        
+        public String getCron() { return cron; }
+        public void setCron(String cron) { this.cron = cron; }
+        
+        // 转换为随调度项一同存储的任务记录，任务ID为空时由延迟队列生成
+        public TaskRecord toTaskRecord(String taskId) {
+            TaskRecord record = new TaskRecord();
+            record.setId(taskId != null && !taskId.trim().isEmpty() ? taskId : null);
+            record.setTaskType(taskType);
+            record.setQueueName(queueName);
+            record.setPayload(taskData);
+            record.setPriority(priority);
+            record.setMaxRetries(maxRetries > 0 ? maxRetries : null);
+            record.setAttempts(0);
+            record.setRecurrence(recurrence);
+            record.setIntervalMs(intervalMs);
+            record.setCron(cron);
+            return record;
         }
      }
 
@@ -89,8 +202,10 @@ public class DelayQueueController {
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(required = false) String status,
-            @RequestParam(required = false) String keyword) {
-        return getTasksInternal(page, size, status, keyword, null);
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String queueName,
+            @RequestParam(required = false) String cursor) {
+        return getTasksInternal(page, size, status, keyword, queueName, cursor);
     }
 
     @GetMapping("/tasks/my")
@@ -99,8 +214,9 @@ public class DelayQueueController {
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(required = false) String taskId,
             @RequestParam(required = false) String queueName,
-            @RequestParam(required = false) String status) {
-        return getTasksInternal(page, size, status, taskId, queueName);
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor) {
+        return getTasksInternal(page, size, status, taskId, queueName, cursor);
     }
 
     private ResponseEntity<Map<String, Object>> getTasksInternal(
@@ -108,48 +224,21 @@ public class DelayQueueController {
             int size,
             String status,
             String keyword,
-            String queueName) {
+            String queueName,
+            String cursor) {
         Map<String, Object> response = new HashMap<>();
         try {
-            // 从Redis获取所有任务
-            Set<Object> allTasks = delayQueue.getAllPendingTasks();
-            List<Map<String, Object>> taskList = new ArrayList<>();
-            
-            long currentTime = System.currentTimeMillis();
-            for (Object taskObj : allTasks) {
-                String taskId = taskObj.toString();
-                Double executeTime = delayQueue.getTaskScore(taskId);
-                
-                // 过滤条件
-                if (keyword != null && !keyword.trim().isEmpty() && !taskId.contains(keyword)) {
-                    continue;
-                }
-                
-                Map<String, Object> task = new HashMap<>();
-                task.put("id", taskId);
-                task.put("taskType", taskId.split("_")[0]); // 从taskId中提取类型
-                task.put("executeTime", executeTime != null ? executeTime.longValue() : currentTime);
-                task.put("status", executeTime != null && executeTime > currentTime ? "PENDING" : "READY");
-                task.put("createTime", currentTime);
-                task.put("priority", "NORMAL");
-                taskList.add(task);
-            }
-            
-            // 简单分页处理
-            int totalElements = taskList.size();
-            int totalPages = (int) Math.ceil((double) totalElements / size);
-            int startIndex = page * size; // page从0开始，直接使用page * size
-            int endIndex = Math.min(startIndex + size, totalElements);
-            
-            List<Map<String, Object>> pagedTasks = (startIndex < totalElements && startIndex >= 0) ? 
-                taskList.subList(startIndex, endIndex) : new ArrayList<>();
+            // 只从Redis读取一页任务；传入上一页的 nextCursor 可以继续翻页，不受深度限制
+            TaskPage taskPage = delayQueue.listTasks(queueName, status, keyword, cursor, page * size, size); // page从0开始，直接使用page * size
+            long totalElements = taskPage.getTotalElements() >= 0 ? taskPage.getTotalElements() : taskPage.getContent().size();
             
             Map<String, Object> pageData = new HashMap<>();
-            pageData.put("content", pagedTasks);
+            pageData.put("content", taskPage.getContent());
             pageData.put("totalElements", totalElements);
-            pageData.put("totalPages", totalPages);
+            pageData.put("totalPages", (int) Math.ceil((double) totalElements / size));
             pageData.put("size", size);
             pageData.put("number", page); // 返回原始的page值
+            pageData.put("nextCursor", taskPage.getNextCursor());
             
             response.put("success", true);
             response.put("data", pageData);
@@ -162,10 +251,10 @@ public class DelayQueueController {
     }
 
     @GetMapping("/delay-queue/stats")
-    public ResponseEntity<Map<String, Object>> getStats() {
+    public ResponseEntity<Map<String, Object>> getStats(@RequestParam(required = false) String queueName) {
         Map<String, Object> response = new HashMap<>();
         try {
-            Map<String, Long> stats = delayQueue.getTaskStats();
+            Map<String, Long> stats = queueName != null ? delayQueue.getTaskStats(queueName) : delayQueue.getTaskStats();
             response.put("success", true);
             response.put("data", stats);
             return ResponseEntity.ok(response);
@@ -176,11 +265,33 @@ public class DelayQueueController {
         }
     }
 
+    @GetMapping("/delay-queue/metrics")
+    public ResponseEntity<Map<String, Object>> getMetrics() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Map<String, Object> metrics = new HashMap<>();
+            metrics.put("latency", delayQueue.getLatencySummary());
+            metrics.put("fireLag", delayQueue.getFireLagStats());
+            metrics.put("handlerLatency", delayQueue.getHandlerLatencyStats());
+            metrics.put("handlers", delayQueue.getHandlerStats());
+            metrics.put("rateLimits", delayQueue.getRateLimits());
+            metrics.put("journal", delayQueue.getJournalStats());
+            response.put("success", true);
+            response.put("data", metrics);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "获取队列指标失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     @PostMapping("/delay-queue/tasks/{taskId}/retry")
-    public ResponseEntity<Map<String, Object>> retryTask(@PathVariable String taskId) {
+    public ResponseEntity<Map<String, Object>> retryTask(@PathVariable String taskId,
+                                                        @RequestParam(required = false) String queueName) {
         Map<String, Object> response = new HashMap<>();
         try {
-            boolean success = delayQueue.retryTask(taskId);
+            boolean success = delayQueue.retryTask(taskId, queueName);
             if (success) {
                 response.put("success", true);
                 response.put("message", "任务重试成功");
@@ -198,10 +309,11 @@ public class DelayQueueController {
     }
 
     @PostMapping("/delay-queue/tasks/{taskId}/cancel")
-    public ResponseEntity<Map<String, Object>> cancelTask(@PathVariable String taskId) {
+    public ResponseEntity<Map<String, Object>> cancelTask(@PathVariable String taskId,
+                                                        @RequestParam(required = false) String queueName) {
         Map<String, Object> response = new HashMap<>();
         try {
-            boolean success = delayQueue.cancelTask(taskId);
+            boolean success = delayQueue.cancelTask(taskId, queueName);
             if (success) {
                 response.put("success", true);
                 response.put("message", "任务取消成功");
@@ -219,10 +331,11 @@ public class DelayQueueController {
     }
 
     @DeleteMapping("/delay-queue/tasks/{taskId}")
-    public ResponseEntity<Map<String, Object>> deleteTask(@PathVariable String taskId) {
+    public ResponseEntity<Map<String, Object>> deleteTask(@PathVariable String taskId,
+                                                          @RequestParam(required = false) String queueName) {
         Map<String, Object> response = new HashMap<>();
         try {
-            boolean success = delayQueue.deleteTask(taskId);
+            boolean success = delayQueue.deleteTask(taskId, queueName);
             if (success) {
                 response.put("success", true);
                 response.put("message", "任务删除成功");
@@ -238,4 +351,160 @@ public class DelayQueueController {
             return ResponseEntity.badRequest().body(response);
         }
     }
+
+    @PostMapping("/delay-queue/tasks/bulk")
+    public ResponseEntity<Map<String, Object>> bulkUpdateTasks(@RequestBody BulkTaskRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            if (request.getAction() == null) {
+                throw new IllegalArgumentException("操作类型不能为空");
+            }
+            Long executeTime = null;
+            if (request.getDelaySeconds() != null) {
+                if (request.getDelaySeconds() < 0) {
+                    throw new IllegalArgumentException("延迟时间不能为负数");
+                }
+                try {
+                    executeTime = Math.addExact(System.currentTimeMillis(), Math.multiplyExact(request.getDelaySeconds(), 1000L));
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException("延迟时间超出范围");
+                }
+            }
+            long affected;
+            if (request.getTaskIds() != null && !request.getTaskIds().isEmpty()) {
+                affected = delayQueue.bulkApply(request.getAction(), request.getTaskIds(), request.getQueueName(), executeTime);
+            } else {
+                // 没有任何筛选条件时拒绝执行，避免误操作整个队列（清空队列请使用 drain）
+                if ((request.getTaskType() == null || request.getTaskType().trim().isEmpty())
+                        && request.getFromTime() == null && request.getToTime() == null) {
+                    throw new IllegalArgumentException("请指定任务ID列表或筛选条件");
+                }
+                affected = delayQueue.bulkApply(request.getAction(), new TaskFilter(request.getQueueName(),
+                        request.getTaskType(), request.getFromTime(), request.getToTime()), executeTime);
+            }
+            response.put("success", true);
+            response.put("message", "批量操作完成");
+            response.put("data", Map.of("affected", affected));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "批量操作失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @GetMapping("/delay-queue/dead-letters")
+    public ResponseEntity<Map<String, Object>> getDeadLetters(@RequestParam(required = false) String queueName,
+                                                              @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", delayQueue.getDeadLetters(queueName, limit));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "获取死信任务失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/delay-queue/dead-letters/{taskId}/requeue")
+    public ResponseEntity<Map<String, Object>> requeueDeadLetter(@PathVariable String taskId,
+                                                                 @RequestParam(required = false) String queueName) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            boolean success = delayQueue.requeueDeadLetter(taskId, queueName);
+            if (success) {
+                response.put("success", true);
+                response.put("message", "任务已重新入队");
+                return ResponseEntity.ok(response);
+            } else {
+                response.put("success", false);
+                response.put("message", "死信任务不存在");
+                return ResponseEntity.badRequest().body(response);
+            }
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "重新入队失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @DeleteMapping("/delay-queue/dead-letters")
+    public ResponseEntity<Map<String, Object>> purgeDeadLetters(@RequestParam(required = false) String queueName) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long purged = delayQueue.purgeDeadLetters(queueName);
+            response.put("success", true);
+            response.put("message", "死信队列已清空");
+            response.put("data", Map.of("purged", purged));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "清空死信队列失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/delay-queue/queues")
+    public ResponseEntity<Map<String, Object>> createQueue(@RequestBody QueueDefinition definition) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            QueueDefinition created = delayQueue.createQueue(definition);
+            response.put("success", true);
+            response.put("message", "队列创建成功");
+            response.put("data", created);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "创建队列失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @GetMapping("/delay-queue/queues")
+    public ResponseEntity<Map<String, Object>> listQueues() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", delayQueue.listQueues());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "获取队列列表失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @PostMapping("/delay-queue/queues/{queueName}/drain")
+    public ResponseEntity<Map<String, Object>> drainQueue(@PathVariable String queueName) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Map<String, Long> drained = delayQueue.drainQueue(queueName);
+            response.put("success", true);
+            response.put("message", "队列已清空");
+            response.put("data", drained);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "清空队列失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    @DeleteMapping("/delay-queue/queues/{queueName}")
+    public ResponseEntity<Map<String, Object>> deleteQueue(@PathVariable String queueName) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Map<String, Long> drained = delayQueue.deleteQueue(queueName);
+            response.put("success", true);
+            response.put("message", "队列删除成功");
+            response.put("data", drained);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "删除队列失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
 }
\ No newline at end of file
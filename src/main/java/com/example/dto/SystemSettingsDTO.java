@@ -97,6 +97,7 @@ public class SystemSettingsDTO {
         private Integer batchSize;
         private Integer scanInterval;
         private Boolean enablePriority;
+        private String rateLimits;
     }
     
     /**
@@ -183,6 +184,7 @@ public class SystemSettingsDTO {
             map.put("queue.batchSize", queueSettings.getBatchSize());
             map.put("queue.scanInterval", queueSettings.getScanInterval());
             map.put("queue.enablePriority", queueSettings.getEnablePriority());
+            map.put("queue.rateLimits", queueSettings.getRateLimits());
         }
         
         // 安全设置
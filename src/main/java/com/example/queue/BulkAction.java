@@ -0,0 +1,22 @@
+package com.example.queue;
+
+/**
+ * 批量操作类型
+ */
+public enum BulkAction {
+
+    /**
+     * 取消：任务移出优先级通道放入取消集合，任务记录保留到取消保留期结束
+     */
+    CANCEL,
+
+    /**
+     * 删除：移除任务及其任务记录（包括执行中和死信任务）
+     */
+    DELETE,
+
+    /**
+     * 重新排期：在原优先级通道中修改执行时间
+     */
+    RESCHEDULE
+}
@@ -0,0 +1,24 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一次认领的结果
+ */
+@Data
+@AllArgsConstructor
+class ClaimResult {
+
+    /**
+     * 认领到的任务（按执行时间升序）
+     */
+    private List<ClaimedTask> tasks;
+
+    /**
+     * 认领后队列中最早任务的执行时间，队列为空时为null
+     */
+    private Long nextExecuteTime;
+}
@@ -0,0 +1,45 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 从延迟队列中认领出的到期任务
+ */
+@Data
+@AllArgsConstructor
+public class ClaimedTask {
+
+    /**
+     * 任务ID
+     */
+    private String taskId;
+
+    /**
+     * 计划执行时间（毫秒时间戳，即ZSET中的score）
+     */
+    private long executeTime;
+
+    /**
+     * 任务记录（任务数据、优先级、重试次数等）
+     */
+    private TaskRecord record;
+
+    /**
+     * Stream 模式下任务所在的 Stream 条目ID，从ZSET直接认领的任务为 null
+     */
+    private String entryId;
+
+    /**
+     * 认领时写入执行中ZSET的租约分数（租约到期时间），放回队列时据此确认租约仍属于本次认领；Stream 模式及未经认领的任务为 null
+     */
+    private Long leaseScore;
+
+    public ClaimedTask(String taskId, long executeTime, TaskRecord record) {
+        this(taskId, executeTime, record, null, null);
+    }
+
+    public ClaimedTask(String taskId, long executeTime, TaskRecord record, String entryId) {
+        this(taskId, executeTime, record, entryId, null);
+    }
+}
@@ -0,0 +1,790 @@
+package com.example.queue;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * 延迟队列使用的Lua脚本
+ * 脚本在Redis服务端原子执行，避免"查询 + 删除"之间的竞争以及逐条往返
+ */
+final class DelayQueueScripts {
+
+    private DelayQueueScripts() {
+    }
+
+    /**
+     * 与脚本中 redis.sha1hex 一致的 SHA1（按UTF-8编码），调用方以此标识读取到的任务记录，null 返回空字符串
+     */
+    static String sha1Hex(String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * 按字节序比较两个字符串（a <= b），与ZSET中同分数成员的排列顺序一致；
+     * Lua 的 <= 按服务端的区域设置（strcoll）比较，非 C 区域下与ZSET顺序不同，游标定位会跳过或重复任务
+     */
+    private static final String BYTE_LESS_OR_EQUAL =
+            "local function byteLessOrEqual(a, b)\n" +
+            "    for i = 1, math.min(#a, #b) do\n" +
+            "        local x, y = string.byte(a, i), string.byte(b, i)\n" +
+            "        if x ~= y then\n" +
+            "            return x < y\n" +
+            "        end\n" +
+            "    end\n" +
+            "    return #a <= #b\n" +
+            "end\n";
+
+    /**
+     * 写入同一分片的一组任务：调度项与任务记录在同一个脚本中原子写入，可选地发布唤醒通知
+     * 同一任务ID只保留一个调度项：写入前从其他优先级通道中移除，重新添加时改变优先级也不会留下第二份；
+     * 原任务记录标记了远期桶时从该桶中移除，远期任务改为近期（或反之）时不会在桶和通道中各留一份；
+     * 重新添加已取消的任务时同时移出取消集合，避免取消记录过期清理时删除新的任务记录
+     * 写入远期桶时同时将桶登记到分桶索引，供提升线程在到期前移入调度ZSET，并累加计数器Hash中的 bucketed
+     * 启用本地入队日志时为每个任务写入入队标记（带过期时间），重放日志时以标记判断任务是否已经写入过，
+     * 任务执行完毕、任务记录已删除后也不会重复写入
+     * 远期桶、原任务所在的远期桶和入队标记的键都由调用方根据写入前读取的任务记录计算，作为 KEYS 传入（集群可以正确路由）；
+     * 脚本先校验每个任务记录的 SHA1 与调用方读取时一致，任一任务记录已被并发修改时不做任何写入，返回 -1 由调用方重新读取后重试
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 任务数据Hash，KEYS[5] 分桶索引ZSET，KEYS[6] 计数器Hash，
+     * KEYS[7] 取消集合ZSET，KEYS[8..] 各任务用到的远期桶和入队标记
+     * ARGV[1] 通知频道（空字符串表示不发布），ARGV[2] 通知内容，ARGV[3] 入队标记的过期时间（秒），
+     * ARGV[4] 为 1 时跳过已有入队标记的任务（重放日志），
+     * 随后每个任务八个参数：任务ID、执行时间、目标键序号（通道或远期桶）、桶的起始时间（空字符串表示写入通道）、
+     * 原远期桶键序号（0 表示没有）、入队标记键序号（0 表示不写标记）、原任务记录的 SHA1（空字符串表示没有）、任务记录
+     * 同一批中的任务ID不能重复
+     * 返回写入的任务数，任务记录已被修改时返回 -1
+     */
+    static final RedisScript<Long> ENQUEUE = new DefaultRedisScript<>(
+            "for i = 5, #ARGV, 8 do\n" +
+            "    local previous = redis.call('HGET', KEYS[4], ARGV[i])\n" +
+            "    if (previous and redis.sha1hex(previous) or '') ~= ARGV[i + 6] then\n" +
+            "        return -1\n" +
+            "    end\n" +
+            "end\n" +
+            "local written = 0\n" +
+            "local bucketed = 0\n" +
+            "local ttl = tonumber(ARGV[3])\n" +
+            "local ifAbsent = ARGV[4] == '1'\n" +
+            "for i = 5, #ARGV, 8 do\n" +
+            "    local member = ARGV[i]\n" +
+            "    local fresh = true\n" +
+            "    local markerIndex = tonumber(ARGV[i + 5])\n" +
+            "    if markerIndex > 0 then\n" +
+            "        if ifAbsent then\n" +
+            "            fresh = redis.call('SET', KEYS[markerIndex], '1', 'NX', 'EX', ttl) ~= false\n" +
+            "        else\n" +
+            "            redis.call('SET', KEYS[markerIndex], '1', 'EX', ttl)\n" +
+            "        end\n" +
+            "    end\n" +
+            "    if fresh then\n" +
+            "        local target = KEYS[tonumber(ARGV[i + 2])]\n" +
+            "        local bucket = ARGV[i + 3]\n" +
+            "        for other = 1, 3 do\n" +
+            "            if KEYS[other] ~= target then\n" +
+            "                redis.call('ZREM', KEYS[other], member)\n" +
+            "            end\n" +
+            "        end\n" +
+            "        local previousIndex = tonumber(ARGV[i + 4])\n" +
+            "        if previousIndex > 0 and KEYS[previousIndex] ~= target\n" +
+            "                and redis.call('ZREM', KEYS[previousIndex], member) == 1 then\n" +
+            "            bucketed = bucketed - 1\n" +
+            "        end\n" +
+            "        redis.call('ZREM', KEYS[7], member)\n" +
+            "        if bucket ~= '' then\n" +
+            "            redis.call('ZADD', KEYS[5], bucket, target)\n" +
+            "        end\n" +
+            "        if redis.call('ZADD', target, ARGV[i + 1], member) == 1 and bucket ~= '' then\n" +
+            "            bucketed = bucketed + 1\n" +
+            "        end\n" +
+            "        redis.call('HSET', KEYS[4], member, ARGV[i + 7])\n" +
+            "        written = written + 1\n" +
+            "    end\n" +
+            "end\n" +
+            "if bucketed ~= 0 then\n" +
+            "    redis.call('HINCRBY', KEYS[6], 'bucketed', bucketed)\n" +
+            "end\n" +
+            "if ARGV[1] ~= '' and written > 0 then\n" +
+            "    redis.call('PUBLISH', ARGV[1], ARGV[2])\n" +
+            "end\n" +
+            "return written",
+            Long.class);
+
+    /**
+     * 将本实例认领后未执行的任务放回原优先级通道：只有任务仍在执行中ZSET中、且租约分数等于认领时写入的值才移动，
+     * 租约已过期被回收（甚至已被其他实例重新认领）的任务保持原状，避免删除别人的租约并重复入队
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 执行中ZSET
+     * 每个任务四个参数：任务ID、租约分数、执行时间、通道序号（1-3）
+     * 返回放回的任务数
+     */
+    static final RedisScript<Long> RETURN_TO_QUEUE = new DefaultRedisScript<>(
+            "local returned = 0\n" +
+            "for i = 1, #ARGV, 4 do\n" +
+            "    local lease = redis.call('ZSCORE', KEYS[4], ARGV[i])\n" +
+            "    if lease and tonumber(lease) == tonumber(ARGV[i + 1]) then\n" +
+            "        redis.call('ZREM', KEYS[4], ARGV[i])\n" +
+            "        redis.call('ZADD', KEYS[tonumber(ARGV[i + 3])], ARGV[i + 2], ARGV[i])\n" +
+            "        returned = returned + 1\n" +
+            "    end\n" +
+            "end\n" +
+            "return returned",
+            Long.class);
+
+    /**
+     * 按优先级通道批量认领到期任务，同时取出任务记录，并顺带查询剩余最早任务的执行时间，供轮询线程决定休眠时长
+     * 先为 NORMAL / LOW 通道认领保底份额（防止饿死），再依次从 HIGH、NORMAL、LOW 通道补满本批
+     * 认领的任务移入执行中ZSET（分数为租约到期时间 = max(执行时间, 当前时间) + 租约时长），任务记录保留到确认为止
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 执行中ZSET，KEYS[5] 任务数据Hash，KEYS[6] 计数器Hash
+     * ARGV[1] 认领截止时间戳，ARGV[2] 本次最多认领的数量，ARGV[3] NORMAL保底数量，ARGV[4] LOW保底数量
+     * ARGV[5] 当前时间戳，ARGV[6] 租约时长（毫秒）
+     * 返回 [member1, score1, record1, member2, score2, record2, ..., nextScore]，按 HIGH、NORMAL、LOW 排列，
+     * 没有任务记录时 record 为空字符串，队列为空时 nextScore 为空字符串
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLAIM_DUE = new DefaultRedisScript<>(
+            "local picks = {{}, {}, {}}\n" +
+            "local remaining = tonumber(ARGV[2])\n" +
+            "local now = tonumber(ARGV[5])\n" +
+            "local lease = tonumber(ARGV[6])\n" +
+            "local function take(lane, count)\n" +
+            "    if count <= 0 then\n" +
+            "        return 0\n" +
+            "    end\n" +
+            "    local items = redis.call('ZRANGEBYSCORE', KEYS[lane], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, count)\n" +
+            "    local out = picks[lane]\n" +
+            "    for i = 1, #items, 2 do\n" +
+            "        redis.call('ZREM', KEYS[lane], items[i])\n" +
+            "        redis.call('ZADD', KEYS[4], math.max(tonumber(items[i + 1]), now) + lease, items[i])\n" +
+            "        local data = redis.call('HGET', KEYS[5], items[i]) or ''\n" +
+            "        out[#out + 1] = items[i]\n" +
+            "        out[#out + 1] = items[i + 1]\n" +
+            "        out[#out + 1] = data\n" +
+            "    end\n" +
+            "    return #items / 2\n" +
+            "end\n" +
+            "remaining = remaining - take(2, math.min(tonumber(ARGV[3]), remaining))\n" +
+            "remaining = remaining - take(3, math.min(tonumber(ARGV[4]), remaining))\n" +
+            "for lane = 1, 3 do\n" +
+            "    remaining = remaining - take(lane, remaining)\n" +
+            "end\n" +
+            "if remaining < tonumber(ARGV[2]) then\n" +
+            "    redis.call('HINCRBY', KEYS[6], 'claimed', tonumber(ARGV[2]) - remaining)\n" +
+            "end\n" +
+            "local result = {}\n" +
+            "local nextScore = ''\n" +
+            "for lane = 1, 3 do\n" +
+            "    for _, value in ipairs(picks[lane]) do\n" +
+            "        result[#result + 1] = value\n" +
+            "    end\n" +
+            "    local head = redis.call('ZRANGE', KEYS[lane], 0, 0, 'WITHSCORES')\n" +
+            "    if head[2] and (nextScore == '' or tonumber(head[2]) < tonumber(nextScore)) then\n" +
+            "        nextScore = head[2]\n" +
+            "    end\n" +
+            "end\n" +
+            "result[#result + 1] = nextScore\n" +
+            "return result",
+            List.class);
+
+    /**
+     * 确认任务执行完成：从执行中ZSET移除并累加完成计数；一次性任务删除任务记录，
+     * 重复任务在同一个脚本中按下一次执行时间写回优先级通道，只有仍持有租约的执行者能写回，不会重复触发
+     * 租约已过期并被放回队列的任务不再属于本次执行，保留其任务记录
+     * KEYS[1] 执行中ZSET，KEYS[2] 任务数据Hash，KEYS[3] 计数器Hash，KEYS[4] 重复任务写回的优先级通道
+     * ARGV[1] 任务ID，ARGV[2] 下一次执行时间（空字符串表示一次性任务），ARGV[3] 重复任务的新任务记录
+     * 返回 1 表示确认成功，0 表示租约已失效
+     */
+    static final RedisScript<Long> ACK = new DefaultRedisScript<>(
+            "if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "if ARGV[2] ~= '' then\n" +
+            "    redis.call('ZADD', KEYS[4], ARGV[2], ARGV[1])\n" +
+            "    redis.call('HSET', KEYS[2], ARGV[1], ARGV[3])\n" +
+            "else\n" +
+            "    redis.call('HDEL', KEYS[2], ARGV[1])\n" +
+            "end\n" +
+            "redis.call('HINCRBY', KEYS[3], 'completed', 1)\n" +
+            "return 1",
+            Long.class);
+
+    /**
+     * 回收租约已过期的执行中任务，按任务记录中的优先级放回对应通道并立即可被认领
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 执行中ZSET，KEYS[5] 任务数据Hash，KEYS[6] 计数器Hash
+     * ARGV[1] 当前时间戳，ARGV[2] 本次最多回收的数量，ARGV[3] 是否按优先级分通道（1/0）
+     * 返回回收的任务ID列表
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> REAP_EXPIRED = new DefaultRedisScript<>(
+            "local expired = redis.call('ZRANGEBYSCORE', KEYS[4], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))\n" +
+            "for _, member in ipairs(expired) do\n" +
+            "    local lane = 2\n" +
+            "    if ARGV[3] == '1' then\n" +
+            "        local data = redis.call('HGET', KEYS[5], member)\n" +
+            "        local ok, record = pcall(cjson.decode, data or '')\n" +
+            "        if ok and type(record) == 'table' and type(record['p']) == 'string' then\n" +
+            "            local priority = string.upper(record['p'])\n" +
+            "            if priority == 'HIGH' then\n" +
+            "                lane = 1\n" +
+            "            elseif priority == 'LOW' then\n" +
+            "                lane = 3\n" +
+            "            end\n" +
+            "        end\n" +
+            "    end\n" +
+            "    redis.call('ZREM', KEYS[4], member)\n" +
+            "    redis.call('ZADD', KEYS[lane], ARGV[1], member)\n" +
+            "end\n" +
+            "if #expired > 0 then\n" +
+            "    redis.call('HINCRBY', KEYS[6], 'expired', #expired)\n" +
+            "end\n" +
+            "return expired",
+            List.class);
+
+    /**
+     * 将任务从一个ZSET原子地转移到另一个ZSET并更新任务记录，任务已不在源ZSET时不做任何修改
+     * 用于失败任务释放租约后重新排期或进入死信队列，以及死信任务重新入队
+     * KEYS[1] 源ZSET，KEYS[2] 目标ZSET，KEYS[3] 任务数据Hash，KEYS[4] 计数器Hash
+     * ARGV[1] 任务ID，ARGV[2] 目标分数，ARGV[3] 任务记录（空字符串表示保留原记录），ARGV[4..] 转移成功时加1的计数器
+     * 返回 1 表示已转移，0 表示任务不在源ZSET中
+     */
+    static final RedisScript<Long> MOVE = new DefaultRedisScript<>(
+            "if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1])\n" +
+            "if ARGV[3] ~= '' then\n" +
+            "    redis.call('HSET', KEYS[3], ARGV[1], ARGV[3])\n" +
+            "end\n" +
+            "for i = 4, #ARGV do\n" +
+            "    redis.call('HINCRBY', KEYS[4], ARGV[i], 1)\n" +
+            "end\n" +
+            "return 1",
+            Long.class);
+
+    /**
+     * Stream 模式的搬运：按与 CLAIM_DUE 相同的通道份额取出到期任务，依 HIGH、NORMAL、LOW 顺序写入分片的 Stream，
+     * 由各实例的消费者组成员领取；Stream 中等待领取和执行中的条目达到上限时不再搬运，任务留在ZSET中（仍可取消、按优先级排序）
+     * 没有任务记录的旧式任务补写空记录，消费者据此区分"已删除"和"无记录"
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 任务Stream，KEYS[5] 任务数据Hash，KEYS[6] 计数器Hash
+     * ARGV[1] 到期截止时间戳，ARGV[2] 本次最多搬运的数量，ARGV[3] NORMAL保底数量，ARGV[4] LOW保底数量，ARGV[5] Stream长度上限
+     * 返回 [搬运数量, 剩余最早任务的执行时间（队列为空时为空字符串）, Stream剩余容量]
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> PUSH_DUE_TO_STREAM = new DefaultRedisScript<>(
+            "local picks = {{}, {}, {}}\n" +
+            "local room = tonumber(ARGV[5]) - redis.call('XLEN', KEYS[4])\n" +
+            "local limit = math.max(math.min(tonumber(ARGV[2]), room), 0)\n" +
+            "local remaining = limit\n" +
+            "local function take(lane, count)\n" +
+            "    if count <= 0 then\n" +
+            "        return 0\n" +
+            "    end\n" +
+            "    local items = redis.call('ZRANGEBYSCORE', KEYS[lane], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, count)\n" +
+            "    local out = picks[lane]\n" +
+            "    for i = 1, #items, 2 do\n" +
+            "        redis.call('ZREM', KEYS[lane], items[i])\n" +
+            "        out[#out + 1] = items[i]\n" +
+            "        out[#out + 1] = items[i + 1]\n" +
+            "    end\n" +
+            "    return #items / 2\n" +
+            "end\n" +
+            "remaining = remaining - take(2, math.min(tonumber(ARGV[3]), remaining))\n" +
+            "remaining = remaining - take(3, math.min(tonumber(ARGV[4]), remaining))\n" +
+            "for lane = 1, 3 do\n" +
+            "    remaining = remaining - take(lane, remaining)\n" +
+            "end\n" +
+            "local nextScore = ''\n" +
+            "for lane = 1, 3 do\n" +
+            "    local items = picks[lane]\n" +
+            "    for i = 1, #items, 2 do\n" +
+            "        if redis.call('HEXISTS', KEYS[5], items[i]) == 0 then\n" +
+            "            redis.call('HSET', KEYS[5], items[i], '')\n" +
+            "        end\n" +
+            "        redis.call('XADD', KEYS[4], '*', 'id', items[i], 's', items[i + 1])\n" +
+            "    end\n" +
+            "    local head = redis.call('ZRANGE', KEYS[lane], 0, 0, 'WITHSCORES')\n" +
+            "    if head[2] and (nextScore == '' or tonumber(head[2]) < tonumber(nextScore)) then\n" +
+            "        nextScore = head[2]\n" +
+            "    end\n" +
+            "end\n" +
+            "local moved = limit - remaining\n" +
+            "if moved > 0 then\n" +
+            "    redis.call('HINCRBY', KEYS[6], 'claimed', moved)\n" +
+            "end\n" +
+            "return {moved, nextScore, room - moved}",
+            List.class);
+
+    /**
+     * Stream 模式的租约回收：通过 XAUTOCLAIM 将空闲超过租约时长的待确认条目转给当前消费者，并取回任务记录
+     * 任务记录已被删除的条目直接确认并删除
+     * KEYS[1] 任务Stream，KEYS[2] 任务数据Hash，KEYS[3] 计数器Hash
+     * ARGV[1] 消费者组，ARGV[2] 消费者名称，ARGV[3] 最小空闲时间（毫秒），ARGV[4] 扫描起点，ARGV[5] 本次最多转移的数量
+     * 返回 [下一次扫描起点, entryId1, member1, score1, record1, ...]
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> RECLAIM_STREAM = new DefaultRedisScript<>(
+            "local claimed = redis.call('XAUTOCLAIM', KEYS[1], ARGV[1], ARGV[2], ARGV[3], ARGV[4], 'COUNT', ARGV[5])\n" +
+            "local result = {claimed[1]}\n" +
+            "local reclaimed = 0\n" +
+            "for _, entry in ipairs(claimed[2]) do\n" +
+            "    if type(entry) == 'table' and type(entry[2]) == 'table' then\n" +
+            "        local member, score\n" +
+            "        for i = 1, #entry[2], 2 do\n" +
+            "            if entry[2][i] == 'id' then\n" +
+            "                member = entry[2][i + 1]\n" +
+            "            elseif entry[2][i] == 's' then\n" +
+            "                score = entry[2][i + 1]\n" +
+            "            end\n" +
+            "        end\n" +
+            "        local data = member and redis.call('HGET', KEYS[2], member)\n" +
+            "        if data then\n" +
+            "            result[#result + 1] = entry[1]\n" +
+            "            result[#result + 1] = member\n" +
+            "            result[#result + 1] = score or '0'\n" +
+            "            result[#result + 1] = data\n" +
+            "            reclaimed = reclaimed + 1\n" +
+            "        else\n" +
+            "            redis.call('XACK', KEYS[1], ARGV[1], entry[1])\n" +
+            "            redis.call('XDEL', KEYS[1], entry[1])\n" +
+            "        end\n" +
+            "    end\n" +
+            "end\n" +
+            "if reclaimed > 0 then\n" +
+            "    redis.call('HINCRBY', KEYS[3], 'expired', reclaimed)\n" +
+            "end\n" +
+            "return result",
+            List.class);
+
+    /**
+     * Stream 模式的确认：XACK 并删除条目、累加完成计数，任务记录和重复任务的处理与 ACK 相同
+     * KEYS[1] 任务Stream，KEYS[2] 任务数据Hash，KEYS[3] 计数器Hash，KEYS[4] 重复任务写回的优先级通道
+     * ARGV[1] 消费者组，ARGV[2] 条目ID，ARGV[3] 任务ID，ARGV[4] 下一次执行时间（空字符串表示一次性任务），ARGV[5] 新任务记录
+     * 返回 1 表示确认成功，0 表示条目已被确认（例如租约过期后由其他消费者执行完成）
+     */
+    static final RedisScript<Long> ACK_STREAM = new DefaultRedisScript<>(
+            "if redis.call('XACK', KEYS[1], ARGV[1], ARGV[2]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('XDEL', KEYS[1], ARGV[2])\n" +
+            "if ARGV[4] ~= '' then\n" +
+            "    redis.call('ZADD', KEYS[4], ARGV[4], ARGV[3])\n" +
+            "    redis.call('HSET', KEYS[2], ARGV[3], ARGV[5])\n" +
+            "else\n" +
+            "    redis.call('HDEL', KEYS[2], ARGV[3])\n" +
+            "end\n" +
+            "redis.call('HINCRBY', KEYS[3], 'completed', 1)\n" +
+            "return 1",
+            Long.class);
+
+    /**
+     * Stream 模式的失败处理：XACK 并删除条目，将任务写入目标ZSET（重试通道或死信队列）并更新任务记录
+     * KEYS[1] 任务Stream，KEYS[2] 目标ZSET，KEYS[3] 任务数据Hash，KEYS[4] 计数器Hash
+     * ARGV[1] 消费者组，ARGV[2] 条目ID，ARGV[3] 任务ID，ARGV[4] 目标分数，ARGV[5] 任务记录，ARGV[6..] 转移成功时加1的计数器
+     * 返回 1 表示已转移，0 表示条目已被确认
+     */
+    static final RedisScript<Long> MOVE_FROM_STREAM = new DefaultRedisScript<>(
+            "if redis.call('XACK', KEYS[1], ARGV[1], ARGV[2]) == 0 then\n" +
+            "    return 0\n" +
+            "end\n" +
+            "redis.call('XDEL', KEYS[1], ARGV[2])\n" +
+            "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3])\n" +
+            "redis.call('HSET', KEYS[3], ARGV[3], ARGV[5])\n" +
+            "for i = 6, #ARGV do\n" +
+            "    redis.call('HINCRBY', KEYS[4], ARGV[i], 1)\n" +
+            "end\n" +
+            "return 1",
+            Long.class);
+
+    /**
+     * 按 GCRA 算法为一批任务预约执行时间，各桶的理论到达时间（TAT）保存在同一个Hash中，所有实例共享
+     * 每个任务的执行时间取其最早执行时间与所属各桶最早允许时间（TAT - 容忍度）中的较大值，随后各桶的 TAT 后移一个发射间隔
+     * KEYS[1] 限流Hash
+     * ARGV[1] 当前时间戳，ARGV[2] 桶数量 m，随后每个桶三个参数：桶名称、发射间隔（毫秒）、容忍度（毫秒），
+     * 再往后每个任务一个参数："最早执行时间|桶序号,桶序号"
+     * 返回与任务一一对应的预约时间
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> RESERVE_RATE_SLOTS = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1])\n" +
+            "local count = tonumber(ARGV[2])\n" +
+            "local intervals, tolerances, tats = {}, {}, {}\n" +
+            "for i = 1, count do\n" +
+            "    local base = 3 + (i - 1) * 3\n" +
+            "    intervals[i] = tonumber(ARGV[base + 1])\n" +
+            "    tolerances[i] = tonumber(ARGV[base + 2])\n" +
+            "    tats[i] = math.max(tonumber(redis.call('HGET', KEYS[1], ARGV[base]) or '0'), now)\n" +
+            "end\n" +
+            "local result = {}\n" +
+            "for j = 3 + count * 3, #ARGV do\n" +
+            "    local separator = string.find(ARGV[j], '|', 1, true)\n" +
+            "    local slot = tonumber(string.sub(ARGV[j], 1, separator - 1))\n" +
+            "    local buckets = {}\n" +
+            "    for index in string.gmatch(string.sub(ARGV[j], separator + 1), '%d+') do\n" +
+            "        local bucket = tonumber(index)\n" +
+            "        buckets[#buckets + 1] = bucket\n" +
+            "        slot = math.max(slot, tats[bucket] - tolerances[bucket])\n" +
+            "    end\n" +
+            "    for _, bucket in ipairs(buckets) do\n" +
+            "        tats[bucket] = math.max(tats[bucket], slot) + intervals[bucket]\n" +
+            "    end\n" +
+            "    result[#result + 1] = math.ceil(slot)\n" +
+            "end\n" +
+            "for i = 1, count do\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[3 + (i - 1) * 3], string.format('%.3f', tats[i]))\n" +
+            "end\n" +
+            "return result",
+            List.class);
+
+    /**
+     * 将被限流推迟的任务放回优先级通道，分数为预约的执行时间，并写入带预约标记的任务记录
+     * 只转移仍持有租约的任务（执行中ZSET中仍存在，或 Stream 条目尚未确认）
+     * KEYS[1] 执行中ZSET或任务Stream，KEYS[2] HIGH通道，KEYS[3] NORMAL通道，KEYS[4] LOW通道，KEYS[5] 任务数据Hash，KEYS[6] 计数器Hash
+     * ARGV[1] 消费者组（空字符串表示 KEYS[1] 为执行中ZSET），随后每个任务五个参数：任务ID、条目ID、通道序号（1-3）、预约时间、任务记录
+     * 返回放回的任务数
+     */
+    static final RedisScript<Long> DEFER_THROTTLED = new DefaultRedisScript<>(
+            "local deferred = 0\n" +
+            "for i = 2, #ARGV, 5 do\n" +
+            "    local removed\n" +
+            "    if ARGV[1] == '' then\n" +
+            "        removed = redis.call('ZREM', KEYS[1], ARGV[i])\n" +
+            "    else\n" +
+            "        removed = redis.call('XACK', KEYS[1], ARGV[1], ARGV[i + 1])\n" +
+            "        if removed > 0 then\n" +
+            "            redis.call('XDEL', KEYS[1], ARGV[i + 1])\n" +
+            "        end\n" +
+            "    end\n" +
+            "    if removed > 0 then\n" +
+            "        redis.call('ZADD', KEYS[1 + tonumber(ARGV[i + 2])], ARGV[i + 3], ARGV[i])\n" +
+            "        redis.call('HSET', KEYS[5], ARGV[i], ARGV[i + 4])\n" +
+            "        deferred = deferred + 1\n" +
+            "    end\n" +
+            "end\n" +
+            "if deferred > 0 then\n" +
+            "    redis.call('HINCRBY', KEYS[6], 'throttled', deferred)\n" +
+            "end\n" +
+            "return deferred",
+            Long.class);
+
+    /**
+     * 从死信队列中清除一批任务及其任务记录，每次最多 ARGV[1] 个，由调用方循环调用直到返回值小于 ARGV[1]，
+     * 死信很多时也不会在一次脚本调用中长时间阻塞Redis
+     * KEYS[1] 死信ZSET，KEYS[2] 任务数据Hash
+     * ARGV[1] 单次数量上限
+     * 返回本次清除的任务数
+     */
+    static final RedisScript<Long> PURGE_DEAD = new DefaultRedisScript<>(
+            "local members = redis.call('ZRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1)\n" +
+            "if #members > 0 then\n" +
+            "    redis.call('HDEL', KEYS[2], unpack(members))\n" +
+            "    redis.call('ZREM', KEYS[1], unpack(members))\n" +
+            "end\n" +
+            "return #members",
+            Long.class);
+
+    /**
+     * 对同一分片的一批任务执行取消 / 删除 / 重新排期，每个任务在服务端一次完成查找和修改
+     * 取消将仍在优先级通道或远期桶中的任务移入取消集合（分数为取消时间，任务记录保留到过期清理）；
+     * 重新排期将优先级通道或远期桶中的任务按新的分数放入对应通道，已取消的任务按其优先级恢复到对应通道；
+     * 删除同时清理执行中、死信、取消集合、远期桶及任务记录
+     * 调用方按读取到的任务记录计算任务所在的远期桶，同一个远期桶的任务在一次调用中处理，远期桶作为 KEYS[9] 传入；
+     * 任务记录的 SHA1 与调用方读取时不一致（被并发修改，可能已换到其他远期桶）的任务不处理，返回给调用方重新读取后重试
+     * 任务移出远期桶时递减计数器Hash中的 bucketed
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 执行中ZSET，KEYS[5] 死信ZSET，KEYS[6] 任务数据Hash，KEYS[7] 取消集合ZSET，
+     * KEYS[8] 计数器Hash，KEYS[9] 本批任务所在的远期桶（可选）
+     * ARGV[1] 操作（CANCEL / DELETE / RESCHEDULE），ARGV[2] 新的分数（取消时为取消时间），
+     * 随后每个任务三个参数：任务ID、任务记录的 SHA1（空字符串表示没有）、按任务记录确定的通道序号（1-3）
+     * 返回 [受影响的任务数, 需要重试的任务ID...]
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> BULK_APPLY = new DefaultRedisScript<>(
+            "local action = ARGV[1]\n" +
+            "local affected = 0\n" +
+            "local unbucketed = 0\n" +
+            "local conflicts = {}\n" +
+            "local bucketKey = KEYS[9]\n" +
+            "local function inBucket(member)\n" +
+            "    return bucketKey ~= nil and redis.call('ZSCORE', bucketKey, member) ~= false\n" +
+            "end\n" +
+            "for i = 3, #ARGV, 3 do\n" +
+            "    local member = ARGV[i]\n" +
+            "    local encoded = redis.call('HGET', KEYS[6], member)\n" +
+            "    local lane = tonumber(ARGV[i + 2])\n" +
+            "    if (encoded and redis.sha1hex(encoded) or '') ~= ARGV[i + 1] then\n" +
+            "        conflicts[#conflicts + 1] = member\n" +
+            "    elseif action == 'DELETE' then\n" +
+            "        local removed = redis.call('ZREM', KEYS[7], member)\n" +
+            "        for index = 1, 5 do\n" +
+            "            removed = removed + redis.call('ZREM', KEYS[index], member)\n" +
+            "        end\n" +
+            "        if bucketKey ~= nil and redis.call('ZREM', bucketKey, member) == 1 then\n" +
+            "            removed = removed + 1\n" +
+            "            unbucketed = unbucketed + 1\n" +
+            "        end\n" +
+            "        redis.call('HDEL', KEYS[6], member)\n" +
+            "        if removed > 0 then\n" +
+            "            affected = affected + 1\n" +
+            "        end\n" +
+            "    else\n" +
+            "        local found = false\n" +
+            "        for index = 1, 3 do\n" +
+            "            if redis.call('ZSCORE', KEYS[index], member) then\n" +
+            "                if action == 'CANCEL' then\n" +
+            "                    redis.call('ZREM', KEYS[index], member)\n" +
+            "                    redis.call('ZADD', KEYS[7], ARGV[2], member)\n" +
+            "                else\n" +
+            "                    redis.call('ZADD', KEYS[index], ARGV[2], member)\n" +
+            "                end\n" +
+            "                affected = affected + 1\n" +
+            "                found = true\n" +
+            "                break\n" +
+            "            end\n" +
+            "        end\n" +
+            "        if not found then\n" +
+            "            if inBucket(member) then\n" +
+            "                redis.call('ZREM', bucketKey, member)\n" +
+            "                redis.call('ZADD', action == 'CANCEL' and KEYS[7] or KEYS[lane], ARGV[2], member)\n" +
+            "                affected = affected + 1\n" +
+            "                unbucketed = unbucketed + 1\n" +
+            "            elseif action == 'RESCHEDULE' and redis.call('ZREM', KEYS[7], member) == 1 then\n" +
+            "                redis.call('ZADD', KEYS[lane], ARGV[2], member)\n" +
+            "                affected = affected + 1\n" +
+            "            end\n" +
+            "        end\n" +
+            "    end\n" +
+            "end\n" +
+            "if unbucketed > 0 then\n" +
+            "    redis.call('HINCRBY', KEYS[8], 'bucketed', -unbucketed)\n" +
+            "end\n" +
+            "local result = {affected}\n" +
+            "for _, member in ipairs(conflicts) do\n" +
+            "    result[#result + 1] = member\n" +
+            "end\n" +
+            "return result",
+            List.class);
+
+    /**
+     * 将一个远期桶中的任务按原执行时间移入对应的优先级通道，每次最多 ARGV[1] 个，桶为空时从分桶索引中移除，
+     * 同时递减计数器Hash中的 bucketed
+     * KEYS[1] 远期桶ZSET，KEYS[2] 对应的优先级通道，KEYS[3] 分桶索引ZSET，KEYS[4] 计数器Hash
+     * ARGV[1] 单次数量上限
+     * 返回本次移动的任务数
+     */
+    static final RedisScript<Long> PROMOTE_BUCKET = new DefaultRedisScript<>(
+            "local items = redis.call('ZRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1, 'WITHSCORES')\n" +
+            "local members = {}\n" +
+            "for i = 1, #items, 2 do\n" +
+            "    redis.call('ZADD', KEYS[2], items[i + 1], items[i])\n" +
+            "    members[#members + 1] = items[i]\n" +
+            "end\n" +
+            "if #members > 0 then\n" +
+            "    redis.call('ZREM', KEYS[1], unpack(members))\n" +
+            "    redis.call('HINCRBY', KEYS[4], 'bucketed', -#members)\n" +
+            "end\n" +
+            "if redis.call('ZCARD', KEYS[1]) == 0 then\n" +
+            "    redis.call('ZREM', KEYS[3], KEYS[1])\n" +
+            "end\n" +
+            "return #members",
+            Long.class);
+
+    /**
+     * 清理取消集合中超过保留期的任务及其任务记录，每次最多 ARGV[3] 个；
+     * 同时将旧版本以 Double.MAX_VALUE 分数留在优先级通道中的已取消任务迁入取消集合
+     * KEYS[1] HIGH通道，KEYS[2] NORMAL通道，KEYS[3] LOW通道，KEYS[4] 取消集合ZSET，KEYS[5] 任务数据Hash
+     * ARGV[1] 当前时间，ARGV[2] 过期界限（取消时间不晚于该值的任务被清理），ARGV[3] 单次数量上限，ARGV[4] 旧版本的取消分数
+     * 返回清理的任务数
+     */
+    static final RedisScript<Long> PURGE_CANCELLED = new DefaultRedisScript<>(
+            "local limit = tonumber(ARGV[3])\n" +
+            "for lane = 1, 3 do\n" +
+            "    local legacy = redis.call('ZRANGEBYSCORE', KEYS[lane], ARGV[4], '+inf', 'LIMIT', 0, limit)\n" +
+            "    for _, member in ipairs(legacy) do\n" +
+            "        redis.call('ZREM', KEYS[lane], member)\n" +
+            "        redis.call('ZADD', KEYS[4], ARGV[1], member)\n" +
+            "    end\n" +
+            "end\n" +
+            "local expired = redis.call('ZRANGEBYSCORE', KEYS[4], '-inf', ARGV[2], 'LIMIT', 0, limit)\n" +
+            "if #expired > 0 then\n" +
+            "    redis.call('ZREM', KEYS[4], unpack(expired))\n" +
+            "    redis.call('HDEL', KEYS[5], unpack(expired))\n" +
+            "end\n" +
+            "return #expired",
+            Long.class);
+
+    /**
+     * 按 (执行时间, 任务ID) 游标分段扫描一条通道中执行时间在范围内、类型匹配的任务（只读），每次调用只扫描 ARGV[5] 个，
+     * 游标位置与 LIST_PAGE 一样用二分查找定位，不需要从头跳过，整条通道的扫描是线性的，不会长时间阻塞Redis
+     * 任务类型按任务记录中的类型（t）判断；只有没有任务记录（或无法解析）的旧式任务才按ID判断：
+     * ID 必须是"类型_序号"，序号只包含字母和数字，避免类型 order 匹配到 order_timeout_xxx
+     * KEYS[1] 通道ZSET，KEYS[2] 任务数据Hash
+     * ARGV[1] 分数下限（-inf 或数字），ARGV[2] 分数上限（+inf 或数字），ARGV[3] 游标中的分数（空字符串表示从下限开始），
+     * ARGV[4] 游标中的任务ID，ARGV[5] 扫描数量，ARGV[6] 任务类型（空字符串表示不限），
+     * ARGV[7] 跳过该分数的任务（空字符串表示不跳过，重新排期时跳过已排到目标时间的任务）
+     * 返回 [是否已扫描到末尾（1/0）, 游标分数, 游标任务ID, 匹配的任务ID...]
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> SCAN_MATCHING = new DefaultRedisScript<>(
+            BYTE_LESS_OR_EQUAL +
+            "local key = KEYS[1]\n" +
+            "local count = tonumber(ARGV[5])\n" +
+            "local max = ARGV[2] ~= '+inf' and tonumber(ARGV[2]) or nil\n" +
+            "local skip = ARGV[7] ~= '' and tonumber(ARGV[7]) or nil\n" +
+            "local taskType = ARGV[6]\n" +
+            "local pos = 0\n" +
+            "if ARGV[3] ~= '' then\n" +
+            "    local lo = redis.call('ZCOUNT', key, '-inf', '(' .. ARGV[3])\n" +
+            "    local hi = lo + redis.call('ZCOUNT', key, ARGV[3], ARGV[3])\n" +
+            "    while lo < hi do\n" +
+            "        local mid = math.floor((lo + hi) / 2)\n" +
+            "        if byteLessOrEqual(redis.call('ZRANGE', key, mid, mid)[1], ARGV[4]) then\n" +
+            "            lo = mid + 1\n" +
+            "        else\n" +
+            "            hi = mid\n" +
+            "        end\n" +
+            "    end\n" +
+            "    pos = lo\n" +
+            "elseif ARGV[1] ~= '-inf' then\n" +
+            "    pos = redis.call('ZCOUNT', key, '-inf', '(' .. ARGV[1])\n" +
+            "end\n" +
+            "local items = redis.call('ZRANGE', key, pos, pos + count - 1, 'WITHSCORES')\n" +
+            "local done = #items < count * 2 and 1 or 0\n" +
+            "local result = {0, ARGV[3], ARGV[4]}\n" +
+            "for i = 1, #items, 2 do\n" +
+            "    local member = items[i]\n" +
+            "    local score = tonumber(items[i + 1])\n" +
+            "    if max and score > max then\n" +
+            "        done = 1\n" +
+            "        break\n" +
+            "    end\n" +
+            "    result[2] = items[i + 1]\n" +
+            "    result[3] = member\n" +
+            "    local matched = score ~= skip\n" +
+            "    if matched and taskType ~= '' then\n" +
+            "        local data = redis.call('HGET', KEYS[2], member)\n" +
+            "        local ok, record = pcall(cjson.decode, data or '')\n" +
+            "        if ok and type(record) == 'table' then\n" +
+            "            matched = record['t'] == taskType\n" +
+            "        else\n" +
+            "            local suffix = string.sub(member, #taskType + 2)\n" +
+            "            matched = string.sub(member, 1, #taskType + 1) == taskType .. '_'\n" +
+            "                and suffix ~= '' and not string.find(suffix, '[^%w]')\n" +
+            "        end\n" +
+            "    end\n" +
+            "    if matched then\n" +
+            "        result[#result + 1] = member\n" +
+            "    end\n" +
+            "end\n" +
+            "result[1] = done\n" +
+            "return result",
+            List.class);
+
+    /**
+     * 按 (执行时间, 任务ID) 顺序读取分片各优先级通道（或取消集合）中的一页任务及其任务记录
+     * 有游标时用二分查找定位游标之后的位置（同一执行时间的任务按ID字节序排列），不需要从头跳过；
+     * 没有游标时从执行时间下限开始，跳过的部分由调用方控制
+     * KEYS[1..n-1] 要读取的ZSET（HIGH、NORMAL、LOW通道，或取消集合），KEYS[n] 任务数据Hash
+     * ARGV[1] 执行时间下限（-inf 或数字），ARGV[2] 执行时间上限（+inf 或数字）
+     * ARGV[3] 游标中的执行时间（空字符串表示没有游标），ARGV[4] 游标中的任务ID，ARGV[5] 每条通道最多读取的数量
+     * 返回 [member1, score1, record1, ...]，各通道内有序，由调用方合并
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> LIST_PAGE = new DefaultRedisScript<>(
+            BYTE_LESS_OR_EQUAL +
+            "local count = tonumber(ARGV[5])\n" +
+            "local max = ARGV[2] ~= '+inf' and tonumber(ARGV[2]) or nil\n" +
+            "local result = {}\n" +
+            "local dataKey = KEYS[#KEYS]\n" +
+            "for lane = 1, #KEYS - 1 do\n" +
+            "    local key = KEYS[lane]\n" +
+            "    local pos = 0\n" +
+            "    if ARGV[3] ~= '' then\n" +
+            "        local lo = redis.call('ZCOUNT', key, '-inf', '(' .. ARGV[3])\n" +
+            "        local hi = lo + redis.call('ZCOUNT', key, ARGV[3], ARGV[3])\n" +
+            "        while lo < hi do\n" +
+            "            local mid = math.floor((lo + hi) / 2)\n" +
+            "            if byteLessOrEqual(redis.call('ZRANGE', key, mid, mid)[1], ARGV[4]) then\n" +
+            "                lo = mid + 1\n" +
+            "            else\n" +
+            "                hi = mid\n" +
+            "            end\n" +
+            "        end\n" +
+            "        pos = lo\n" +
+            "    elseif ARGV[1] ~= '-inf' then\n" +
+            "        pos = redis.call('ZCOUNT', key, '-inf', '(' .. ARGV[1])\n" +
+            "    end\n" +
+            "    local items = redis.call('ZRANGE', key, pos, pos + count - 1, 'WITHSCORES')\n" +
+            "    for i = 1, #items, 2 do\n" +
+            "        if max and tonumber(items[i + 1]) > max then\n" +
+            "            break\n" +
+            "        end\n" +
+            "        result[#result + 1] = items[i]\n" +
+            "        result[#result + 1] = items[i + 1]\n" +
+            "        result[#result + 1] = redis.call('HGET', dataKey, items[i]) or ''\n" +
+            "    end\n" +
+            "end\n" +
+            "return result",
+            List.class);
+
+    /**
+     * 用 ZSCAN 按任务ID通配符分段扫描一条通道，同时取回任务记录
+     * KEYS[1] 通道ZSET，KEYS[2] 任务数据Hash
+     * ARGV[1] ZSCAN游标，ARGV[2] MATCH模式，ARGV[3] COUNT
+     * 返回 [下一个游标, member1, score1, record1, ...]
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> SCAN_PAGE = new DefaultRedisScript<>(
+            "local scan = redis.call('ZSCAN', KEYS[1], ARGV[1], 'MATCH', ARGV[2], 'COUNT', tonumber(ARGV[3]))\n" +
+            "local result = {scan[1]}\n" +
+            "local items = scan[2]\n" +
+            "for i = 1, #items, 2 do\n" +
+            "    result[#result + 1] = items[i]\n" +
+            "    result[#result + 1] = items[i + 1]\n" +
+            "    result[#result + 1] = redis.call('HGET', KEYS[2], items[i]) or ''\n" +
+            "end\n" +
+            "return result",
+            List.class);
+
+    /**
+     * 续期雪花ID节点租约：键仍属于本实例时延长过期时间，已过期（如Redis短暂不可用期间）时重新占用，已被其他实例占用时失败
+     * KEYS[1] 节点租约键，ARGV[1] 实例标识，ARGV[2] 租约时长（秒）
+     * 返回 1 续期成功，0 租约已被其他实例占用
+     */
+    static final RedisScript<Long> RENEW_NODE_LEASE = new DefaultRedisScript<>(
+            "local owner = redis.call('GET', KEYS[1])\n" +
+            "if owner == ARGV[1] then\n" +
+            "    redis.call('EXPIRE', KEYS[1], tonumber(ARGV[2]))\n" +
+            "    return 1\n" +
+            "end\n" +
+            "if not owner then\n" +
+            "    redis.call('SET', KEYS[1], ARGV[1], 'EX', tonumber(ARGV[2]))\n" +
+            "    return 1\n" +
+            "end\n" +
+            "return 0",
+            Long.class);
+
+    /**
+     * 释放雪花ID节点租约，只删除属于本实例的键
+     * KEYS[1] 节点租约键，ARGV[1] 实例标识
+     * 返回删除的键数
+     */
+    static final RedisScript<Long> RELEASE_NODE_LEASE = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "    return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0",
+            Long.class);
+}
@@ -0,0 +1,33 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量添加时的单个延迟任务
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DelayedTask {
+
+    /**
+     * 任务记录，ID不能为空，队列名为空时进入默认队列
+     */
+    private TaskRecord record;
+
+    /**
+     * 延迟时间（秒）
+     */
+    private long delay;
+
+    /**
+     * 幂等键，为空时不去重
+     */
+    private String idempotencyKey;
+
+    public DelayedTask(TaskRecord record, long delay) {
+        this(record, delay, null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次 ENQUEUE 脚本调用写入的同一分片的一组任务
+ * 目标远期桶、原任务所在的远期桶和入队标记的键都在这里计算并作为 KEYS 传给脚本，脚本内不拼接键名；
+ * 同一任务ID在一批中出现多次时只保留最后一次
+ */
+final class EnqueueBatch {
+
+    private final String shardKey;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private List<String> keys;
+    private List<String> args;
+
+    EnqueueBatch(String shardKey) {
+        this.shardKey = shardKey;
+    }
+
+    String getShardKey() {
+        return shardKey;
+    }
+
+    /**
+     * 添加一个任务
+     * @param taskId 任务ID
+     * @param executeTime 执行时间
+     * @param lane 优先级通道
+     * @param bucketStart 远期桶的起始时间，-1 表示直接写入通道
+     * @param record 编码后的任务记录
+     */
+    void add(String taskId, long executeTime, TaskPriority lane, long bucketStart, String record) {
+        entries.remove(taskId);
+        entries.put(taskId, new Entry(executeTime, lane, bucketStart, record));
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    List<String> taskIds() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * 按写入前读取的原任务记录生成脚本的 KEYS 和 ARGV
+     * @param previousRecords 与 taskIds() 顺序一致的原任务记录，没有时为 null
+     * @param previousBuckets 与 taskIds() 顺序一致的原任务所在远期桶键，没有时为 null
+     * @param channel 通知频道，空字符串表示不发布
+     * @param message 通知内容
+     * @param markerSeconds 入队标记的过期时间（秒），0 表示不写标记
+     * @param ifAbsent 是否跳过已有入队标记的任务
+     */
+    void prepare(List<String> previousRecords, List<String> previousBuckets, String channel, String message,
+                 long markerSeconds, boolean ifAbsent) {
+        keys = new ArrayList<>(Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                TaskPriority.LOW.laneKey(shardKey), QueueRuntime.dataKeyOf(shardKey), QueueRuntime.bucketIndexKeyOf(shardKey),
+                QueueRuntime.statsKeyOf(shardKey), QueueRuntime.cancelledKeyOf(shardKey)));
+        Map<String, Integer> keyIndex = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            keyIndex.put(keys.get(i), i + 1);
+        }
+        args = new ArrayList<>(4 + entries.size() * 8);
+        args.add(channel);
+        args.add(message);
+        args.add(String.valueOf(markerSeconds));
+        args.add(ifAbsent ? "1" : "0");
+        int i = 0;
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            String taskId = item.getKey();
+            Entry entry = item.getValue();
+            String laneKey = entry.lane.laneKey(shardKey);
+            String target = entry.bucketStart >= 0 ? QueueRuntime.bucketKeyOf(laneKey, entry.bucketStart) : laneKey;
+            String previousBucket = previousBuckets.get(i);
+            args.add(taskId);
+            args.add(String.valueOf(entry.executeTime));
+            args.add(String.valueOf(indexOf(keyIndex, target)));
+            args.add(entry.bucketStart >= 0 ? String.valueOf(entry.bucketStart) : "");
+            args.add(String.valueOf(previousBucket != null ? indexOf(keyIndex, previousBucket) : 0));
+            args.add(String.valueOf(markerSeconds > 0 ? indexOf(keyIndex, QueueRuntime.markerKeyOf(shardKey, taskId)) : 0));
+            args.add(DelayQueueScripts.sha1Hex(previousRecords.get(i)));
+            args.add(entry.record);
+            i++;
+        }
+    }
+
+    List<String> keys() {
+        return keys;
+    }
+
+    Object[] args() {
+        return args.toArray();
+    }
+
+    /**
+     * 键在 KEYS 中的序号（从 1 开始），尚未登记时追加
+     */
+    private int indexOf(Map<String, Integer> keyIndex, String key) {
+        return keyIndex.computeIfAbsent(key, k -> {
+            keys.add(k);
+            return keys.size();
+        });
+    }
+
+    private static final class Entry {
+        private final long executeTime;
+        private final TaskPriority lane;
+        private final long bucketStart;
+        private final String record;
+
+        Entry(long executeTime, TaskPriority lane, long bucketStart, String record) {
+            this.executeTime = executeTime;
+            this.lane = lane;
+            this.bucketStart = bucketStart;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 本地入队日志（预写日志）
+ * Redis不可用时新任务追加到本地内存映射的分段文件，Redis恢复后由重放线程按写入顺序重新写入队列。
+ * 追加只是一次内存拷贝，进程崩溃后已写入的内容仍会由操作系统写回文件；每个刷盘间隔 force 一次，缩小机器掉电时的丢失窗口。
+ *
+ * 分段文件格式：前 8 字节为已重放到的偏移量，之后是连续的条目 [长度 int][CRC32 int][内容]，长度为 0 表示段的结尾。
+ * 条目先写内容和校验和、最后写长度，写到一半崩溃的条目长度仍为 0，恢复时自然被忽略。
+ * 内容依次为 任务ID、幂等键、执行时间、任务记录，字符串编码为 [字节数 int][UTF-8]，幂等键为空时字节数为 -1。
+ */
+@Slf4j
+class EnqueueJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    // 段序号 -> 段，按写入顺序排列，最后一个为当前写入段
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "delay-queue-journal-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long pending;
+    // 上次刷盘后是否有新的写入
+    private boolean dirty;
+
+    /**
+     * 打开日志目录，恢复已有分段中尚未重放的条目
+     * @param directory 日志目录
+     * @param segmentSize 分段文件大小（字节）
+     * @param flushIntervalMs 刷盘间隔（毫秒）
+     */
+    EnqueueJournal(Path directory, int segmentSize, long flushIntervalMs) throws IOException {
+        if (segmentSize <= HEADER_SIZE + ENTRY_HEADER_SIZE) {
+            throw new IllegalArgumentException("Journal segment size is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long sequence;
+                try {
+                    sequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    log.warn("Ignore unexpected file in journal directory: {}", file);
+                    continue;
+                }
+                Segment segment = Segment.open(file, sequence, Math.max(segmentSize, (int) Files.size(file)));
+                segments.put(sequence, segment);
+                pending += segment.pendingEntries;
+            }
+        }
+        if (segments.isEmpty()) {
+            roll();
+        }
+        if (pending > 0) {
+            log.warn("Enqueue journal {} holds {} task(s) waiting to be replayed", directory, pending);
+        }
+        long interval = Math.max(flushIntervalMs, 10L);
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 追加一个任务
+     * @param taskId 任务ID
+     * @param dedupKey 幂等键对应的Redis键，可为 null
+     * @param executeTime 执行时间
+     * @param encodedRecord 序列化后的任务记录
+     */
+    synchronized void append(String taskId, String dedupKey, long executeTime, String encodedRecord) throws IOException {
+        if (segments.isEmpty()) {
+            throw new IOException("Journal is closed");
+        }
+        byte[] content = encode(taskId, dedupKey, executeTime, encodedRecord);
+        if (ENTRY_HEADER_SIZE + content.length > segmentSize - HEADER_SIZE) {
+            throw new IOException("Journal entry of task " + taskId + " exceeds the segment size");
+        }
+        Segment active = segments.lastEntry().getValue();
+        if (active.writePosition + ENTRY_HEADER_SIZE + content.length > active.buffer.capacity()) {
+            active = roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        int position = active.writePosition;
+        active.buffer.putInt(position + 4, (int) crc.getValue());
+        write(active.buffer, position + ENTRY_HEADER_SIZE, content);
+        active.buffer.putInt(position, content.length);
+        active.writePosition = position + ENTRY_HEADER_SIZE + content.length;
+        active.pendingEntries++;
+        pending++;
+        dirty = true;
+    }
+
+    /**
+     * 尚未重放的任务数
+     */
+    synchronized long pending() {
+        return pending;
+    }
+
+    /**
+     * 按写入顺序读取最早的一批尚未重放的条目
+     * @param limit 最多读取的数量
+     * @return 条目，没有待重放的条目时为空
+     */
+    synchronized List<Entry> peek(int limit) {
+        List<Entry> entries = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            int position = segment.replayOffset;
+            while (entries.size() < limit && position < segment.writePosition) {
+                int length = segment.buffer.getInt(position);
+                byte[] content = read(segment.buffer, position + ENTRY_HEADER_SIZE, length);
+                position += ENTRY_HEADER_SIZE + length;
+                entries.add(decode(content, segment.sequence, position));
+            }
+            if (entries.size() >= limit) {
+                break;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 标记条目及其之前的条目已重放，已全部重放的旧分段随即删除
+     * @param entry 已重放的条目
+     */
+    synchronized void commit(Entry entry) {
+        Segment segment = segments.get(entry.segment);
+        if (segment == null || entry.endOffset <= segment.replayOffset) {
+            return;
+        }
+        segment.replayOffset = entry.endOffset;
+        segment.buffer.putLong(0, entry.endOffset);
+        segment.pendingEntries--;
+        pending--;
+        if (segment.replayOffset >= segment.writePosition && segment != segments.lastEntry().getValue()) {
+            segments.remove(segment.sequence);
+            segment.delete();
+        }
+    }
+
+    /**
+     * 将写入段的内容刷到磁盘，刷盘在锁外进行，不阻塞追加（换段时旧的写入段已在 roll 中刷盘）
+     */
+    void flush() {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            if (!dirty || segments.isEmpty()) {
+                return;
+            }
+            dirty = false;
+            buffer = segments.lastEntry().getValue().buffer;
+        }
+        buffer.force();
+    }
+
+    synchronized void close() {
+        flusher.shutdownNow();
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    /**
+     * 新建下一个分段作为写入段
+     */
+    private Segment roll() throws IOException {
+        long sequence = segments.isEmpty() ? 1L : segments.lastKey() + 1;
+        Segment previous = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        Segment segment = Segment.open(directory.resolve(SEGMENT_PREFIX + String.format("%019d", sequence) + SEGMENT_SUFFIX),
+                sequence, segmentSize);
+        segments.put(sequence, segment);
+        if (previous != null) {
+            previous.buffer.force();
+            if (previous.replayOffset >= previous.writePosition) {
+                segments.remove(previous.sequence);
+                previous.delete();
+            }
+        }
+        return segment;
+    }
+
+    private static void write(MappedByteBuffer buffer, int position, byte[] content) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.put(content);
+    }
+
+    private static byte[] read(MappedByteBuffer buffer, int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        byte[] content = new byte[length];
+        view.get(content);
+        return content;
+    }
+
+    private static byte[] encode(String taskId, String dedupKey, long executeTime, String encodedRecord) {
+        byte[] id = taskId.getBytes(StandardCharsets.UTF_8);
+        byte[] dedup = dedupKey != null ? dedupKey.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] record = encodedRecord.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(12 + id.length + (dedup != null ? dedup.length : 0) + 8 + record.length);
+        buffer.putInt(id.length).put(id);
+        if (dedup != null) {
+            buffer.putInt(dedup.length).put(dedup);
+        } else {
+            buffer.putInt(-1);
+        }
+        buffer.putLong(executeTime);
+        buffer.putInt(record.length).put(record);
+        return buffer.array();
+    }
+
+    private static Entry decode(byte[] content, long segment, int endOffset) {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        String taskId = readString(buffer);
+        String dedupKey = readString(buffer);
+        long executeTime = buffer.getLong();
+        String encodedRecord = readString(buffer);
+        return new Entry(taskId, dedupKey, executeTime, encodedRecord, segment, endOffset);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 日志中的一个任务
+     */
+    @Getter
+    @AllArgsConstructor
+    static final class Entry {
+        private final String taskId;
+        private final String dedupKey;
+        private final long executeTime;
+        private final String encodedRecord;
+        // 所在分段及条目结束位置，重放后据此推进重放偏移量
+        private final long segment;
+        private final int endOffset;
+    }
+
+    /**
+     * 一个内存映射的分段文件
+     */
+    private static final class Segment {
+        private final Path file;
+        private final long sequence;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int replayOffset;
+        private int writePosition;
+        private long pendingEntries;
+
+        private Segment(Path file, long sequence, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 映射分段文件，扫描出写入位置；校验和不匹配的条目视为写入不完整，从该处截断
+         */
+        static Segment open(Path file, long sequence, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(file, sequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            MappedByteBuffer buffer = segment.buffer;
+            long replayOffset = buffer.getLong(0);
+            int position = HEADER_SIZE;
+            int pendingFrom = -1;
+            while (position + ENTRY_HEADER_SIZE <= size) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + ENTRY_HEADER_SIZE + length > size) {
+                    break;
+                }
+                byte[] content = read(buffer, position + ENTRY_HEADER_SIZE, length);
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    log.warn("Journal segment {} is corrupted at offset {}, truncated", file, position);
+                    break;
+                }
+                if (position >= replayOffset) {
+                    segment.pendingEntries++;
+                    if (pendingFrom < 0) {
+                        pendingFrom = position;
+                    }
+                }
+                position += ENTRY_HEADER_SIZE + length;
+            }
+            segment.writePosition = position;
+            segment.replayOffset = pendingFrom >= 0 ? pendingFrom : position;
+            // 截断之后的残留内容清零，避免新条目与旧内容混在一起
+            for (int i = position; i < Math.min(position + ENTRY_HEADER_SIZE, size); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            return segment;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close journal segment {}: {}", file, e.getMessage());
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete replayed journal segment {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 进程内分层时间轮
+ * 用于在内存中以毫秒精度触发即将到期的任务；超出本层范围的任务放入上一层（溢出轮），
+ * 随时钟推进逐层降级，直至到期后交给 expireAction 执行。
+ * 只有存在任务的槽位才会进入 DelayQueue，空闲时推进线程不会空转。
+ */
+@Slf4j
+final class HierarchicalTimingWheel {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final Consumer<ClaimedTask> expireAction;
+    private final DelayQueue<Bucket> delayQueue = new DelayQueue<>();
+    private final Object lock = new Object();
+    private final Level root;
+
+    private int size;
+    private volatile boolean running;
+    private Thread ticker;
+
+    /**
+     * @param tickMs 最底层每个槽位的时间跨度（毫秒）
+     * @param wheelSize 每层的槽位数
+     * @param expireAction 任务到期后的处理动作
+     */
+    HierarchicalTimingWheel(long tickMs, int wheelSize, Consumer<ClaimedTask> expireAction) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.expireAction = expireAction;
+        this.root = new Level(tickMs, System.currentTimeMillis());
+    }
+
+    /**
+     * 启动时钟推进线程
+     */
+    void start(String threadName) {
+        running = true;
+        ticker = new Thread(this::advanceLoop, threadName);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * 放入一个任务
+     * @param task 任务
+     * @return false 表示任务已到期，调用方应立即执行
+     */
+    boolean add(ClaimedTask task) {
+        synchronized (lock) {
+            if (root.add(task)) {
+                size++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 当前时间轮中尚未触发的任务数
+     */
+    int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    /**
+     * 停止推进线程，并取出所有尚未触发的任务
+     * @return 未触发的任务
+     */
+    List<ClaimedTask> stop() {
+        running = false;
+        if (ticker != null) {
+            ticker.interrupt();
+            try {
+                ticker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<ClaimedTask> remaining = new ArrayList<>();
+        synchronized (lock) {
+            for (Level level = root; level != null; level = level.overflow) {
+                for (Bucket bucket : level.buckets) {
+                    remaining.addAll(bucket.flush());
+                }
+            }
+            delayQueue.clear();
+            size = 0;
+        }
+        return remaining;
+    }
+
+    private void advanceLoop() {
+        while (running) {
+            try {
+                Bucket bucket = delayQueue.poll(200, TimeUnit.MILLISECONDS);
+                while (bucket != null) {
+                    List<ClaimedTask> expired = new ArrayList<>();
+                    synchronized (lock) {
+                        root.advanceClock(bucket.getExpiration());
+                        for (ClaimedTask task : bucket.flush()) {
+                            size--;
+                            // 重新插入：高层槽位的任务会降级到更精细的层，已到期的直接触发
+                            if (root.add(task)) {
+                                size++;
+                            } else {
+                                expired.add(task);
+                            }
+                        }
+                    }
+                    for (ClaimedTask task : expired) {
+                        fire(task);
+                    }
+                    bucket = delayQueue.poll();
+                }
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (Exception e) {
+                log.error("Timing wheel advance failed", e);
+            }
+        }
+    }
+
+    private void fire(ClaimedTask task) {
+        try {
+            expireAction.accept(task);
+        } catch (Exception e) {
+            log.error("Failed to fire task {} from timing wheel: {}", task.getTaskId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 时间轮中的一层
+     */
+    private final class Level {
+        private final long tick;
+        private final long interval;
+        private final Bucket[] buckets;
+        private long currentTime;
+        private Level overflow;
+
+        Level(long tick, long startMs) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMs - (startMs % tick);
+        }
+
+        boolean add(ClaimedTask task) {
+            long expiration = task.getExecuteTime();
+            if (expiration < currentTime + tick) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                long virtualId = expiration / tick;
+                Bucket bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(task);
+                if (bucket.setExpiration(virtualId * tick)) {
+                    delayQueue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, currentTime);
+            }
+            return overflow.add(task);
+        }
+
+        void advanceClock(long timeMs) {
+            if (timeMs >= currentTime + tick) {
+                currentTime = timeMs - (timeMs % tick);
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * 时间轮槽位，到期时间相同的任务共享一个槽位
+     */
+    private static final class Bucket implements Delayed {
+        private final List<ClaimedTask> tasks = new ArrayList<>();
+        private volatile long expiration = -1L;
+
+        void add(ClaimedTask task) {
+            tasks.add(task);
+        }
+
+        /**
+         * @return 到期时间是否发生变化（槽位被复用时需要重新放入 DelayQueue）
+         */
+        boolean setExpiration(long expirationMs) {
+            long previous = expiration;
+            expiration = expirationMs;
+            return previous != expirationMs;
+        }
+
+        long getExpiration() {
+            return expiration;
+        }
+
+        List<ClaimedTask> flush() {
+            List<ClaimedTask> flushed = new ArrayList<>(tasks);
+            tasks.clear();
+            expiration = -1L;
+            return flushed;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(expiration - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket) other).expiration);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.queue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数分桶的延迟直方图（单位：微秒）
+ * 小于 16 的值每个值一个桶，其余按 2 的幂分段、每段再等分为 8 个子桶，相对误差不超过 1/16；
+ * 桶的边界固定，多个直方图可以逐桶相加合并（按任务类型记录，按队列或全局汇总）。
+ * 记录只做一次原子自增，不加锁。
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 精确记录的区间 [0, 16)
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int LINEAR_EXPONENT = 4;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - LINEAR_EXPONENT) * SUB_BUCKETS;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50Ms", "p90Ms", "p99Ms", "p999Ms"};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值，负值按 0 记录
+     * @param micros 延迟（微秒）
+     */
+    void record(long micros) {
+        long value = Math.max(micros, 0);
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * 将本直方图的计数累加到 target
+     * @param target 汇总用的直方图
+     */
+    void mergeInto(LatencyHistogram target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucket = buckets.get(i);
+            if (bucket > 0) {
+                target.buckets.addAndGet(i, bucket);
+            }
+        }
+        target.count.add(count.sum());
+        target.total.add(total.sum());
+        target.max.accumulateAndGet(max.get(), Math::max);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 汇总为监控数据（毫秒）
+     * @return count / avgMs / maxMs / p50Ms / p90Ms / p99Ms / p999Ms
+     */
+    Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        long[] snapshot = new long[BUCKET_COUNT];
+        long observed = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            observed += snapshot[i];
+        }
+        long maxValue = max.get();
+        summary.put("count", observed);
+        summary.put("avgMs", observed > 0 ? toMillis((double) total.sum() / observed) : 0.0);
+        summary.put("maxMs", toMillis(maxValue));
+        for (int p = 0; p < PERCENTILES.length; p++) {
+            summary.put(PERCENTILE_NAMES[p], observed > 0 ? toMillis(valueAt(snapshot, observed, PERCENTILES[p], maxValue)) : 0.0);
+        }
+        return summary;
+    }
+
+    /**
+     * 百分位所在桶的中间值，不超过记录到的最大值
+     */
+    private static long valueAt(long[] snapshot, long observed, double percentile, long maxValue) {
+        long rank = Math.max(1, (long) Math.ceil(observed * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long lower = lowerBoundOf(i);
+                long upper = i + 1 < BUCKET_COUNT ? lowerBoundOf(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(lower + (upper - lower) / 2, maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowerBoundOf(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static double toMillis(double micros) {
+        return Math.round(micros) / 1000.0;
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.queue;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 旧键布局的一次性迁移，队列启动时执行；完成后按当前布局写入完成标记，之后启动只多一次键查询
+ * 1. 升级前的单个 delay:queue：通过 Jackson 序列化写入，成员带引号，没有任务记录，取消的任务分数为 Double.MAX_VALUE。
+ *    改为 StringRedisTemplate 读写后这些成员无法被认领脚本匹配，按原执行时间改写为不带引号的成员并补写任务记录（按ID推断任务类型），
+ *    已取消的丢弃；当前布局仍使用 delay:queue 作为唯一分片时原地改写，否则整体迁移到当前的分片键
+ * 2. 切换到集群或开启 hash-tagged-keys 之前的分片键（delay:queue:{i}、delay:named:名称[:{i}]）：
+ *    通道和远期桶中尚未执行的任务按原执行时间写入当前布局，执行中的任务立即放回通道，
+ *    Stream 中已投递但未确认的条目按原执行时间放回通道，死信和已取消的任务连同任务记录移到当前布局的对应集合
+ * 每批先写入当前布局再从旧键中删除；迁移期间旧版本实例不能同时运行，否则其新写入的任务不会被迁移
+ */
+@Slf4j
+class LegacyKeyMigration {
+
+    private static final String LOCK_KEY_PREFIX = "delay:migrate:";
+    private static final String DONE_KEY_PREFIX = "delay:migrated:";
+    private static final long LOCK_SECONDS = 600;
+    private static final int BATCH = 1000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final StringRedisTemplate redisTemplate;
+
+    LegacyKeyMigration(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 将队列的旧布局键中的待执行任务迁移到当前布局，已迁移到当前布局或其他实例正在迁移同一队列时跳过
+     * @param queue 队列运行时
+     * @param baseKey 队列的基础键（delay:queue 或 delay:named:名称）
+     * @param shardCount 分片数
+     * @return 迁移的任务数
+     */
+    long migrate(QueueRuntime queue, String baseKey, int shardCount) {
+        List<String> current = queue.getShardKeys();
+        // 完成标记带上当前布局的分片键，之后切换到集群布局时会再迁移一次
+        String doneKey = DONE_KEY_PREFIX + current.get(0);
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(doneKey))) {
+            return 0L;
+        }
+        String lockKey = LOCK_KEY_PREFIX + baseKey;
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, queue.getName(), LOCK_SECONDS, TimeUnit.SECONDS))) {
+            log.warn("Legacy keys of delay queue [{}] are being migrated by another instance", queue.getName());
+            return 0L;
+        }
+        try {
+            long migrated = migrateSingleKey(queue, baseKey, current);
+            for (String shardKey : QueueRuntime.buildShardKeys(baseKey, shardCount, false)) {
+                if (!shardKey.equals(baseKey) && !current.contains(shardKey)) {
+                    migrated += migrateShard(queue, shardKey);
+                }
+            }
+            if (migrated > 0) {
+                log.warn("Migrated {} pending task(s) of delay queue [{}] from the legacy key layout", migrated, queue.getName());
+            }
+            redisTemplate.opsForValue().set(doneKey, String.valueOf(System.currentTimeMillis()));
+            return migrated;
+        } finally {
+            redisTemplate.delete(lockKey);
+        }
+    }
+
+    /**
+     * 迁移升级前的单个 delay:queue（命名队列为 delay:named:名称）
+     * 仍是当前布局的唯一分片时只改写带引号的旧成员，任务记录已在同一个Hash中；否则按旧分片整体迁移
+     * @return 迁移的任务数
+     */
+    private long migrateSingleKey(QueueRuntime queue, String baseKey, List<String> current) {
+        if (current.contains(baseKey)) {
+            return migrateKey(queue, baseKey, QueueRuntime.dataKeyOf(baseKey), true, -1);
+        }
+        return migrateShard(queue, baseKey);
+    }
+
+    /**
+     * 迁移一个不属于当前布局的旧分片的所有键
+     * @return 放回通道的任务数
+     */
+    private long migrateShard(QueueRuntime queue, String shardKey) {
+        long migrated = 0;
+        String dataKey = QueueRuntime.dataKeyOf(shardKey);
+        for (TaskPriority lane : TaskPriority.values()) {
+            migrated += migrateKey(queue, lane.laneKey(shardKey), dataKey, false, -1);
+        }
+        String indexKey = QueueRuntime.bucketIndexKeyOf(shardKey);
+        Set<String> buckets = redisTemplate.opsForZSet().range(indexKey, 0, -1);
+        if (buckets != null) {
+            for (String bucketKey : buckets) {
+                migrated += migrateKey(queue, bucketKey, dataKey, false, -1);
+            }
+        }
+        redisTemplate.delete(indexKey);
+        migrated += migrateKey(queue, QueueRuntime.inflightKeyOf(shardKey), dataKey, false, System.currentTimeMillis());
+        migrated += migrateStream(queue, QueueRuntime.streamKeyOf(shardKey), dataKey);
+        moveKey(queue, QueueRuntime.deadKeyOf(shardKey), dataKey, QueueRuntime::deadKeyOf);
+        moveKey(queue, QueueRuntime.cancelledKeyOf(shardKey), dataKey, QueueRuntime::cancelledKeyOf);
+        return migrated;
+    }
+
+    /**
+     * 用 ZSCAN 遍历一个旧ZSET，每 BATCH 个成员迁移一批；与当前布局相同的键只迁移带引号的旧成员，任务记录在同一个Hash中，不删除
+     * @param executeTime 统一的执行时间，-1 表示沿用成员分数（旧执行中集合的分数是租约到期时间，不能沿用）
+     * @return 迁移的任务数
+     */
+    private long migrateKey(QueueRuntime queue, String key, String dataKey, boolean sameLayout, long executeTime) {
+        long migrated = 0;
+        long dropped = 0;
+        List<ZSetOperations.TypedTuple<String>> batch = new ArrayList<>(BATCH);
+        try (Cursor<ZSetOperations.TypedTuple<String>> cursor = redisTemplate.opsForZSet().scan(key,
+                ScanOptions.scanOptions().match(sameLayout ? "\"*" : "*").count(BATCH).build())) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == BATCH || !cursor.hasNext()) {
+                    int scheduled = migrateBatch(queue, key, dataKey, sameLayout, executeTime, batch);
+                    migrated += scheduled;
+                    dropped += batch.size() - scheduled;
+                    batch.clear();
+                }
+            }
+        }
+        if (migrated + dropped > 0) {
+            log.warn("Migrated {} task(s) from legacy key {}, {} cancelled task(s) dropped", migrated, key, dropped);
+        }
+        return migrated;
+    }
+
+    /**
+     * 将一批旧成员按原执行时间写入当前布局，再从旧键中删除（重复执行时同一任务ID只会覆盖写入）
+     * @return 写入的任务数
+     */
+    private int migrateBatch(QueueRuntime queue, String key, String dataKey, boolean sameLayout, long executeTime,
+                             List<ZSetOperations.TypedTuple<String>> batch) {
+        List<ClaimedTask> tasks = new ArrayList<>(batch.size());
+        List<Object> members = new ArrayList<>(batch.size());
+        List<Object> taskIds = new ArrayList<>(batch.size());
+        for (ZSetOperations.TypedTuple<String> entry : batch) {
+            String member = entry.getValue();
+            String taskId = unquote(member);
+            members.add(member);
+            taskIds.add(taskId);
+            double score = entry.getScore() != null ? entry.getScore() : 0D;
+            if (score >= Long.MAX_VALUE || taskId.isEmpty()) {
+                // 升级前取消的任务（分数为 Double.MAX_VALUE）不再迁移
+                continue;
+            }
+            Object encoded = sameLayout ? null : redisTemplate.opsForHash().get(dataKey, taskId);
+            TaskRecord record = TaskRecord.decode(taskId, encoded != null ? encoded.toString() : null);
+            record.setQueueName(queue.getName());
+            tasks.add(new ClaimedTask(taskId, executeTime >= 0 ? executeTime : (long) score, record));
+        }
+        if (!tasks.isEmpty()) {
+            queue.scheduleAll(tasks);
+        }
+        redisTemplate.opsForZSet().remove(key, members.toArray());
+        if (!sameLayout) {
+            redisTemplate.opsForHash().delete(dataKey, taskIds.toArray());
+        }
+        return tasks.size();
+    }
+
+    /**
+     * 去掉 Jackson 序列化时加上的引号，不是JSON字符串时原样返回
+     */
+    private static String unquote(String member) {
+        if (member.length() < 2 || !member.startsWith("\"") || !member.endsWith("\"")) {
+            return member;
+        }
+        try {
+            return MAPPER.readValue(member, String.class);
+        } catch (JsonProcessingException e) {
+            return member;
+        }
+    }
+
+    /**
+     * 将旧 Stream 中的条目（包括已投递未确认的）按原执行时间放回当前布局的通道，每 BATCH 条一批，全部放回后删除 Stream 及其消费组
+     * @return 放回的任务数
+     */
+    private long migrateStream(QueueRuntime queue, String streamKey, String dataKey) {
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(streamKey))) {
+            return 0L;
+        }
+        long migrated = 0;
+        List<MapRecord<String, Object, Object>> entries;
+        do {
+            entries = redisTemplate.opsForStream().range(streamKey, Range.unbounded(), Limit.limit().count(BATCH));
+            if (entries == null || entries.isEmpty()) {
+                break;
+            }
+            List<ClaimedTask> tasks = new ArrayList<>(entries.size());
+            List<RecordId> ids = new ArrayList<>(entries.size());
+            List<Object> taskIds = new ArrayList<>(entries.size());
+            for (MapRecord<String, Object, Object> entry : entries) {
+                ids.add(entry.getId());
+                Object taskId = entry.getValue().get("id");
+                Object score = entry.getValue().get("s");
+                if (taskId == null) {
+                    continue;
+                }
+                Object encoded = redisTemplate.opsForHash().get(dataKey, taskId.toString());
+                TaskRecord record = TaskRecord.decode(taskId.toString(), encoded != null ? encoded.toString() : null);
+                record.setQueueName(queue.getName());
+                long executeTime = score != null ? (long) Double.parseDouble(score.toString()) : System.currentTimeMillis();
+                tasks.add(new ClaimedTask(taskId.toString(), executeTime, record));
+                taskIds.add(taskId.toString());
+            }
+            if (!tasks.isEmpty()) {
+                queue.scheduleAll(tasks);
+                redisTemplate.opsForHash().delete(dataKey, taskIds.toArray());
+            }
+            redisTemplate.opsForStream().delete(streamKey, ids.toArray(new RecordId[0]));
+            migrated += tasks.size();
+        } while (entries.size() == BATCH);
+        redisTemplate.delete(streamKey);
+        if (migrated > 0) {
+            log.warn("Migrated {} task(s) from legacy stream {}", migrated, streamKey);
+        }
+        return migrated;
+    }
+
+    /**
+     * 将旧布局的死信或取消集合连同任务记录移到任务所在分片的对应集合，保留原分数（进入死信或取消的时间），每 BATCH 个成员一批
+     * @param targetKeyOf 分片键 -> 当前布局中对应的集合键
+     */
+    private void moveKey(QueueRuntime queue, String key, String dataKey, Function<String, String> targetKeyOf) {
+        long moved = 0;
+        List<ZSetOperations.TypedTuple<String>> batch = new ArrayList<>(BATCH);
+        try (Cursor<ZSetOperations.TypedTuple<String>> cursor = redisTemplate.opsForZSet().scan(key,
+                ScanOptions.scanOptions().count(BATCH).build())) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == BATCH || !cursor.hasNext()) {
+                    moved += moveBatch(queue, key, dataKey, targetKeyOf, batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (moved > 0) {
+            log.warn("Moved {} task(s) from legacy key {}", moved, key);
+        }
+    }
+
+    /**
+     * 先写入当前布局再从旧键中删除，重复执行时同一任务ID只会覆盖写入
+     * @return 移动的任务数
+     */
+    private int moveBatch(QueueRuntime queue, String key, String dataKey, Function<String, String> targetKeyOf,
+                          List<ZSetOperations.TypedTuple<String>> batch) {
+        List<Object> members = new ArrayList<>(batch.size());
+        for (ZSetOperations.TypedTuple<String> entry : batch) {
+            String taskId = entry.getValue();
+            members.add(taskId);
+            String shardKey = queue.shardKeyOf(taskId);
+            Object encoded = redisTemplate.opsForHash().get(dataKey, taskId);
+            if (encoded != null) {
+                TaskRecord record = TaskRecord.decode(taskId, encoded.toString());
+                record.setQueueName(queue.getName());
+                redisTemplate.opsForHash().put(QueueRuntime.dataKeyOf(shardKey), taskId, record.encode());
+            }
+            redisTemplate.opsForZSet().add(targetKeyOf.apply(shardKey), taskId, entry.getScore() != null ? entry.getScore() : 0D);
+        }
+        redisTemplate.opsForZSet().remove(key, members.toArray());
+        redisTemplate.opsForHash().delete(dataKey, members.toArray());
+        return batch.size();
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.redis.connection.DecoratedRedisConnection;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 队列的管理操作：取消 / 删除 / 重新排期（单个、批量及按条件）、死信队列的查看、重新入队和清空，以及清空整个队列
+ * 每次脚本调用处理的任务数受 BULK_CHUNK 限制，不会长时间阻塞Redis
+ */
+@Slf4j
+final class QueueAdmin {
+
+    private final QueueRuntime queue;
+    private final StringRedisTemplate redisTemplate;
+
+    QueueAdmin(QueueRuntime queue, StringRedisTemplate redisTemplate) {
+        this.queue = queue;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 将尚未认领的任务移入取消集合，保留期内仍可通过重新排期恢复
+     * @return 任务是否存在
+     */
+    boolean cancel(String taskId) {
+        return apply(BulkAction.CANCEL, Collections.singletonList(taskId), 0L) > 0;
+    }
+
+    /**
+     * 在原优先级通道中重新设置任务的执行时间，保留任务记录
+     * @return 任务是否存在
+     */
+    boolean reschedule(String taskId, long executeTime) {
+        return apply(BulkAction.RESCHEDULE, Collections.singletonList(taskId), executeTime) > 0;
+    }
+
+    /**
+     * 删除任务及其任务记录，执行中的任务删除后不会再被重新投递
+     * @return 是否删除了调度项
+     */
+    boolean remove(String taskId) {
+        return apply(BulkAction.DELETE, Collections.singletonList(taskId), 0L) > 0;
+    }
+
+    /**
+     * 对一批任务执行批量操作：按分片分组，每 QueueRuntime.BULK_CHUNK 个任务一次脚本调用，查找与修改在服务端原子完成
+     * @param action 操作类型
+     * @param taskIds 任务ID
+     * @param executeTime 重新排期的执行时间，其他操作忽略
+     * @return 受影响的任务数
+     */
+    long apply(BulkAction action, Collection<String> taskIds, long executeTime) {
+        Map<String, List<String>> byShard = new HashMap<>();
+        for (String taskId : taskIds) {
+            if (taskId != null && !taskId.isEmpty()) {
+                byShard.computeIfAbsent(queue.shardKeyOf(taskId), key -> new ArrayList<>()).add(taskId);
+            }
+        }
+        String score = String.valueOf(action == BulkAction.CANCEL ? System.currentTimeMillis() : executeTime);
+        long affected = 0;
+        Map<String, Long> rescheduled = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : byShard.entrySet()) {
+            String shardKey = entry.getKey();
+            List<String> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += QueueRuntime.BULK_CHUNK) {
+                long count = applyChunk(action, shardKey, ids.subList(from, Math.min(from + QueueRuntime.BULK_CHUNK, ids.size())), score);
+                if (count > 0) {
+                    affected += count;
+                    if (action == BulkAction.RESCHEDULE) {
+                        rescheduled.put(shardKey, executeTime);
+                    }
+                }
+            }
+        }
+        queue.wakeShards(rescheduled);
+        return affected;
+    }
+
+    /**
+     * 对同一分片的一组任务执行批量操作：先读取任务记录，按任务所在的远期桶分组，每组一次脚本调用（远期桶作为声明的键传入）；
+     * 任务记录在读取后被并发修改的任务重新读取、分组后重试
+     * @return 受影响的任务数
+     */
+    @SuppressWarnings("unchecked")
+    private long applyChunk(BulkAction action, String shardKey, List<String> taskIds, String score) {
+        List<String> baseKeys = Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                TaskPriority.LOW.laneKey(shardKey), QueueRuntime.inflightKeyOf(shardKey), QueueRuntime.deadKeyOf(shardKey), QueueRuntime.dataKeyOf(shardKey),
+                QueueRuntime.cancelledKeyOf(shardKey), QueueRuntime.statsKeyOf(shardKey));
+        long affected = 0;
+        List<String> pending = taskIds;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            if (attempt > QueueRuntime.MAX_CONFLICT_RETRIES) {
+                throw new ConcurrencyFailureException("Task records of shard " + shardKey + " kept changing during " + action);
+            }
+            List<Object> raw = redisTemplate.opsForHash().multiGet(QueueRuntime.dataKeyOf(shardKey), new ArrayList<>(pending));
+            // 远期桶键（不在远期桶中的任务为空字符串）-> 脚本参数
+            Map<String, List<String>> byBucket = new LinkedHashMap<>();
+            for (int i = 0; i < pending.size(); i++) {
+                String taskId = pending.get(i);
+                String encoded = raw != null && raw.get(i) != null ? raw.get(i).toString() : null;
+                String bucketKey = queue.recordBucketKey(shardKey, taskId, encoded);
+                List<String> args = byBucket.computeIfAbsent(bucketKey != null ? bucketKey : "", key -> new ArrayList<>());
+                args.add(taskId);
+                args.add(DelayQueueScripts.sha1Hex(encoded));
+                args.add(String.valueOf(queue.laneOf(encoded != null ? TaskRecord.decode(taskId, encoded) : null).ordinal() + 1));
+            }
+            List<String> conflicts = new ArrayList<>();
+            for (Map.Entry<String, List<String>> group : byBucket.entrySet()) {
+                List<String> keys = baseKeys;
+                if (!group.getKey().isEmpty()) {
+                    keys = new ArrayList<>(baseKeys);
+                    keys.add(group.getKey());
+                }
+                List<Object> args = new ArrayList<>(group.getValue().size() + 2);
+                args.add(action.name());
+                args.add(score);
+                args.addAll(group.getValue());
+                List<Object> result = redisTemplate.execute(DelayQueueScripts.BULK_APPLY, keys, args.toArray());
+                if (result == null || result.isEmpty()) {
+                    continue;
+                }
+                affected += ((Number) result.get(0)).longValue();
+                for (int i = 1; i < result.size(); i++) {
+                    conflicts.add(String.valueOf(result.get(i)));
+                }
+            }
+            pending = conflicts;
+        }
+        return affected;
+    }
+
+    /**
+     * 对符合筛选条件、尚未认领的任务（含远期桶中的任务）执行批量操作
+     * 先扫描三条优先级通道，再扫描远期桶；远期桶中的任务重新排期后进入优先级通道，不会被再次扫描到
+     * 每条通道和每个远期桶按 (执行时间, 任务ID) 游标分段只读扫描（每次最多 QueueRuntime.BULK_CHUNK 个），每段匹配的任务立即分批修改，
+     * 任何一次脚本调用都不会长时间阻塞Redis，也不需要在内存中保存全部匹配的任务ID
+     * @param action 操作类型
+     * @param filter 筛选条件
+     * @param executeTime 重新排期的执行时间，其他操作忽略
+     * @return 受影响的任务数
+     */
+    long apply(BulkAction action, TaskFilter filter, long executeTime) {
+        String min = filter.getFromTime() != null ? String.valueOf(filter.getFromTime()) : "-inf";
+        String max = filter.getToTime() != null ? String.valueOf(filter.getToTime()) : "+inf";
+        String taskType = filter.getTaskType() != null ? filter.getTaskType().trim() : "";
+        // 重新排期到扫描范围内的任务会在游标之后再次出现，按目标时间跳过，避免重复处理
+        String skipScore = action == BulkAction.RESCHEDULE ? String.valueOf(executeTime) : "";
+        long affected = 0;
+        for (String shardKey : queue.getShardKeys()) {
+            for (String sourceKey : queue.sourceKeysOf(shardKey, false, max)) {
+                affected += applyMatching(action, sourceKey, QueueRuntime.dataKeyOf(shardKey), min, max, taskType, skipScore, executeTime);
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * 分段扫描一个ZSET中匹配的任务，每段扫描后立即执行批量操作
+     * @return 受影响的任务数
+     */
+    @SuppressWarnings("unchecked")
+    private long applyMatching(BulkAction action, String sourceKey, String dataKey, String min, String max,
+                               String taskType, String skipScore, long executeTime) {
+        List<String> keys = Arrays.asList(sourceKey, dataKey);
+        String cursorScore = "";
+        String cursorMember = "";
+        long affected = 0;
+        while (true) {
+            List<Object> raw = redisTemplate.execute(DelayQueueScripts.SCAN_MATCHING, keys, min, max, cursorScore, cursorMember,
+                    String.valueOf(QueueRuntime.BULK_CHUNK), taskType, skipScore);
+            if (raw == null || raw.size() < 3) {
+                return affected;
+            }
+            if (raw.size() > 3) {
+                List<String> matched = new ArrayList<>(raw.size() - 3);
+                for (int i = 3; i < raw.size(); i++) {
+                    matched.add(raw.get(i).toString());
+                }
+                affected += apply(action, matched, executeTime);
+            }
+            if (QueueRuntime.toLong(raw.get(0)) == 1) {
+                return affected;
+            }
+            cursorScore = raw.get(1).toString();
+            cursorMember = raw.get(2).toString();
+        }
+    }
+
+    /**
+     * 列出死信任务，按进入死信队列的时间倒序
+     * @param limit 最多返回的数量
+     * @return 任务ID、进入死信队列的时间及任务记录
+     */
+    List<Map<String, Object>> getDeadLetters(int limit) {
+        List<Map<String, Object>> deadLetters = new ArrayList<>();
+        for (String shardKey : queue.getShardKeys()) {
+            Set<ZSetOperations.TypedTuple<String>> entries =
+                    redisTemplate.opsForZSet().reverseRangeWithScores(QueueRuntime.deadKeyOf(shardKey), 0, limit - 1);
+            if (entries == null || entries.isEmpty()) {
+                continue;
+            }
+            List<Object> taskIds = new ArrayList<>(entries.size());
+            entries.forEach(entry -> taskIds.add(entry.getValue()));
+            List<Object> encoded = redisTemplate.opsForHash().multiGet(QueueRuntime.dataKeyOf(shardKey), taskIds);
+            int index = 0;
+            for (ZSetOperations.TypedTuple<String> entry : entries) {
+                Object data = encoded.get(index++);
+                TaskRecord record = TaskRecord.decode(entry.getValue(), data != null ? data.toString() : null);
+                Map<String, Object> item = new HashMap<>();
+                item.put("id", entry.getValue());
+                item.put("failedTime", entry.getScore() != null ? entry.getScore().longValue() : null);
+                item.put("taskType", record.getTaskType());
+                item.put("priority", record.getPriority());
+                item.put("attempts", record.getAttempts());
+                item.put("lastError", record.getLastError());
+                item.put("payload", record.getPayload());
+                deadLetters.add(item);
+            }
+        }
+        deadLetters.sort((a, b) -> Long.compare(QueueRuntime.toLong(b.get("failedTime")), QueueRuntime.toLong(a.get("failedTime"))));
+        return deadLetters.size() > limit ? new ArrayList<>(deadLetters.subList(0, limit)) : deadLetters;
+    }
+
+    /**
+     * 将死信任务重新放回队列立即执行，重试次数清零
+     * @return 任务是否在死信队列中
+     */
+    boolean requeueDeadLetter(String taskId) {
+        String shardKey = queue.shardKeyOf(taskId);
+        Object data = redisTemplate.opsForHash().get(QueueRuntime.dataKeyOf(shardKey), taskId);
+        TaskRecord record = TaskRecord.decode(taskId, data != null ? data.toString() : null);
+        record.setAttempts(0);
+        record.setLastError(null);
+        long now = System.currentTimeMillis();
+        Long moved = redisTemplate.execute(DelayQueueScripts.MOVE,
+                Arrays.asList(QueueRuntime.deadKeyOf(shardKey), queue.laneOf(record).laneKey(shardKey), QueueRuntime.dataKeyOf(shardKey), QueueRuntime.statsKeyOf(shardKey)),
+                taskId, String.valueOf(now), record.encode(), "requeued");
+        if (moved == null || moved == 0) {
+            return false;
+        }
+        queue.wakeupOf(shardKey).offer(now - queue.leaseAhead());
+        return true;
+    }
+
+    /**
+     * 清空死信队列及其任务记录，每 QueueRuntime.BULK_CHUNK 个任务一次脚本调用
+     * @return 清除的任务数
+     */
+    long purgeDeadLetters() {
+        long purged = 0;
+        for (String shardKey : queue.getShardKeys()) {
+            List<String> keys = Arrays.asList(QueueRuntime.deadKeyOf(shardKey), QueueRuntime.dataKeyOf(shardKey));
+            Long count;
+            do {
+                count = redisTemplate.execute(DelayQueueScripts.PURGE_DEAD, keys, String.valueOf(QueueRuntime.BULK_CHUNK));
+                purged += count != null ? count : 0L;
+            } while (count != null && count >= QueueRuntime.BULK_CHUNK);
+        }
+        log.info("Dead letter queue of [{}] purged, {} task(s) removed", queue.getName(), purged);
+        return purged;
+    }
+
+    /**
+     * 清空队列中所有尚未认领的任务、远期桶、执行中记录、Stream 条目、死信任务、已取消任务、任务记录及入队标记
+     * @return 各类被删除的数量：drained（删除的调度项总数）/ pending / bucketed / running / streamed / dead / cancelled /
+     *         records（任务记录）/ markers（入队标记）
+     */
+    Map<String, Long> drain() {
+        List<String> buckets = queue.bucketKeys();
+        long bucketed = queue.countBucketedTasks(buckets);
+        long pending = 0;
+        long inflight = 0;
+        long streamed = 0;
+        long dead = 0;
+        long cancelled = 0;
+        long records = 0;
+        long markers = 0;
+        for (String shardKey : queue.getShardKeys()) {
+            List<Object> sizes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (TaskPriority lane : TaskPriority.values()) {
+                    conn.zCard(lane.laneKey(shardKey));
+                }
+                conn.zCard(QueueRuntime.inflightKeyOf(shardKey));
+                conn.xLen(QueueRuntime.streamKeyOf(shardKey));
+                conn.zCard(QueueRuntime.deadKeyOf(shardKey));
+                conn.zCard(QueueRuntime.cancelledKeyOf(shardKey));
+                conn.hLen(QueueRuntime.dataKeyOf(shardKey));
+                return null;
+            });
+            pending += QueueRuntime.toLong(sizes.get(0)) + QueueRuntime.toLong(sizes.get(1)) + QueueRuntime.toLong(sizes.get(2));
+            inflight += QueueRuntime.toLong(sizes.get(3));
+            streamed += QueueRuntime.toLong(sizes.get(4));
+            dead += QueueRuntime.toLong(sizes.get(5));
+            cancelled += QueueRuntime.toLong(sizes.get(6));
+            records += QueueRuntime.toLong(sizes.get(7));
+            // 计数器是累计值，清空队列时保留
+            redisTemplate.delete(Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                    TaskPriority.LOW.laneKey(shardKey), QueueRuntime.inflightKeyOf(shardKey), QueueRuntime.deadKeyOf(shardKey), QueueRuntime.dataKeyOf(shardKey),
+                    QueueRuntime.streamKeyOf(shardKey), QueueRuntime.cancelledKeyOf(shardKey), QueueRuntime.bucketIndexKeyOf(shardKey)));
+            redisTemplate.opsForHash().delete(QueueRuntime.statsKeyOf(shardKey), QueueRuntime.BUCKETED_COUNTER);
+            // 已执行完毕的任务的入队标记也一并删除
+            markers += deleteMatching(globEscape(QueueRuntime.markerKeyOf(shardKey, "")) + "*");
+            if (queue.isRunning() && queue.getStreamConsumer() != null) {
+                // Stream 被删除后消费者组随之消失，重新创建
+                queue.getStreamConsumer().ensureGroup(shardKey);
+            }
+        }
+        if (!buckets.isEmpty()) {
+            redisTemplate.delete(buckets);
+        }
+        Map<String, Long> drained = new LinkedHashMap<>();
+        drained.put("drained", pending + bucketed + inflight + streamed + dead + cancelled);
+        drained.put("pending", pending);
+        drained.put("bucketed", bucketed);
+        drained.put("running", inflight);
+        drained.put("streamed", streamed);
+        drained.put("dead", dead);
+        drained.put("cancelled", cancelled);
+        drained.put("records", records);
+        drained.put("markers", markers);
+        return drained;
+    }
+
+    /**
+     * 用 SCAN 按模式分批删除键，每 QueueRuntime.BULK_CHUNK 个键删除一次；集群模式下逐个主节点扫描
+     * @param pattern SCAN 的 MATCH 模式，字面部分需先用 globEscape 转义
+     * @return 删除的键数
+     */
+    long deleteMatching(String pattern) {
+        Long deleted = redisTemplate.execute((RedisCallback<Long>) connection -> {
+            RedisConnection raw = connection instanceof DecoratedRedisConnection
+                    ? ((DecoratedRedisConnection) connection).getDelegate() : connection;
+            ScanOptions options = ScanOptions.scanOptions().match(pattern).count(QueueRuntime.BULK_CHUNK).build();
+            if (!(raw instanceof RedisClusterConnection)) {
+                return deleteScanned(raw, raw.keyCommands().scan(options));
+            }
+            RedisClusterConnection cluster = (RedisClusterConnection) raw;
+            long total = 0;
+            for (RedisClusterNode node : cluster.clusterGetNodes()) {
+                if (node.isMaster()) {
+                    total += deleteScanned(raw, cluster.scan(node, options));
+                }
+            }
+            return total;
+        });
+        return deleted != null ? deleted : 0L;
+    }
+
+    private static long deleteScanned(RedisConnection connection, Cursor<byte[]> cursor) {
+        long deleted = 0;
+        List<byte[]> batch = new ArrayList<>(QueueRuntime.BULK_CHUNK);
+        try (cursor) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() == QueueRuntime.BULK_CHUNK || !cursor.hasNext()) {
+                    Long count = connection.keyCommands().del(batch.toArray(new byte[0][]));
+                    deleted += count != null ? count : 0L;
+                    batch.clear();
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 转义 SCAN MATCH 模式中的通配符，使键名按字面匹配
+     */
+    static String globEscape(String literal) {
+        StringBuilder escaped = new StringBuilder(literal.length());
+        for (char c : literal.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
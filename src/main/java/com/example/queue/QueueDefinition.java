@@ -0,0 +1,40 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 命名队列定义
+ * 保存在Redis的 delay:queues Hash 中，所有实例据此启动各自的消费者
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueueDefinition {
+
+    /**
+     * 队列名称
+     */
+    private String name;
+
+    /**
+     * 分片数量
+     */
+    private Integer shardCount;
+
+    /**
+     * 并发上限（每个实例上该队列的执行线程数）
+     */
+    private Integer concurrency;
+
+    /**
+     * 执行线程池的等待队列容量
+     */
+    private Integer queueCapacity;
+
+    /**
+     * 创建时间（毫秒时间戳）
+     */
+    private Long createTime;
+}
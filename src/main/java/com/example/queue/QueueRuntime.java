@@ -0,0 +1,1178 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个队列在本实例上的运行时
+ * 包含该队列的分片键、每个分片的轮询线程、独立的执行线程池（并发上限）、可选的时间轮以及统计数据，
+ * 不同队列之间互不共享执行资源，一个队列的积压不会饿死其他队列。
+ * Stream 模式的消费由 StreamConsumer 负责，任务列表和搜索由 TaskBrowser 负责，取消、改期、死信和清空等管理操作由 QueueAdmin 负责。
+ */
+@Slf4j
+class QueueRuntime {
+
+    private final RedisDelayQueue owner;
+    private final StringRedisTemplate redisTemplate;
+    private final String name;
+    private final List<String> shardKeys;
+    private final Map<String, ShardWakeup> shardWakeups = new HashMap<>();
+    private final ExecutorService pollerExecutor;
+    private final int concurrency;
+    private final int queueCapacity;
+
+    // 任务执行线程池，与轮询线程分离，避免慢任务拖慢其他任务的触发
+    private final ThreadPoolExecutor workerPool;
+    // 执行槽位 = 线程数 + 等待队列容量；没有空闲槽位时轮询线程停止认领（背压），而不是丢弃任务
+    private final Semaphore workerPermits;
+    // 可选的进程内时间轮：提前租借即将到期的任务，在内存中按毫秒精度触发
+    private final HierarchicalTimingWheel timingWheel;
+    private final long leaseWindowMs;
+    // Stream 模式：到期任务由搬运线程写入分片的 Stream，各实例通过消费者组领取执行，租约由消费者组的待确认列表跟踪
+    private final boolean streamMode;
+    // Stream 模式的搬运和消费线程，非 Stream 模式时为 null
+    private final StreamConsumer streamConsumer;
+    // 列表、搜索等只读查询
+    private final TaskBrowser browser;
+    // 取消、删除、重新排期、死信和清空队列等管理操作
+    private final QueueAdmin admin;
+
+    // 按任务类型记录的延迟直方图：触发延迟（开始执行时间 - 计划执行时间）和处理器执行耗时
+    private final Map<String, LatencyHistogram> fireLagByType = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> handlerLatencyByType = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    // 批量写入时每次脚本调用的最大任务数，控制单次脚本的执行时间和参数数量
+    private static final int ENQUEUE_CHUNK = 1000;
+    // 批量取消/删除/重新排期时每次脚本调用处理的任务数，控制单次脚本的执行时间
+    static final int BULK_CHUNK = 1000;
+    // 脚本发现任务记录在读取后被并发修改时的最大重试次数
+    static final int MAX_CONFLICT_RETRIES = 10;
+    // 计数器Hash中由脚本累加的字段：认领、完成、失败（每次失败的尝试）、重试、进入死信队列、重复任务放弃本次执行、死信重新入队、租约过期回收、被限流推迟
+    private static final String[] COUNTERS = {"claimed", "completed", "failed", "retried", "deadLettered", "skipped", "requeued", "expired", "throttled"};
+    // 限流预约时间在该时长之内的任务在本地延迟分发，更晚的放回队列（毫秒）
+    private static final long LOCAL_THROTTLE_MS = 1000;
+    private static final String BUCKET_SEPARATOR = ":bucket:";
+    // 计数器Hash中远期桶当前任务数的字段，写入远期桶时加1、移出时减1，与累计计数器不同，清空队列时重置
+    static final String BUCKETED_COUNTER = "bucketed";
+    // 清理过期取消记录的间隔
+    static final long CANCEL_PURGE_INTERVAL_MS = 60_000;
+    // Stream 模式的消费者组名称，所有实例共用
+    static final String STREAM_GROUP = "delay-queue-workers";
+
+    /**
+     * @param owner 所属的延迟队列
+     * @param name 队列名称
+     * @param baseKey 队列键前缀，单分片时即为ZSET键
+     * @param shardCount 分片数量
+     * @param concurrency 执行线程数
+     * @param queueCapacity 执行线程池等待队列容量
+     * @param leaseWindowMs 时间轮租借窗口，0 表示不启用时间轮
+     */
+    QueueRuntime(RedisDelayQueue owner, String name, String baseKey, int shardCount,
+                 int concurrency, int queueCapacity, long leaseWindowMs) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        this.owner = owner;
+        this.redisTemplate = owner.getRedisTemplate();
+        this.name = name;
+        this.shardKeys = buildShardKeys(baseKey, shardCount, owner.isHashTaggedKeys());
+        for (String shardKey : shardKeys) {
+            shardWakeups.put(shardKey, new ShardWakeup());
+        }
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.streamMode = owner.isStreamEnabled();
+        //每个分片一个轮询线程，分片内串行认领；Stream 模式下每个分片一个搬运线程和一个消费线程
+        this.pollerExecutor = Executors.newFixedThreadPool(streamMode ? shardCount * 2 : shardCount,
+                namedThreadFactory("delay-queue-" + name + "-poller-"));
+        this.workerPool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), namedThreadFactory("delay-queue-" + name + "-worker-"));
+        this.workerPermits = new Semaphore(concurrency + queueCapacity);
+        this.leaseWindowMs = leaseWindowMs;
+        this.timingWheel = leaseWindowMs > 0 ? new HierarchicalTimingWheel(1, 512, this::dispatch) : null;
+        this.streamConsumer = streamMode ? new StreamConsumer(this, owner) : null;
+        this.browser = new TaskBrowser(this, redisTemplate);
+        this.admin = new QueueAdmin(this, redisTemplate);
+    }
+
+    static List<String> buildShardKeys(String baseKey, int shardCount, boolean hashTagged) {
+        if (hashTagged) {
+            // 整个分片键作为哈希标签：同一分片的通道、执行中、任务数据等键落在同一个槽位，
+            // 不同队列、不同分片落在不同槽位，可以分布到集群的多个主节点
+            if (shardCount == 1) {
+                return Collections.singletonList("{" + baseKey + "}");
+            }
+            List<String> keys = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                keys.add("{" + baseKey + ":" + i + "}");
+            }
+            return Collections.unmodifiableList(keys);
+        }
+        if (shardCount == 1) {
+            return Collections.singletonList(baseKey);
+        }
+        List<String> keys = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            // 花括号作为哈希标签，使同一分片的键落在同一个集群槽位
+            keys.add(baseKey + ":{" + i + "}");
+        }
+        return Collections.unmodifiableList(keys);
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 分片对应的任务数据Hash键，与分片ZSET共用哈希标签
+     */
+    static String dataKeyOf(String shardKey) {
+        return shardKey + ":data";
+    }
+
+    /**
+     * 分片的执行中ZSET键，分数为租约到期时间，与分片ZSET共用哈希标签
+     */
+    static String inflightKeyOf(String shardKey) {
+        return shardKey + ":inflight";
+    }
+
+    /**
+     * 分片的死信ZSET键，分数为进入死信队列的时间
+     */
+    static String deadKeyOf(String shardKey) {
+        return shardKey + ":dead";
+    }
+
+    /**
+     * 远期桶键：通道键 + 桶的起始时间，与所在通道共用键前缀
+     */
+    static String bucketKeyOf(String laneKey, long bucketStart) {
+        return laneKey + BUCKET_SEPARATOR + bucketStart;
+    }
+
+    /**
+     * 分片的分桶索引ZSET键，成员为远期桶键，分数为桶的起始时间
+     */
+    static String bucketIndexKeyOf(String shardKey) {
+        return shardKey + ":buckets";
+    }
+
+    /**
+     * 分片的取消集合键，分数为取消时间，超过保留期后由轮询线程连同任务记录一并清理
+     */
+    static String cancelledKeyOf(String shardKey) {
+        return shardKey + ":cancelled";
+    }
+
+    /**
+     * 分片的任务Stream键（Stream 模式），条目字段为 id（任务ID）和 s（计划执行时间）
+     */
+    static String streamKeyOf(String shardKey) {
+        return shardKey + ":stream";
+    }
+
+    /**
+     * 任务的入队标记键（启用本地入队日志时写入），与分片ZSET共用哈希标签
+     */
+    static String markerKeyOf(String shardKey, String taskId) {
+        return shardKey + ":jid:" + taskId;
+    }
+
+    /**
+     * 分片的计数器Hash键：claimed / completed / failed / retried / deadLettered / expired 等累计值，以及远期桶的当前任务数 bucketed，由脚本原子累加
+     */
+    static String statsKeyOf(String shardKey) {
+        return shardKey + ":stats";
+    }
+
+    /**
+     * 分片的三条优先级通道（HIGH、NORMAL、LOW）、执行中ZSET、任务数据Hash及计数器Hash，顺序与脚本中的 KEYS 一致
+     */
+    private static List<String> shardScriptKeys(String shardKey) {
+        return Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                TaskPriority.LOW.laneKey(shardKey), inflightKeyOf(shardKey), dataKeyOf(shardKey), statsKeyOf(shardKey));
+    }
+
+    /**
+     * 任务所在的优先级通道，未启用优先级时统一进入 NORMAL 通道
+     */
+    TaskPriority laneOf(TaskRecord record) {
+        return owner.isPriorityEnabled() && record != null ? TaskPriority.of(record.getPriority()) : TaskPriority.NORMAL;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<String> getShardKeys() {
+        return shardKeys;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    TaskBrowser browser() {
+        return browser;
+    }
+
+    QueueAdmin admin() {
+        return admin;
+    }
+
+    StreamConsumer getStreamConsumer() {
+        return streamConsumer;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    ShardWakeup wakeupOf(String shardKey) {
+        return shardWakeups.get(shardKey);
+    }
+
+    void submitPoller(Runnable poller) {
+        pollerExecutor.submit(poller);
+    }
+
+    /**
+     * 启动时间轮和每个分片的轮询线程
+     */
+    void start() {
+        if (timingWheel != null) {
+            timingWheel.start("delay-queue-" + name + "-timing-wheel");
+        }
+        for (String shardKey : shardKeys) {
+            if (streamConsumer != null) {
+                streamConsumer.start(shardKey);
+            } else {
+                startConsumer(shardKey);
+            }
+        }
+        log.info("Delay queue [{}] started with {} shard(s), concurrency: {}, queue capacity: {}, timing wheel: {}, stream mode: {}",
+                name, shardKeys.size(), concurrency, queueCapacity, timingWheel != null, streamMode);
+    }
+
+    /**
+     * 根据任务ID定位所在分片的队列键
+     * @param taskId 任务ID
+     * @return 分片ZSET键
+     */
+    String shardKeyOf(String taskId) {
+        if (shardKeys.size() == 1) {
+            return shardKeys.get(0);
+        }
+        return shardKeys.get(Math.floorMod(taskId.hashCode(), shardKeys.size()));
+    }
+
+    /**
+     * 写入任务的执行时间和任务记录，并唤醒可能需要提前触发的轮询线程
+     * 执行时间早于扫描间隔时，同时通过发布/订阅通知其他实例，发布与写入在同一个脚本中完成
+     * @param taskId 任务ID
+     * @param executeTime 执行时间（毫秒时间戳）
+     * @param record 任务记录
+     */
+    void schedule(String taskId, long executeTime, TaskRecord record) {
+        String shardKey = shardKeyOf(taskId);
+        long now = System.currentTimeMillis();
+        EnqueueBatch batch = new EnqueueBatch(shardKey);
+        boolean bucketed = addToBatch(batch, taskId, executeTime, record, now);
+        long wakeTime = executeTime - leaseAhead();
+        // 远期任务由提升线程在到期前移入调度ZSET，无需唤醒；其他实例的轮询线程最迟在一个扫描间隔内醒来，更晚的任务也无需通知
+        boolean notify = !bucketed && wakeTime < now + owner.getScanInterval();
+        enqueue(batch, notify ? RedisDelayQueue.WAKEUP_CHANNEL : "",
+                notify ? owner.getInstanceId() + "|" + shardKey + "|" + executeTime : "", owner.getJournalMarkerSeconds(), false);
+        if (!bucketed) {
+            shardWakeups.get(shardKey).offer(wakeTime);
+        }
+    }
+
+    /**
+     * 将一个任务加入 ENQUEUE 批次，并在任务记录中标记所在的桶
+     * @return 是否写入远期桶
+     */
+    private boolean addToBatch(EnqueueBatch batch, String taskId, long executeTime, TaskRecord record, long now) {
+        long bucket = bucketOf(executeTime, now);
+        record.setBucket(bucket >= 0 ? bucket : null);
+        batch.add(taskId, executeTime, laneOf(record), bucket, record.encode());
+        return bucket >= 0;
+    }
+
+    /**
+     * 执行一次 ENQUEUE：先读取原任务记录以确定原任务所在的远期桶，再由脚本校验任务记录未被修改后写入；
+     * 读取后任务记录被并发修改时重新读取并重试
+     * @return 写入的任务数
+     */
+    private long enqueue(EnqueueBatch batch, String channel, String message, long markerSeconds, boolean ifAbsent) {
+        String shardKey = batch.getShardKey();
+        List<String> taskIds = batch.taskIds();
+        for (int attempt = 1; ; attempt++) {
+            List<Object> raw = redisTemplate.opsForHash().multiGet(dataKeyOf(shardKey), new ArrayList<>(taskIds));
+            List<String> previousRecords = new ArrayList<>(taskIds.size());
+            List<String> previousBuckets = new ArrayList<>(taskIds.size());
+            for (int i = 0; i < taskIds.size(); i++) {
+                String encoded = raw != null && raw.get(i) != null ? raw.get(i).toString() : null;
+                previousRecords.add(encoded);
+                previousBuckets.add(recordBucketKey(shardKey, taskIds.get(i), encoded));
+            }
+            batch.prepare(previousRecords, previousBuckets, channel, message, markerSeconds, ifAbsent);
+            Long written = redisTemplate.execute(DelayQueueScripts.ENQUEUE, batch.keys(), batch.args());
+            if (written == null || written >= 0) {
+                return written != null ? written : 0L;
+            }
+            if (attempt >= MAX_CONFLICT_RETRIES) {
+                throw new ConcurrencyFailureException("Task records of shard " + shardKey + " kept changing during enqueue");
+            }
+        }
+    }
+
+    /**
+     * 任务记录中标记的远期桶键，没有任务记录或未分桶时返回 null
+     */
+    String recordBucketKey(String shardKey, String taskId, String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        TaskRecord record = TaskRecord.decode(taskId, encoded);
+        return record.getBucket() != null ? bucketKeyOf(laneOf(record).laneKey(shardKey), record.getBucket()) : null;
+    }
+
+    /**
+     * 重放本地日志中的任务：已有入队标记时（之前的写入实际已成功，或已重放过，即使任务已执行完毕）跳过
+     * @param taskId 任务ID
+     * @param executeTime 执行时间
+     * @param record 任务记录
+     * @return 是否写入
+     */
+    boolean scheduleIfAbsent(String taskId, long executeTime, TaskRecord record) {
+        String shardKey = shardKeyOf(taskId);
+        EnqueueBatch batch = new EnqueueBatch(shardKey);
+        boolean bucketed = addToBatch(batch, taskId, executeTime, record, System.currentTimeMillis());
+        if (enqueue(batch, "", "", Math.max(owner.getJournalMarkerSeconds(), 1L), true) == 0) {
+            return false;
+        }
+        if (!bucketed) {
+            wakeShards(Collections.singletonMap(shardKey, executeTime));
+        }
+        return true;
+    }
+
+    /**
+     * 任务应写入的远期桶的起始时间，不需要分桶时返回 -1
+     * 只有桶的起始时间晚于 当前时间 + 提升提前量 + 一个桶宽 时才分桶，写入时该桶一定还没有被提升
+     * @param executeTime 执行时间
+     * @param now 当前时间
+     */
+    private long bucketOf(long executeTime, long now) {
+        if (!owner.isBucketEnabled()) {
+            return -1L;
+        }
+        long size = owner.getBucketSizeMs();
+        long start = executeTime - Math.floorMod(executeTime, size);
+        return start - owner.getBucketPromoteAheadMs() > now + size ? start : -1L;
+    }
+
+    /**
+     * 批量写入任务：先按分片分组（同一分片的键在同一个集群槽位），每个分片的任务记录和调度项
+     * 在一次脚本调用中写入（每 ENQUEUE_CHUNK 个一组），每个分片只为最早的任务发布一次唤醒通知
+     * @param tasks 任务ID、执行时间及任务记录
+     */
+    void scheduleAll(List<ClaimedTask> tasks) {
+        Map<String, Long> earliestByShard = new HashMap<>();
+        long now = System.currentTimeMillis();
+        Map<String, List<ClaimedTask>> byShard = new LinkedHashMap<>();
+        for (ClaimedTask task : tasks) {
+            byShard.computeIfAbsent(shardKeyOf(task.getTaskId()), key -> new ArrayList<>()).add(task);
+        }
+        for (Map.Entry<String, List<ClaimedTask>> group : byShard.entrySet()) {
+            String shardKey = group.getKey();
+            List<ClaimedTask> shardTasks = group.getValue();
+            for (int from = 0; from < shardTasks.size(); from += ENQUEUE_CHUNK) {
+                scheduleChunk(shardKey, shardTasks.subList(from, Math.min(from + ENQUEUE_CHUNK, shardTasks.size())), now, earliestByShard);
+            }
+        }
+        wakeShards(earliestByShard);
+    }
+
+    /**
+     * 在一次脚本调用中写入同一分片的一组任务
+     */
+    private void scheduleChunk(String shardKey, List<ClaimedTask> chunk, long now, Map<String, Long> earliestByShard) {
+        EnqueueBatch batch = new EnqueueBatch(shardKey);
+        for (ClaimedTask task : chunk) {
+            if (!addToBatch(batch, task.getTaskId(), task.getExecuteTime(), task.getRecord(), now)) {
+                earliestByShard.merge(shardKey, task.getExecuteTime(), Math::min);
+            }
+        }
+        enqueue(batch, "", "", owner.getJournalMarkerSeconds(), false);
+    }
+
+    /**
+     * 唤醒本实例的分片轮询线程，执行时间早于扫描间隔时同时通知其他实例
+     * @param earliestByShard 分片键 -> 该分片新写入任务中最早的执行时间
+     */
+    void wakeShards(Map<String, Long> earliestByShard) {
+        long notifyBefore = System.currentTimeMillis() + owner.getScanInterval();
+        for (Map.Entry<String, Long> entry : earliestByShard.entrySet()) {
+            long wakeTime = entry.getValue() - leaseAhead();
+            shardWakeups.get(entry.getKey()).offer(wakeTime);
+            if (wakeTime < notifyBefore) {
+                redisTemplate.convertAndSend(RedisDelayQueue.WAKEUP_CHANNEL,
+                        owner.getInstanceId() + "|" + entry.getKey() + "|" + entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 其他实例加入了更早的任务时唤醒对应分片
+     * @param shardKey 分片ZSET键
+     * @param executeTime 新任务的执行时间
+     * @return 分片是否属于本队列
+     */
+    boolean wakeUp(String shardKey, long executeTime) {
+        ShardWakeup wakeup = shardWakeups.get(shardKey);
+        if (wakeup == null) {
+            return false;
+        }
+        wakeup.offer(executeTime - leaseAhead());
+        return true;
+    }
+
+    /**
+     * 启用时间轮时，任务需要提前一个租借窗口被认领
+     */
+    long leaseAhead() {
+        return timingWheel != null ? leaseWindowMs : 0L;
+    }
+
+    /**
+     * 启动指定分片的延迟队列消费者
+     * @param shardKey 分片ZSET键
+     */
+    private void startConsumer(String shardKey) {
+        ShardWakeup wakeup = shardWakeups.get(shardKey);
+        pollerExecutor.submit(() -> {
+            long cycle = 0;
+            long nextReapTime = 0;
+            long nextPurgeTime = 0;
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    wakeup.beginCycle();
+                    // 每个扫描间隔回收一次租约过期的执行中任务，放回后在本轮即可被重新认领
+                    if (System.currentTimeMillis() >= nextReapTime) {
+                        reapExpiredLeases(shardKey);
+                        promoteDueBuckets(shardKey);
+                        nextReapTime = System.currentTimeMillis() + owner.getScanInterval();
+                    }
+                    if (System.currentTimeMillis() >= nextPurgeTime) {
+                        purgeExpiredCancellations(shardKey);
+                        nextPurgeTime = System.currentTimeMillis() + CANCEL_PURGE_INTERVAL_MS;
+                    }
+                    // 先占用执行槽位，认领数量不超过可立即交给线程池的数量
+                    int limit = acquireWorkerSlots(owner.getBatchSize());
+                    ClaimResult result;
+                    try {
+                        result = claimDueTasks(shardKey, System.currentTimeMillis() + leaseAhead(), limit, cycle++);
+                    } catch (DataAccessException e) {
+                        workerPermits.release(limit);
+                        log.error("Failed to fetch tasks from delay queue {}: {}", shardKey, e.getMessage());
+                        Thread.sleep(5000); // 等待5秒后重试
+                        continue;
+                    }
+                    List<ClaimedTask> tasks = result.getTasks();
+                    if (tasks.size() < limit) {
+                        workerPermits.release(limit - tasks.size());
+                    }
+
+                    for (ClaimedTask task : throttle(shardKey, tasks)) {
+                        // 尚未到期的租借任务交给时间轮，到期后再分发
+                        if (timingWheel != null && timingWheel.add(task)) {
+                            continue;
+                        }
+                        dispatch(task);
+                    }
+
+                    // 本批已满说明还有积压，立即继续认领
+                    if (tasks.size() >= limit) {
+                        continue;
+                    }
+
+                    // 休眠到下一个任务到期，最长不超过扫描间隔；期间有更早的任务加入会被提前唤醒
+                    long deadline = System.currentTimeMillis() + owner.getScanInterval();
+                    if (result.getNextExecuteTime() != null) {
+                        deadline = Math.min(deadline, result.getNextExecuteTime() - leaseAhead());
+                    }
+                    wakeup.awaitUntil(deadline);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("Error processing delay queue {}", shardKey, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按任务类型 / 队列的限流规则为本批任务预约执行时间：不受限或预约时间已到的任务返回给调用方立即处理，
+     * 预约时间在 LOCAL_THROTTLE_MS 之内的在本地延迟分发（占用的执行槽位保留），
+     * 更晚的带着预约标记放回优先级通道并归还执行槽位，再次认领时直接执行，不再重复预约
+     * 限流器不可用时不限流，避免Redis脚本故障阻塞任务执行
+     * @param shardKey 分片ZSET键
+     * @param tasks 本批认领到的任务
+     * @return 需要立即处理的任务
+     */
+    List<ClaimedTask> throttle(String shardKey, List<ClaimedTask> tasks) {
+        TaskRateLimiter limiter = owner.getRateLimiter();
+        if (tasks.isEmpty() || !limiter.isEnabled()) {
+            return tasks;
+        }
+        List<ClaimedTask> admitted = new ArrayList<>(tasks.size());
+        List<ClaimedTask> unreserved = new ArrayList<>(tasks.size());
+        for (ClaimedTask task : tasks) {
+            if (task.getRecord() != null && task.getRecord().getRateSlot() != null) {
+                task.getRecord().setRateSlot(null);
+                admitted.add(task);
+            } else {
+                unreserved.add(task);
+            }
+        }
+        long now = System.currentTimeMillis();
+        long[] slots;
+        try {
+            slots = limiter.reserve(name, unreserved, now);
+        } catch (DataAccessException e) {
+            log.warn("Rate limiter unavailable, dispatching {} task(s) without limits: {}", unreserved.size(), e.getMessage());
+            slots = null;
+        }
+        if (slots == null) {
+            admitted.addAll(unreserved);
+            return admitted;
+        }
+        List<ClaimedTask> deferred = new ArrayList<>();
+        for (int i = 0; i < slots.length; i++) {
+            ClaimedTask task = unreserved.get(i);
+            long slot = slots[i];
+            if (slot <= Math.max(now, task.getExecuteTime())) {
+                admitted.add(task);
+            } else if (slot - now <= LOCAL_THROTTLE_MS) {
+                limiter.runAt(slot, () -> dispatch(task));
+            } else {
+                task.getRecord().setRateSlot(slot);
+                deferred.add(task);
+            }
+        }
+        if (!deferred.isEmpty()) {
+            workerPermits.release(deferred.size());
+            deferThrottled(shardKey, deferred);
+        }
+        return admitted;
+    }
+
+    /**
+     * 将被限流推迟的任务按预约时间放回优先级通道；放回失败的任务租约过期后由回收逻辑重新投递
+     */
+    private void deferThrottled(String shardKey, List<ClaimedTask> tasks) {
+        boolean fromStream = tasks.get(0).getEntryId() != null;
+        List<String> keys = Arrays.asList(fromStream ? streamKeyOf(shardKey) : inflightKeyOf(shardKey),
+                TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey), TaskPriority.LOW.laneKey(shardKey),
+                dataKeyOf(shardKey), statsKeyOf(shardKey));
+        List<String> args = new ArrayList<>(1 + tasks.size() * 5);
+        args.add(fromStream ? STREAM_GROUP : "");
+        long earliest = Long.MAX_VALUE;
+        for (ClaimedTask task : tasks) {
+            args.add(task.getTaskId());
+            args.add(fromStream ? task.getEntryId() : "");
+            args.add(String.valueOf(laneOf(task.getRecord()).ordinal() + 1));
+            args.add(String.valueOf(task.getRecord().getRateSlot()));
+            args.add(task.getRecord().encode());
+            earliest = Math.min(earliest, task.getRecord().getRateSlot());
+        }
+        try {
+            Long deferred = redisTemplate.execute(DelayQueueScripts.DEFER_THROTTLED, keys, args.toArray());
+            shardWakeups.get(shardKey).offer(earliest - leaseAhead());
+            log.info("Rate limit deferred {} task(s) in delay queue {} until {} or later", deferred, shardKey, earliest);
+        } catch (DataAccessException e) {
+            log.error("Failed to defer {} throttled task(s) in delay queue {}: {}", tasks.size(), shardKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 归还执行槽位
+     */
+    void releaseWorkerSlots(int slots) {
+        workerPermits.release(slots);
+    }
+
+    /**
+     * 阻塞等待至少一个空闲执行槽位，再尽量多占用槽位（不超过 wanted）
+     * @param wanted 期望的槽位数
+     * @return 实际占用的槽位数
+     */
+    int acquireWorkerSlots(int wanted) throws InterruptedException {
+        workerPermits.acquire();
+        int extra = Math.min(wanted - 1, workerPermits.availablePermits());
+        if (extra > 0 && workerPermits.tryAcquire(extra)) {
+            return 1 + extra;
+        }
+        return 1;
+    }
+
+    /**
+     * 将认领到的任务交给执行线程池，由任务类型对应的处理器异步处理，处理成功后确认，失败时按重试策略处理，
+     * 处理器真正退出后才归还执行槽位（超时的处理器在被中断前仍占用线程）；
+     * 实例崩溃时任务不会被确认，租约过期后由回收逻辑放回队列重新投递（至少一次）
+     * @param task 认领到的任务
+     */
+    void dispatch(ClaimedTask task) {
+        try {
+            workerPool.execute(() -> {
+                AtomicBoolean released = new AtomicBoolean();
+                Runnable releasePermit = () -> {
+                    if (released.compareAndSet(false, true)) {
+                        workerPermits.release();
+                    }
+                };
+                CompletableFuture<Void> processing;
+                try {
+                    String taskType = taskTypeOf(task);
+                    histogramOf(fireLagByType, taskType).record(
+                            TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis() - task.getExecuteTime()));
+                    processing = owner.processTask(task.getRecord(), histogramOf(handlerLatencyByType, taskType), releasePermit);
+                } catch (Exception e) {
+                    releasePermit.run();
+                    processing = CompletableFuture.failedFuture(e);
+                }
+                processing.whenComplete((ignored, error) -> {
+                    try {
+                        if (error == null) {
+                            ack(task);
+                        } else {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                            log.error("Failed to process task {}: {}", task.getTaskId(), cause.getMessage());
+                            fail(task, cause);
+                        }
+                    } catch (Exception e) {
+                        log.error("Failed to complete task {}: {}", task.getTaskId(), e.getMessage());
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // 仅在关闭过程中发生，槽位机制保证正常运行时不会超出队列容量；任务放回队列由其他实例处理
+            workerPermits.release();
+            if (task.getEntryId() != null) {
+                // Stream 条目保留在待确认列表中，租约过期后由其他消费者接管
+                log.warn("Worker pool rejected task {}, leaving it pending in the stream", task.getTaskId());
+                return;
+            }
+            log.warn("Worker pool rejected task {}, returning it to the queue", task.getTaskId());
+            returnToQueue(Collections.singletonList(task));
+        }
+    }
+
+    /**
+     * 确认任务执行完成，删除执行中记录（Stream 模式下确认并删除条目）和任务记录；
+     * 重复任务在同一个脚本中按下一次执行时间写回队列
+     * @param task 执行完成的任务
+     */
+    private void ack(ClaimedTask task) {
+        String taskId = task.getTaskId();
+        String shardKey = shardKeyOf(taskId);
+        TaskRecord record = task.getRecord();
+        Long nextRun = Recurrence.nextRunTime(record, task.getExecuteTime(), System.currentTimeMillis());
+        String nextScore = "";
+        String encoded = "";
+        if (nextRun != null) {
+            record.setAttempts(0);
+            nextScore = String.valueOf(nextRun);
+            encoded = record.encode();
+        }
+        String lane = laneOf(record).laneKey(shardKey);
+        Long acked = task.getEntryId() != null
+                ? redisTemplate.execute(DelayQueueScripts.ACK_STREAM,
+                        Arrays.asList(streamKeyOf(shardKey), dataKeyOf(shardKey), statsKeyOf(shardKey), lane),
+                        STREAM_GROUP, task.getEntryId(), taskId, nextScore, encoded)
+                : redisTemplate.execute(DelayQueueScripts.ACK,
+                        Arrays.asList(inflightKeyOf(shardKey), dataKeyOf(shardKey), statsKeyOf(shardKey), lane),
+                        taskId, nextScore, encoded);
+        if (acked == null || acked == 0) {
+            // 执行时间超过租约，任务已被放回队列，会再次投递
+            log.warn("Lease of task {} expired before ack, it will be delivered again", taskId);
+        } else if (nextRun != null) {
+            shardWakeups.get(shardKey).offer(nextRun - leaseAhead());
+            log.debug("Recurring task {} scheduled to run again at {}", taskId, nextRun);
+        }
+    }
+
+    /**
+     * 处理失败：未超过最大重试次数时按指数退避（带随机抖动）重新排期，否则进入死信队列；
+     * 重复任务用尽重试次数时放弃本次执行，直接排期下一次，不进入死信队列
+     * 只有仍持有租约时才会转移，租约已被回收的任务由回收逻辑重新投递
+     * @param task 失败的任务
+     * @param error 失败原因
+     */
+    private void fail(ClaimedTask task, Throwable error) {
+        TaskRecord record = task.getRecord() != null ? task.getRecord() : TaskRecord.ofId(task.getTaskId());
+        int attempts = (record.getAttempts() != null ? record.getAttempts() : 0) + 1;
+        int maxRetries = record.getMaxRetries() != null ? record.getMaxRetries() : owner.getMaxRetryCount();
+        record.setAttempts(attempts);
+        record.setLastError(error.getMessage() != null ? error.getMessage() : error.getClass().getName());
+        String shardKey = shardKeyOf(task.getTaskId());
+        boolean dead = attempts > maxRetries;
+        long now = System.currentTimeMillis();
+        long score = dead ? now : now + owner.retryDelayMs(attempts);
+        String outcome = dead ? "deadLettered" : "retried";
+        Long nextRun = dead ? Recurrence.nextRunTime(record, task.getExecuteTime(), now) : null;
+        if (nextRun != null) {
+            dead = false;
+            score = nextRun;
+            outcome = "skipped";
+            record.setAttempts(0);
+        }
+        String target = dead ? deadKeyOf(shardKey) : laneOf(record).laneKey(shardKey);
+        try {
+            Long moved = task.getEntryId() != null
+                    ? redisTemplate.execute(DelayQueueScripts.MOVE_FROM_STREAM,
+                            Arrays.asList(streamKeyOf(shardKey), target, dataKeyOf(shardKey), statsKeyOf(shardKey)),
+                            STREAM_GROUP, task.getEntryId(), task.getTaskId(), String.valueOf(score), record.encode(), "failed", outcome)
+                    : redisTemplate.execute(DelayQueueScripts.MOVE,
+                            Arrays.asList(inflightKeyOf(shardKey), target, dataKeyOf(shardKey), statsKeyOf(shardKey)),
+                            task.getTaskId(), String.valueOf(score), record.encode(), "failed", outcome);
+            if (moved == null || moved == 0) {
+                return;
+            }
+            if (dead) {
+                log.warn("Task {} failed {} time(s), moved to dead letter queue [{}]", task.getTaskId(), attempts, name);
+            } else if (nextRun != null) {
+                shardWakeups.get(shardKey).offer(score - leaseAhead());
+                log.warn("Recurring task {} failed {} time(s), skipped to next run at {}", task.getTaskId(), attempts, score);
+            } else {
+                shardWakeups.get(shardKey).offer(score - leaseAhead());
+                log.info("Task {} failed {} time(s), retry at {}", task.getTaskId(), attempts, score);
+            }
+        } catch (DataAccessException e) {
+            // 租约过期后任务会被回收重新投递
+            log.error("Failed to reschedule failed task {}: {}", task.getTaskId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 将租约过期的执行中任务放回对应优先级通道
+     * @param shardKey 分片ZSET键
+     */
+    @SuppressWarnings("unchecked")
+    private void reapExpiredLeases(String shardKey) {
+        List<Object> reaped = redisTemplate.execute(DelayQueueScripts.REAP_EXPIRED, shardScriptKeys(shardKey),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(owner.getBatchSize()),
+                owner.isPriorityEnabled() ? "1" : "0");
+        if (reaped != null && !reaped.isEmpty()) {
+            log.warn("Reclaimed {} task(s) with expired lease in delay queue {}: {}", reaped.size(), shardKey, reaped);
+        }
+    }
+
+    /**
+     * 将起始时间进入提升窗口的远期桶按原执行时间移入对应的优先级通道，每 BULK_CHUNK 个任务一次脚本调用
+     * 在轮询线程认领之前执行，本轮认领返回的最早执行时间已包含提升的任务；未启用分桶时也会提升已有的桶
+     * @param shardKey 分片ZSET键
+     */
+    void promoteDueBuckets(String shardKey) {
+        String indexKey = bucketIndexKeyOf(shardKey);
+        try {
+            Set<String> due = redisTemplate.opsForZSet().rangeByScore(indexKey, Double.NEGATIVE_INFINITY,
+                    System.currentTimeMillis() + owner.getBucketPromoteAheadMs());
+            if (due == null || due.isEmpty()) {
+                return;
+            }
+            for (String bucketKey : due) {
+                String laneKey = bucketKey.substring(0, bucketKey.lastIndexOf(BUCKET_SEPARATOR));
+                long promoted = 0;
+                Long moved;
+                do {
+                    moved = redisTemplate.execute(DelayQueueScripts.PROMOTE_BUCKET, Arrays.asList(bucketKey, laneKey, indexKey,
+                            statsKeyOf(shardKey)),
+                            String.valueOf(BULK_CHUNK));
+                    promoted += moved != null ? moved : 0L;
+                } while (moved != null && moved >= BULK_CHUNK);
+                if (promoted > 0) {
+                    log.info("Promoted {} task(s) from bucket {} into {}", promoted, bucketKey, laneKey);
+                }
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to promote buckets of delay queue {}: {}", shardKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 本队列所有分片的远期桶键，各分片的分桶索引在一次管道往返中读取
+     */
+    @SuppressWarnings("unchecked")
+    List<String> bucketKeys() {
+        List<Object> indexes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String shardKey : shardKeys) {
+                conn.zRange(bucketIndexKeyOf(shardKey), 0, -1);
+            }
+            return null;
+        });
+        List<String> keys = new ArrayList<>();
+        for (Object index : indexes) {
+            if (index instanceof Collection) {
+                ((Collection<Object>) index).forEach(key -> keys.add(key.toString()));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 远期桶中的任务数，所有桶的 ZCARD 在一次管道往返中完成
+     */
+    long countBucketedTasks(List<String> bucketKeys) {
+        if (bucketKeys.isEmpty()) {
+            return 0L;
+        }
+        List<Object> sizes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String bucketKey : bucketKeys) {
+                conn.zCard(bucketKey);
+            }
+            return null;
+        });
+        long total = 0;
+        for (Object size : sizes) {
+            total += toLong(size);
+        }
+        return total;
+    }
+
+    /**
+     * 清理取消集合中超过保留期的任务，出错时只记录日志，下个清理间隔再试
+     * @param shardKey 分片ZSET键
+     */
+    void purgeExpiredCancellations(String shardKey) {
+        long now = System.currentTimeMillis();
+        try {
+            Long purged = redisTemplate.execute(DelayQueueScripts.PURGE_CANCELLED,
+                    Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                            TaskPriority.LOW.laneKey(shardKey), cancelledKeyOf(shardKey), dataKeyOf(shardKey)),
+                    String.valueOf(now), String.valueOf(now - owner.getCancelRetentionMs()),
+                    String.valueOf(BULK_CHUNK), String.valueOf(Double.MAX_VALUE));
+            if (purged != null && purged > 0) {
+                log.info("Purged {} expired cancelled task(s) from delay queue {}", purged, shardKey);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Failed to purge cancelled tasks of delay queue {}: {}", shardKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 将已认领但未执行的任务按原执行时间放回队列，并释放其租约，每个分片一次脚本调用
+     * 只有执行中ZSET中的租约分数仍是本次认领写入的值时才放回：租约已过期、被回收并由其他实例重新认领的任务不会被重复放回
+     * @param tasks 任务列表
+     */
+    private void returnToQueue(Collection<ClaimedTask> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> argsByShard = new LinkedHashMap<>();
+        for (ClaimedTask task : tasks) {
+            if (task.getLeaseScore() == null) {
+                continue;
+            }
+            List<String> args = argsByShard.computeIfAbsent(shardKeyOf(task.getTaskId()), key -> new ArrayList<>());
+            args.add(task.getTaskId());
+            args.add(String.valueOf(task.getLeaseScore()));
+            args.add(String.valueOf(task.getExecuteTime()));
+            args.add(String.valueOf(laneOf(task.getRecord()).ordinal() + 1));
+        }
+        long returned = 0;
+        try {
+            for (Map.Entry<String, List<String>> entry : argsByShard.entrySet()) {
+                String shardKey = entry.getKey();
+                Long count = redisTemplate.execute(DelayQueueScripts.RETURN_TO_QUEUE,
+                        Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                                TaskPriority.LOW.laneKey(shardKey), inflightKeyOf(shardKey)),
+                        entry.getValue().toArray());
+                returned += count != null ? count : 0L;
+            }
+            log.info("Returned {} of {} unfired task(s) to the delay queue [{}]", returned, tasks.size(), name);
+        } catch (DataAccessException e) {
+            log.error("Failed to return {} task(s) to the delay queue [{}]: {}", tasks.size(), name, e.getMessage());
+        }
+    }
+
+    /**
+     * 通过Lua脚本一次性认领最多 limit 个到期任务，将其从队列移入执行中ZSET
+     * @param shardKey 分片ZSET键
+     * @param now 认领截止时间戳
+     * @param limit 最多认领的数量
+     * @param cycle 本分片的认领轮次，用于计算低优先级通道的保底份额
+     * @return 认领到的任务（HIGH、NORMAL、LOW 依次排列，通道内按执行时间升序）及剩余最早任务的执行时间
+     */
+    @SuppressWarnings("unchecked")
+    private ClaimResult claimDueTasks(String shardKey, long now, int limit, long cycle) {
+        int normalReserve = laneReserve(limit, owner.getNormalLaneShare(), cycle);
+        int lowReserve = laneReserve(limit, owner.getLowLaneShare(), cycle);
+        long claimTime = System.currentTimeMillis();
+        long leaseMs = owner.getLeaseTimeoutMs();
+        List<Object> raw = redisTemplate.execute(DelayQueueScripts.CLAIM_DUE, shardScriptKeys(shardKey),
+                String.valueOf(now), String.valueOf(limit), String.valueOf(normalReserve), String.valueOf(lowReserve),
+                String.valueOf(claimTime), String.valueOf(leaseMs));
+        if (raw == null || raw.isEmpty()) {
+            return new ClaimResult(Collections.emptyList(), null);
+        }
+        int count = (raw.size() - 1) / 3;
+        List<ClaimedTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count * 3; i += 3) {
+            String taskId = raw.get(i).toString();
+            long executeTime = (long) Double.parseDouble(raw.get(i + 1).toString());
+            // 与脚本写入执行中ZSET的分数一致：max(执行时间, 认领时间) + 租约时长
+            tasks.add(new ClaimedTask(taskId, executeTime, TaskRecord.decode(taskId, raw.get(i + 2).toString()), null,
+                    Math.max(executeTime, claimTime) + leaseMs));
+        }
+        String next = raw.get(raw.size() - 1).toString();
+        return new ClaimResult(tasks, next.isEmpty() ? null : (long) Double.parseDouble(next));
+    }
+
+    /**
+     * 低优先级通道在一批中的保底数量：batch * share 向下取整；
+     * 批次太小（背压下常常每次只认领1个）取整为0时，每 1/share 轮保底1个，保证长期份额
+     */
+    static int laneReserve(int limit, double share, long cycle) {
+        if (share <= 0) {
+            return 0;
+        }
+        int reserve = (int) Math.floor(limit * share);
+        if (reserve == 0 && cycle % Math.max(1, Math.round(1 / share)) == 0) {
+            reserve = 1;
+        }
+        return reserve;
+    }
+
+    private static String taskTypeOf(ClaimedTask task) {
+        String taskType = task.getRecord() != null ? task.getRecord().getTaskType() : null;
+        return taskType != null ? taskType : TaskRecord.ofId(task.getTaskId()).getTaskType();
+    }
+
+    private static LatencyHistogram histogramOf(Map<String, LatencyHistogram> byType, String taskType) {
+        return byType.computeIfAbsent(taskType, type -> new LatencyHistogram());
+    }
+
+    /**
+     * 将本队列各任务类型的触发延迟累加到 target
+     */
+    void mergeFireLag(LatencyHistogram target) {
+        fireLagByType.values().forEach(histogram -> histogram.mergeInto(target));
+    }
+
+    /**
+     * 将本队列各任务类型的处理器执行耗时累加到 target
+     */
+    void mergeHandlerLatency(LatencyHistogram target) {
+        handlerLatencyByType.values().forEach(histogram -> histogram.mergeInto(target));
+    }
+
+    /**
+     * 获取触发延迟统计（任务实际开始执行时间与计划执行时间之差）
+     * @return 本队列汇总的 count / avgMs / maxMs / 百分位，types 为按任务类型的同样统计
+     */
+    Map<String, Object> getFireLagStats() {
+        return latencyStats(fireLagByType);
+    }
+
+    /**
+     * 获取处理器执行耗时统计（不含在处理器线程池中排队的时间）
+     * @return 本队列汇总的 count / avgMs / maxMs / 百分位，types 为按任务类型的同样统计
+     */
+    Map<String, Object> getHandlerLatencyStats() {
+        return latencyStats(handlerLatencyByType);
+    }
+
+    private static Map<String, Object> latencyStats(Map<String, LatencyHistogram> byType) {
+        LatencyHistogram merged = new LatencyHistogram();
+        Map<String, Object> types = new TreeMap<>();
+        byType.forEach((taskType, histogram) -> {
+            histogram.mergeInto(merged);
+            types.put(taskType, histogram.summary());
+        });
+        Map<String, Object> stats = merged.summary();
+        stats.put("types", types);
+        return stats;
+    }
+
+    /**
+     * 列表、搜索和按条件批量操作读取的ZSET：已取消的任务读取取消集合，其他读取三条优先级通道，
+     * 以及起始时间不晚于执行时间上限的远期桶（按起始时间排序，桶中任务的执行时间都不早于桶的起始时间）
+     * @param max 执行时间上限（+inf 或数字）
+     */
+    List<String> sourceKeysOf(String shardKey, boolean cancelled, String max) {
+        if (cancelled) {
+            return Collections.singletonList(cancelledKeyOf(shardKey));
+        }
+        List<String> keys = new ArrayList<>(Arrays.asList(
+                TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey), TaskPriority.LOW.laneKey(shardKey)));
+        double to = "+inf".equals(max) ? Double.POSITIVE_INFINITY : Double.parseDouble(max);
+        Set<String> buckets = redisTemplate.opsForZSet().rangeByScore(bucketIndexKeyOf(shardKey), Double.NEGATIVE_INFINITY, to);
+        if (buckets != null) {
+            keys.addAll(buckets);
+        }
+        return keys;
+    }
+
+    /**
+     * 统计本队列的任务数：每条通道一次 ZCARD（总数）和一次 ZCOUNT（已到期），执行中、死信和取消集合 ZCARD，
+     * 以及由脚本原子累加的计数器Hash（含远期桶中的任务数 bucketed），所有分片在一次管道往返中完成
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, Long> getTaskStats() {
+        long now = System.currentTimeMillis();
+        TaskPriority[] lanes = TaskPriority.values();
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String shardKey : shardKeys) {
+                for (TaskPriority lane : lanes) {
+                    conn.zCard(lane.laneKey(shardKey));
+                    conn.zCount(lane.laneKey(shardKey), Double.NEGATIVE_INFINITY, now);
+                }
+                conn.zCard(inflightKeyOf(shardKey));
+                conn.xLen(streamKeyOf(shardKey));
+                conn.zCard(deadKeyOf(shardKey));
+                conn.zCard(cancelledKeyOf(shardKey));
+                conn.hGetAll(statsKeyOf(shardKey));
+            }
+            return null;
+        });
+        Map<String, Long> stats = new HashMap<>();
+        for (String counter : COUNTERS) {
+            stats.put(counter, 0L);
+        }
+        long laneTasks = 0;
+        long readyTasks = 0;
+        long runningTasks = 0;
+        long deadTasks = 0;
+        long cancelledTasks = 0;
+        long bucketedTasks = 0;
+        int perShard = lanes.length * 2 + 5;
+        for (int base = 0; base + perShard <= results.size(); base += perShard) {
+            for (int i = 0; i < lanes.length * 2; i += 2) {
+                laneTasks += toLong(results.get(base + i));
+                readyTasks += toLong(results.get(base + i + 1));
+            }
+            // 执行中ZSET + Stream 中尚未确认的条目
+            runningTasks += toLong(results.get(base + lanes.length * 2)) + toLong(results.get(base + lanes.length * 2 + 1));
+            deadTasks += toLong(results.get(base + lanes.length * 2 + 2));
+            cancelledTasks += toLong(results.get(base + lanes.length * 2 + 3));
+            Object counters = results.get(base + lanes.length * 2 + 4);
+            if (counters instanceof Map) {
+                Object bucketed = ((Map<Object, Object>) counters).remove(BUCKETED_COUNTER);
+                bucketedTasks += bucketed != null ? Math.max(Long.parseLong(bucketed.toString()), 0L) : 0L;
+                ((Map<Object, Object>) counters).forEach((field, value) ->
+                        stats.merge(field.toString(), Long.parseLong(value.toString()), Long::sum));
+            }
+        }
+        // 远期桶中的任务都尚未到期，计入 pending
+        long pendingTasks = laneTasks - readyTasks + bucketedTasks;
+        stats.put("total", pendingTasks + readyTasks);
+        stats.put("pending", pendingTasks);
+        stats.put("bucketed", bucketedTasks);
+        stats.put("ready", readyTasks);
+        stats.put("leased", timingWheel != null ? (long) timingWheel.size() : 0L);
+        // 已认领、尚未确认的任务（含时间轮中等待触发的任务及 Stream 中的任务）
+        stats.put("running", runningTasks);
+        // 当前死信队列中的任务数
+        stats.put("deadLetter", deadTasks);
+        // 保留期内的已取消任务，不计入 total
+        stats.put("cancelled", cancelledTasks);
+        return stats;
+    }
+
+    /**
+     * 删除本队列的计数器
+     */
+    void clearStats() {
+        List<String> keys = new ArrayList<>(shardKeys.size());
+        for (String shardKey : shardKeys) {
+            keys.add(statsKeyOf(shardKey));
+        }
+        redisTemplate.delete(keys);
+    }
+
+    static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * 停止轮询线程，将时间轮中未触发的任务放回Redis，并等待已认领的任务执行完毕
+     */
+    void stop() {
+        running = false;
+        shardWakeups.values().forEach(ShardWakeup::wakeUpNow);
+        pollerExecutor.shutdown();
+        try {
+            if (!pollerExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                pollerExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pollerExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (timingWheel != null) {
+            // 时间轮中未触发的租借任务放回Redis
+            List<ClaimedTask> unfired = timingWheel.stop();
+            workerPermits.release(unfired.size());
+            returnToQueue(unfired);
+        }
+        // 等待已认领的任务执行完毕
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(10, TimeUnit.SECONDS)) {
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        log.info("Delay queue [{}] stopped", name);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.queue;
+
+import org.springframework.scheduling.support.CronExpression;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * 重复任务的调度方式
+ * 重复任务执行成功后，下一次执行时间在确认脚本中与确认原子地写回队列，只有持有租约的执行者能写回，不会重复触发。
+ * CRON 表达式使用 Spring 的六段格式（秒 分 时 日 月 周），按服务器默认时区计算。
+ */
+public enum Recurrence {
+
+    /**
+     * 固定频率：以计划执行时间为基准每隔 intervalMs 执行一次，错过的周期直接跳过，不补发
+     */
+    FIXED_RATE {
+        @Override
+        long next(TaskRecord record, long scheduledTime, long now) {
+            long interval = record.getIntervalMs();
+            long next = scheduledTime + interval;
+            if (next <= now) {
+                next += ((now - next) / interval + 1) * interval;
+            }
+            return next;
+        }
+    },
+
+    /**
+     * 固定间隔：上一次执行结束后等待 intervalMs 再执行
+     */
+    FIXED_DELAY {
+        @Override
+        long next(TaskRecord record, long scheduledTime, long now) {
+            return now + record.getIntervalMs();
+        }
+    },
+
+    /**
+     * CRON 表达式：取当前时间之后的下一个匹配时间
+     */
+    CRON {
+        @Override
+        long next(TaskRecord record, long scheduledTime, long now) {
+            return nextCronTime(record.getCron(), Math.max(scheduledTime, now));
+        }
+    };
+
+    /**
+     * 计算下一次执行时间
+     * @param record 任务记录
+     * @param scheduledTime 本次的计划执行时间
+     * @param now 本次执行结束的时间
+     * @return 下一次执行时间（毫秒时间戳）
+     */
+    abstract long next(TaskRecord record, long scheduledTime, long now);
+
+    /**
+     * 解析调度方式，为空时返回 null（一次性任务）
+     * @param value 调度方式，大小写不敏感
+     * @return 调度方式
+     */
+    public static Recurrence of(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        for (Recurrence recurrence : values()) {
+            if (recurrence.name().equalsIgnoreCase(value.trim())) {
+                return recurrence;
+            }
+        }
+        throw new IllegalArgumentException("Unknown recurrence: " + value);
+    }
+
+    /**
+     * 校验任务记录中的调度参数，并规范化调度方式的写法；一次性任务不做处理
+     * @param record 任务记录
+     */
+    static void validate(TaskRecord record) {
+        Recurrence recurrence = record != null ? of(record.getRecurrence()) : null;
+        if (recurrence == null) {
+            return;
+        }
+        record.setRecurrence(recurrence.name());
+        if (recurrence == CRON) {
+            if (record.getCron() == null || !CronExpression.isValidExpression(record.getCron())) {
+                throw new IllegalArgumentException("Invalid cron expression: " + record.getCron());
+            }
+        } else if (record.getIntervalMs() == null || record.getIntervalMs() <= 0) {
+            throw new IllegalArgumentException("Interval must be positive for " + recurrence);
+        }
+    }
+
+    /**
+     * 首次执行时间：CRON 任务取不早于 earliest 的第一个匹配时间，其余为 earliest
+     * @param record 任务记录（已校验）
+     * @param earliest 按延迟计算的最早执行时间
+     * @return 首次执行时间（毫秒时间戳）
+     * @throws IllegalArgumentException CRON 表达式没有后续的匹配时间
+     */
+    static long firstRunTime(TaskRecord record, long earliest) {
+        if (record != null && CRON.name().equals(record.getRecurrence())) {
+            long first = nextCronTime(record.getCron(), earliest - 1);
+            if (first < 0) {
+                throw new IllegalArgumentException("Cron expression has no upcoming match: " + record.getCron());
+            }
+            return first;
+        }
+        return earliest;
+    }
+
+    /**
+     * 重复任务的下一次执行时间
+     * @param record 任务记录
+     * @param scheduledTime 本次的计划执行时间
+     * @param now 本次执行结束的时间
+     * @return 下一次执行时间，一次性任务或表达式不再有匹配时间时返回 null
+     */
+    static Long nextRunTime(TaskRecord record, long scheduledTime, long now) {
+        Recurrence recurrence;
+        try {
+            recurrence = record != null ? of(record.getRecurrence()) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (recurrence == null) {
+            return null;
+        }
+        long next = recurrence.next(record, scheduledTime, now);
+        return next > 0 ? next : null;
+    }
+
+    private static long nextCronTime(String cron, long after) {
+        ZonedDateTime next = CronExpression.parse(cron)
+                .next(ZonedDateTime.ofInstant(Instant.ofEpochMilli(after), ZoneId.systemDefault()));
+        return next != null ? next.toInstant().toEpochMilli() : -1L;
+    }
+}
@@ -1,16 +1,45 @@
 package com.example.queue;
 
+import com.example.dto.SystemSettingsDTO;
+import com.example.service.SystemSettingsService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.Set;
 import org.springframework.dao.DataAccessException;
 
@@ -18,22 +47,531 @@ import org.springframework.dao.DataAccessException;
 @Component
 public class RedisDelayQueue {
 
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final ExecutorService executorService;
+    private final StringRedisTemplate redisTemplate;
+    private final SystemSettingsService systemSettingsService;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final TaskHandlerRegistry taskHandlerRegistry;
+    private final TaskIdGenerator taskIdGenerator;
     private static final String DELAY_QUEUE_KEY = "delay:queue";
+    // 命名队列的键前缀，队列 orders 的键为 delay:named:orders
+    private static final String NAMED_QUEUE_KEY_PREFIX = "delay:named:";
+    // 命名队列定义，Hash：队列名 -> QueueDefinition JSON
+    private static final String QUEUE_DEFINITIONS_KEY = "delay:queues";
+    // 跨实例唤醒通知频道，消息格式：实例ID|分片键|执行时间
+    static final String WAKEUP_CHANNEL = "delay:queue:wakeup";
+    // 幂等键前缀，队列 orders 的幂等键 k 为 delay:idem:orders:k，值为首次添加的任务ID
+    private static final String IDEMPOTENCY_KEY_PREFIX = "delay:idem:";
+    private static final Pattern QUEUE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // 任务列表单页的最大数量，以及不使用游标时可以翻到的最大深度
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_LIST_WINDOW = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_SCAN_INTERVAL = 1000;
+    private static final int DEFAULT_TASK_TIMEOUT = 300;
+    private static final int DEFAULT_MAX_RETRY_COUNT = 3;
+    private static final int DEFAULT_THREAD_POOL_SIZE = 10;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    private static final int JOURNAL_REPLAY_BATCH = 500;
 
-    public RedisDelayQueue(RedisTemplate<String, Object> redisTemplate) {
+    // 默认队列的分片数量：1 表示沿用单个 delay:queue，大于1时任务按ID哈希到 delay:queue:{0..N-1}
+    private final int shardCount;
+    // 本实例标识，用于忽略自己发布的唤醒通知
+    private final String instanceId = UUID.randomUUID().toString();
+
+    // 单次认领的最大任务数，来自 QueueSettings.batchSize
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    // 空闲时最长休眠时间（毫秒），来自 QueueSettings.scanInterval
+    private volatile int scanInterval = DEFAULT_SCAN_INTERVAL;
+    // 是否按任务优先级进入不同通道，来自 QueueSettings.enablePriority
+    private volatile boolean priorityEnabled = true;
+    // 执行租约时长（毫秒）：认领后超过该时长仍未确认的任务会被放回队列，来自 QueueSettings.taskTimeout（秒）
+    private volatile long leaseTimeoutMs = TimeUnit.SECONDS.toMillis(DEFAULT_TASK_TIMEOUT);
+    // 任务未指定 maxRetries 时的最大重试次数，来自 QueueSettings.maxRetryCount
+    private volatile int maxRetryCount = DEFAULT_MAX_RETRY_COUNT;
+
+    // 失败重试的退避时间：第 n 次失败后等待 min(base * 2^(n-1), max)，并在其后半段随机取值，避免重试集中到同一时刻
+    @Value("${delay-queue.retry.base-delay-ms:1000}")
+    private long retryBaseDelayMs;
+    @Value("${delay-queue.retry.max-delay-ms:600000}")
+    private long retryMaxDelayMs;
+
+    // 每批认领中为 NORMAL / LOW 通道保留的最低份额，防止高优先级任务持续积压时低优先级任务被饿死
+    @Value("${delay-queue.priority.normal-share:0.2}")
+    private double normalLaneShare;
+    @Value("${delay-queue.priority.low-share:0.1}")
+    private double lowLaneShare;
+
+    // 幂等键的去重窗口（秒）
+    @Value("${delay-queue.id.idempotency-window-seconds:3600}")
+    private long idempotencyWindowSeconds;
+
+    // 可选的进程内时间轮：提前租借即将到期的任务，在内存中按毫秒精度触发
+    @Value("${delay-queue.timing-wheel.enabled:false}")
+    private boolean timingWheelEnabled;
+    // 租借窗口（毫秒）：认领执行时间在 now + leaseWindowMs 之内的任务放入时间轮
+    @Value("${delay-queue.timing-wheel.lease-window-ms:5000}")
+    private long leaseWindowMs;
+
+    // Stream 模式：到期任务由搬运线程写入Redis Stream，各实例通过消费者组（XREADGROUP / XACK / XAUTOCLAIM）领取执行
+    @Value("${delay-queue.stream.enabled:false}")
+    private boolean streamEnabled;
+    // Stream 中等待领取和执行中的条目上限，达到后到期任务留在ZSET中
+    @Value("${delay-queue.stream.max-backlog:10000}")
+    private long streamMaxBacklog;
+
+    // 远期分桶：执行时间足够远的任务按时间写入分桶键，由提升线程在到期前移入调度ZSET，调度ZSET只保存近期任务
+    @Value("${delay-queue.bucket.enabled:false}")
+    private boolean bucketEnabled;
+    // 桶宽（毫秒），默认一小时
+    @Value("${delay-queue.bucket.size-ms:3600000}")
+    private long bucketSizeMs;
+    // 提升提前量（毫秒）：桶的起始时间进入该窗口时移入调度ZSET
+    @Value("${delay-queue.bucket.promote-ahead-ms:600000}")
+    private long bucketPromoteAheadMs;
+
+    // 已取消任务的保留时间（秒），期间可在列表中查看或重新排期恢复，之后连同任务记录一并清理
+    @Value("${delay-queue.cancel.retention-seconds:86400}")
+    private long cancelRetentionSeconds;
+
+    // 分片键整体作为哈希标签（{delay:queue:0}），连接的是Redis集群时自动启用；
+    // 单机或哨兵模式默认沿用原有键名，准备迁移到集群时可提前开启（已有数据需要迁移）
+    @Value("${delay-queue.hash-tagged-keys:false}")
+    private boolean hashTaggedKeys;
+    private final boolean clusterAware;
+
+    // 本地入队日志：Redis不可用时新任务追加到本地内存映射的分段文件，Redis恢复后按写入顺序重放
+    @Value("${delay-queue.journal.enabled:false}")
+    private boolean journalEnabled;
+    @Value("${delay-queue.journal.dir:./data/delay-queue-journal}")
+    private String journalDir;
+    // 分段文件大小（MB），1-1024
+    @Value("${delay-queue.journal.segment-size-mb:64}")
+    private int journalSegmentSizeMb;
+    @Value("${delay-queue.journal.flush-interval-ms:1000}")
+    private long journalFlushIntervalMs;
+    // 入队标记的保留时间（秒）：重放时据此判断任务是否已写入过，应长于Redis可能不可用的最长时间
+    @Value("${delay-queue.journal.dedup-retention-seconds:86400}")
+    private long journalDedupRetentionSeconds;
+    private volatile EnqueueJournal journal;
+    // Redis不可用状态：入队写入失败并转入日志时置位，期间新任务直接追加到日志，不再逐个等待连接超时；日志重放完毕后清除
+    private volatile boolean redisDown;
+
+    // 按任务类型 / 队列的分发限流，规则来自 QueueSettings.rateLimits，随设置刷新热更新
+    private final TaskRateLimiter rateLimiter;
+
+    // 默认队列，未指定队列名的任务都进入这里
+    private QueueRuntime defaultQueue;
+    // 本实例上运行的所有队列（含默认队列），队列名 -> 运行时
+    private final Map<String, QueueRuntime> queues = new ConcurrentHashMap<>();
+
+    public RedisDelayQueue(StringRedisTemplate redisTemplate,
+                           SystemSettingsService systemSettingsService,
+                           RedisMessageListenerContainer listenerContainer,
+                           TaskHandlerRegistry taskHandlerRegistry,
+                           TaskIdGenerator taskIdGenerator,
+                           @Value("${delay-queue.shard-count:1}") int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
         this.redisTemplate = redisTemplate;
-        this.executorService = Executors.newSingleThreadExecutor();//使用单线程池，避免并发问题
+        this.systemSettingsService = systemSettingsService;
+        this.listenerContainer = listenerContainer;
+        this.taskHandlerRegistry = taskHandlerRegistry;
+        this.taskIdGenerator = taskIdGenerator;
+        this.shardCount = shardCount;
+        this.rateLimiter = new TaskRateLimiter(redisTemplate);
+        RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        this.clusterAware = connectionFactory instanceof LettuceConnectionFactory
+                && ((LettuceConnectionFactory) connectionFactory).isClusterAware();
     }
 
     @PostConstruct
     public void init() {
-        startDelayQueueConsumer();
+        if (journalEnabled) {
+            int segmentSize = Math.min(Math.max(journalSegmentSizeMb, 1), 1024) * 1024 * 1024;
+            try {
+                journal = new EnqueueJournal(Paths.get(journalDir), segmentSize, journalFlushIntervalMs);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open enqueue journal in " + journalDir, e);
+            }
+        }
+        if (streamEnabled) {
+            checkStreamSupport();
+        }
+        loadQueueSettings();
+        String defaultName = "default";
+        int poolSize = DEFAULT_THREAD_POOL_SIZE;
+        int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        try {
+            SystemSettingsDTO.QueueSettings queueSettings = systemSettingsService.getQueueSettings();
+            if (queueSettings.getDefaultQueueName() != null && !queueSettings.getDefaultQueueName().trim().isEmpty()) {
+                defaultName = queueSettings.getDefaultQueueName().trim();
+            }
+            SystemSettingsDTO.PerformanceSettings performanceSettings = systemSettingsService.getPerformanceSettings();
+            if (performanceSettings.getThreadPoolSize() != null && performanceSettings.getThreadPoolSize() > 0) {
+                poolSize = performanceSettings.getThreadPoolSize();
+            }
+            if (performanceSettings.getQueueCapacity() != null && performanceSettings.getQueueCapacity() > 0) {
+                queueCapacity = performanceSettings.getQueueCapacity();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load settings, use default queue configuration: {}", e.getMessage());
+        }
+        // 默认队列的执行线程池按 PerformanceSettings.threadPoolSize / queueCapacity 创建
+        defaultQueue = new QueueRuntime(this, defaultName, DELAY_QUEUE_KEY, shardCount,
+                poolSize, queueCapacity, timingWheelWindow());
+        queues.put(defaultName, defaultQueue);
+        listenerContainer.addMessageListener((message, pattern) -> onWakeupMessage(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(WAKEUP_CHANNEL));
+        migrateLegacyKeys(defaultQueue, DELAY_QUEUE_KEY, shardCount);
+        defaultQueue.start();
+        syncNamedQueues();
     }
 
     /**
-     * 添加延迟任务
+     * 从系统设置中刷新队列参数，并同步其他实例创建或删除的命名队列，每30秒执行一次
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void refreshSettings() {
+        loadQueueSettings();
+        if (defaultQueue != null) {
+            syncNamedQueues();
+        }
+    }
+
+    private void loadQueueSettings() {
+        try {
+            SystemSettingsDTO.QueueSettings queueSettings = systemSettingsService.getQueueSettings();
+            Integer configured = queueSettings.getBatchSize();
+            batchSize = configured != null && configured > 0 ? configured : DEFAULT_BATCH_SIZE;
+            Integer interval = queueSettings.getScanInterval();
+            scanInterval = interval != null && interval > 0 ? interval : DEFAULT_SCAN_INTERVAL;
+            priorityEnabled = !Boolean.FALSE.equals(queueSettings.getEnablePriority());
+            Integer timeout = queueSettings.getTaskTimeout();
+            leaseTimeoutMs = TimeUnit.SECONDS.toMillis(timeout != null && timeout > 0 ? timeout : DEFAULT_TASK_TIMEOUT);
+            Integer retries = queueSettings.getMaxRetryCount();
+            maxRetryCount = retries != null && retries >= 0 ? retries : DEFAULT_MAX_RETRY_COUNT;
+            rateLimiter.update(queueSettings.getRateLimits());
+        } catch (Exception e) {
+            log.warn("Failed to load queue settings, keep batch size {}: {}", batchSize, e.getMessage());
+        }
+    }
+
+    StringRedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    String getInstanceId() {
+        return instanceId;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    int getScanInterval() {
+        return scanInterval;
+    }
+
+    long getLeaseTimeoutMs() {
+        return leaseTimeoutMs;
+    }
+
+    int getMaxRetryCount() {
+        return maxRetryCount;
+    }
+
+    /**
+     * 第 attempt 次失败后的重试等待时间（毫秒）：指数退避 + 随机抖动
+     * @param attempt 已失败的次数，从1开始
+     */
+    long retryDelayMs(int attempt) {
+        long base = Math.max(retryBaseDelayMs, 1L);
+        long cap = Math.max(retryMaxDelayMs, base);
+        long backoff = attempt > 31 ? cap : Math.min(cap, base << Math.max(attempt - 1, 0));
+        if (backoff <= 0) {
+            backoff = cap;
+        }
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    boolean isPriorityEnabled() {
+        return priorityEnabled;
+    }
+
+    double getNormalLaneShare() {
+        return normalLaneShare;
+    }
+
+    double getLowLaneShare() {
+        return lowLaneShare;
+    }
+
+    TaskRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    boolean isStreamEnabled() {
+        return streamEnabled;
+    }
+
+    long getStreamMaxBacklog() {
+        return streamMaxBacklog;
+    }
+
+    boolean isBucketEnabled() {
+        return bucketEnabled && bucketSizeMs > 0;
+    }
+
+    long getBucketSizeMs() {
+        return bucketSizeMs;
+    }
+
+    long getBucketPromoteAheadMs() {
+        return Math.max(bucketPromoteAheadMs, 0L);
+    }
+
+    boolean isHashTaggedKeys() {
+        return hashTaggedKeys || clusterAware;
+    }
+
+    /**
+     * 入队标记的过期时间（秒），未启用本地入队日志时为0，不写标记
+     */
+    long getJournalMarkerSeconds() {
+        return journal != null ? Math.max(journalDedupRetentionSeconds, 1L) : 0L;
+    }
+
+    long getCancelRetentionMs() {
+        return TimeUnit.SECONDS.toMillis(Math.max(cancelRetentionSeconds, 0L));
+    }
+
+    /**
+     * 时间轮租借窗口，未启用时间轮时为0；Stream 模式下任务由消费者组领取，不使用时间轮
+     */
+    private long timingWheelWindow() {
+        if (!timingWheelEnabled) {
+            return 0L;
+        }
+        if (streamEnabled) {
+            log.warn("Timing wheel is ignored in stream mode");
+            return 0L;
+        }
+        return leaseWindowMs;
+    }
+
+    /**
+     * 按Redis中的队列定义启动新增的命名队列，停止已被删除的命名队列
+     */
+    private synchronized void syncNamedQueues() {
+        Map<String, QueueDefinition> definitions;
+        try {
+            definitions = loadQueueDefinitions();
+        } catch (DataAccessException e) {
+            log.warn("Failed to load queue definitions: {}", e.getMessage());
+            return;
+        }
+        for (QueueDefinition definition : definitions.values()) {
+            if (!queues.containsKey(definition.getName())) {
+                startNamedQueue(definition);
+            }
+        }
+        for (String name : new ArrayList<>(queues.keySet())) {
+            if (!name.equals(defaultQueue.getName()) && !definitions.containsKey(name)) {
+                QueueRuntime removed = queues.remove(name);
+                if (removed != null) {
+                    removed.stop();
+                }
+            }
+        }
+    }
+
+    private Map<String, QueueDefinition> loadQueueDefinitions() {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(QUEUE_DEFINITIONS_KEY);
+        Map<String, QueueDefinition> definitions = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            try {
+                definitions.put(entry.getKey().toString(), MAPPER.readValue(entry.getValue().toString(), QueueDefinition.class));
+            } catch (JsonProcessingException e) {
+                log.warn("Ignore malformed queue definition {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        return definitions;
+    }
+
+    private void startNamedQueue(QueueDefinition definition) {
+        QueueRuntime runtime = new QueueRuntime(this, definition.getName(),
+                NAMED_QUEUE_KEY_PREFIX + definition.getName(), definition.getShardCount(),
+                definition.getConcurrency(), definition.getQueueCapacity(), timingWheelWindow());
+        queues.put(definition.getName(), runtime);
+        migrateLegacyKeys(runtime, NAMED_QUEUE_KEY_PREFIX + definition.getName(), definition.getShardCount());
+        runtime.start();
+    }
+
+    /**
+     * Stream 模式依赖 XAUTOCLAIM（Redis 6.2+），启动时检查服务端版本，低于 6.2 时拒绝启动；
+     * 集群模式下检查所有节点，Redis暂不可用时只记录日志
+     */
+    private void checkStreamSupport() {
+        Properties info;
+        try {
+            info = redisTemplate.execute((RedisCallback<Properties>) connection -> connection.serverCommands().info("server"));
+        } catch (DataAccessException e) {
+            log.warn("Failed to check Redis version for stream mode: {}", e.getMessage());
+            return;
+        }
+        if (info == null) {
+            return;
+        }
+        for (String name : info.stringPropertyNames()) {
+            // 集群模式下键名带节点地址前缀（host:port.redis_version）
+            if (!name.equals("redis_version") && !name.endsWith(".redis_version")) {
+                continue;
+            }
+            String version = info.getProperty(name);
+            String[] parts = version.split("\\.");
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            if (major < 6 || (major == 6 && minor < 2)) {
+                throw new IllegalStateException("delay-queue.stream.enabled requires Redis 6.2+ (XAUTOCLAIM), but "
+                        + name + " is " + version + "; upgrade Redis or disable stream mode");
+            }
+        }
+    }
+
+    /**
+     * 将升级前（或切换到集群键名之前）旧键布局中的待执行任务迁移到当前布局，失败时只记录日志，下次启动再试
+     */
+    private void migrateLegacyKeys(QueueRuntime runtime, String baseKey, int shards) {
+        try {
+            new LegacyKeyMigration(redisTemplate).migrate(runtime, baseKey, shards);
+        } catch (DataAccessException e) {
+            log.error("Failed to migrate legacy keys of delay queue [{}], tasks under the old key layout are not scheduled: {}",
+                    runtime.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 根据队列名找到队列，未指定时使用默认队列
+     * @param queueName 队列名称
+     * @return 队列运行时
+     */
+    private QueueRuntime queueOf(String queueName) {
+        if (queueName == null || queueName.trim().isEmpty()) {
+            return defaultQueue;
+        }
+        QueueRuntime runtime = queues.get(queueName.trim());
+        if (runtime == null) {
+            throw new IllegalArgumentException("Queue not found: " + queueName);
+        }
+        return runtime;
+    }
+
+    /**
+     * 创建命名队列，所有实例会在下一次同步时启动该队列的消费者
+     * @param definition 队列定义，分片数、并发上限和等待队列容量可选
+     * @return 补全默认值后的队列定义
+     */
+    public synchronized QueueDefinition createQueue(QueueDefinition definition) {
+        if (definition == null || definition.getName() == null || !QUEUE_NAME_PATTERN.matcher(definition.getName()).matches()) {
+            throw new IllegalArgumentException("Queue name must be 1-64 letters, digits, '_' or '-'");
+        }
+        if (queues.containsKey(definition.getName())) {
+            throw new IllegalArgumentException("Queue already exists: " + definition.getName());
+        }
+        if (definition.getShardCount() == null || definition.getShardCount() < 1) {
+            definition.setShardCount(1);
+        }
+        if (definition.getConcurrency() == null || definition.getConcurrency() < 1) {
+            definition.setConcurrency(defaultQueue.getConcurrency());
+        }
+        if (definition.getQueueCapacity() == null || definition.getQueueCapacity() < 1) {
+            definition.setQueueCapacity(defaultQueue.getQueueCapacity());
+        }
+        definition.setCreateTime(System.currentTimeMillis());
+        try {
+            Boolean created = redisTemplate.opsForHash().putIfAbsent(QUEUE_DEFINITIONS_KEY,
+                    definition.getName(), MAPPER.writeValueAsString(definition));
+            if (!Boolean.TRUE.equals(created)) {
+                throw new IllegalArgumentException("Queue already exists: " + definition.getName());
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode queue definition", e);
+        } catch (DataAccessException e) {
+            log.error("Failed to create queue {}: {}", definition.getName(), e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+        startNamedQueue(definition);
+        return definition;
+    }
+
+    /**
+     * 列出所有队列及其配置和任务统计
+     */
+    public List<Map<String, Object>> listQueues() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (QueueRuntime runtime : queues.values()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", runtime.getName());
+            item.put("default", runtime == defaultQueue);
+            item.put("shardCount", runtime.getShardKeys().size());
+            item.put("concurrency", runtime.getConcurrency());
+            item.put("queueCapacity", runtime.getQueueCapacity());
+            item.put("stats", getTaskStats(runtime.getName()));
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * 清空队列中的所有任务（含执行中、死信、已取消的任务）、任务记录、入队标记及该队列的幂等键
+     * @param queueName 队列名称
+     * @return 各类被删除的数量，drained 为删除的任务总数
+     */
+    public Map<String, Long> drainQueue(String queueName) {
+        try {
+            return drain(queueOf(queueName));
+        } catch (DataAccessException e) {
+            log.error("Failed to drain queue {}: {}", queueName, e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+    }
+
+    private Map<String, Long> drain(QueueRuntime runtime) {
+        Map<String, Long> drained = runtime.admin().drain();
+        drained.put("idempotencyKeys", runtime.admin().deleteMatching(
+                QueueAdmin.globEscape(IDEMPOTENCY_KEY_PREFIX + runtime.getName() + ":") + "*"));
+        log.info("Delay queue [{}] drained: {}", runtime.getName(), drained);
+        return drained;
+    }
+
+    /**
+     * 删除命名队列：清空任务、删除定义并停止本实例上的消费者，默认队列不可删除
+     * @param queueName 队列名称
+     * @return 各类被删除的数量，drained 为删除的任务总数
+     */
+    public synchronized Map<String, Long> deleteQueue(String queueName) {
+        QueueRuntime runtime = queueOf(queueName);
+        if (runtime == defaultQueue) {
+            throw new IllegalArgumentException("Default queue cannot be deleted");
+        }
+        try {
+            redisTemplate.opsForHash().delete(QUEUE_DEFINITIONS_KEY, runtime.getName());
+            queues.remove(runtime.getName());
+            runtime.stop();
+            Map<String, Long> drained = drain(runtime);
+            runtime.clearStats();
+            return drained;
+        } catch (DataAccessException e) {
+            log.error("Failed to delete queue {}: {}", queueName, e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+    }
+
+    /**
+     * 添加延迟任务，任务类型取自ID（"类型_序号"格式），与任务记录一并写入
      * @param taskId 任务ID
      * @param delay 延迟时间（秒）
      */
@@ -41,80 +579,572 @@ public class RedisDelayQueue {
         if (taskId == null || taskId.trim().isEmpty()) {
             throw new IllegalArgumentException("Task ID cannot be null or empty");
         }
-        if (delay < 0) {
+        addTask(TaskRecord.ofId(taskId), delay);
+    }
+
+    /**
+     * 添加带任务记录的延迟任务，调度项与任务记录原子写入，按记录中的队列名进入对应队列
+     * @param record 任务记录，ID为空时自动生成
+     * @param delay 延迟时间（秒）
+     * @return 任务ID
+     */
+    public String addTask(TaskRecord record, long delay) {
+        return addTask(record, delay, null);
+    }
+
+    /**
+     * 添加带幂等键的延迟任务：同一队列中相同幂等键在去重窗口内只会添加一次，重复提交返回首次添加的任务ID
+     * @param record 任务记录，ID为空时自动生成
+     * @param delay 延迟时间（秒）
+     * @param idempotencyKey 客户端提供的幂等键，为空时不去重
+     * @return 任务ID
+     */
+    public String addTask(TaskRecord record, long delay, String idempotencyKey) {
+        if (record == null) {
+            throw new IllegalArgumentException("Task record cannot be null");
+        }
+        QueueRuntime queue = queueOf(record.getQueueName());
+        record.setQueueName(queue.getName());
+        if (record.getId() == null) {
+            record.setId(nextTaskId(record.getTaskType()));
+        }
+        if (record.getCreateTime() == null) {
+            record.setCreateTime(System.currentTimeMillis());
+        }
+        boolean idempotent = idempotencyKey != null && !idempotencyKey.trim().isEmpty();
+        if (redisDown && journal != null) {
+            // Redis不可用期间直接写入本地入队日志，幂等键留到重放时检查
+            long executeTime = executeTimeOf(record, delay);
+            if (journalTask(record.getId(), idempotent ? idempotencyKeyOf(queue, idempotencyKey) : null, executeTime, record)) {
+                return record.getId();
+            }
+        }
+        if (!idempotent) {
+            addTask(queue, record.getId(), record, delay);
+            return record.getId();
+        }
+        String dedupKey = idempotencyKeyOf(queue, idempotencyKey);
+        try {
+            String existing = claimIdempotencyKey(dedupKey, record.getId());
+            if (existing != null) {
+                log.info("Duplicate task with idempotency key {} ignored, existing task {}", idempotencyKey, existing);
+                return existing;
+            }
+        } catch (DataAccessException e) {
+            log.error("Failed to check idempotency key {}: {}", idempotencyKey, e.getMessage());
+            // 幂等键留到重放时检查
+            if (journal != null && journalTask(record.getId(), dedupKey, executeTimeOf(record, delay), record)) {
+                return record.getId();
+            }
+            throw new RuntimeException("Redis connection error", e);
+        }
+        try {
+            addTask(queue, record.getId(), record, delay);
+        } catch (RuntimeException e) {
+            // 添加失败时释放幂等键，允许客户端重试
+            releaseIdempotencyKey(dedupKey);
+            throw e;
+        }
+        return record.getId();
+    }
+
+    /**
+     * 生成新的任务ID
+     * @param taskType 任务类型
+     * @return 任务ID
+     */
+    public String nextTaskId(String taskType) {
+        if (taskType == null || taskType.trim().isEmpty()) {
+            throw new IllegalArgumentException("Task type cannot be null or empty");
+        }
+        return taskIdGenerator.nextId(taskType);
+    }
+
+    /**
+     * 以 SET NX 占用幂等键
+     * 键已存在但随后的 GET 为空（恰好过期）时重新 SET NX 而不是直接覆盖，并发提交同一幂等键时只有一个能占用
+     * @return 占用成功返回 null，否则返回已占用该键的任务ID
+     */
+    private String claimIdempotencyKey(String dedupKey, String taskId) {
+        while (true) {
+            Boolean first = redisTemplate.opsForValue().setIfAbsent(dedupKey, taskId, idempotencyWindowSeconds, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(first)) {
+                return null;
+            }
+            String existing = redisTemplate.opsForValue().get(dedupKey);
+            if (existing != null) {
+                return existing;
+            }
+        }
+    }
+
+    private static String idempotencyKeyOf(QueueRuntime queue, String idempotencyKey) {
+        return IDEMPOTENCY_KEY_PREFIX + queue.getName() + ":" + idempotencyKey.trim();
+    }
+
+    private void releaseIdempotencyKey(String dedupKey) {
+        try {
+            redisTemplate.delete(dedupKey);
+        } catch (DataAccessException e) {
+            log.warn("Failed to release idempotency key {}: {}", dedupKey, e.getMessage());
+        }
+    }
+
+    /**
+     * 批量添加带任务记录的延迟任务，同一队列同一分片的任务在一次脚本调用中写入
+     * 单个任务参数无效或所在队列写入失败时只影响对应的任务，结果与输入顺序一致
+     * @param tasks 任务列表
+     * @return 每个任务的结果：taskId / success / message
+     */
+    public List<Map<String, Object>> addTasks(Collection<DelayedTask> tasks) {
+        if (tasks == null) {
+            throw new IllegalArgumentException("Tasks cannot be null");
+        }
+        TaskBatch batch = new TaskBatch(tasks.size());
+        long now = System.currentTimeMillis();
+        for (DelayedTask task : tasks) {
+            Map<String, Object> result = new HashMap<>();
+            batch.results.add(result);
+            try {
+                prepareTask(batch, task, result, now);
+            } catch (IllegalArgumentException e) {
+                result.put("success", false);
+                result.put("message", e.getMessage());
+            }
+        }
+        if (redisDown && journal != null) {
+            // Redis不可用期间所有任务直接写入本地入队日志，幂等键留到重放时检查
+            journalDedupTasks(batch);
+            for (Map.Entry<QueueRuntime, List<ClaimedTask>> entry : batch.byQueue.entrySet()) {
+                List<Map<String, Object>> queueResults = batch.resultsByQueue.get(entry.getKey());
+                for (int i = 0; i < entry.getValue().size(); i++) {
+                    ClaimedTask task = entry.getValue().get(i);
+                    markJournaled(queueResults.get(i), journalTask(task.getTaskId(), null, task.getExecuteTime(), task.getRecord()));
+                }
+            }
+            batch.dedupTasks.clear();
+            batch.byQueue.clear();
+        }
+        if (!batch.dedupTasks.isEmpty()) {
+            resolveIdempotencyKeys(batch);
+        }
+        for (Map.Entry<QueueRuntime, List<ClaimedTask>> entry : batch.byQueue.entrySet()) {
+            writeQueueTasks(batch, entry.getKey(), entry.getValue());
+        }
+        batch.copyDuplicateResults();
+        return batch.results;
+    }
+
+    /**
+     * 校验单个任务并计算首次执行时间，带幂等键的任务留到写入前统一去重
+     */
+    private void prepareTask(TaskBatch batch, DelayedTask task, Map<String, Object> result, long now) {
+        TaskRecord record = task != null ? task.getRecord() : null;
+        if (record == null) {
+            throw new IllegalArgumentException("Task record cannot be null");
+        }
+        if (record.getId() == null) {
+            record.setId(nextTaskId(record.getTaskType()));
+        }
+        result.put("taskId", record.getId());
+        if (record.getId().trim().isEmpty()) {
+            throw new IllegalArgumentException("Task ID cannot be null or empty");
+        }
+        if (task.getDelay() < 0) {
             throw new IllegalArgumentException("Delay time cannot be negative");
         }
-        
+        QueueRuntime queue = queueOf(record.getQueueName());
+        record.setQueueName(queue.getName());
+        if (record.getCreateTime() == null) {
+            record.setCreateTime(now);
+        }
+        Recurrence.validate(record);
+        long executeTime = Recurrence.firstRunTime(record, now + TimeUnit.SECONDS.toMillis(task.getDelay()));
+        ClaimedTask scheduled = new ClaimedTask(record.getId(), executeTime, record);
+        if (task.getIdempotencyKey() == null || task.getIdempotencyKey().trim().isEmpty()) {
+            batch.add(queue, scheduled, result);
+            return;
+        }
+        String dedupKey = idempotencyKeyOf(queue, task.getIdempotencyKey());
+        if (batch.dedupResults.containsKey(dedupKey)) {
+            // 同一批次内重复的幂等键，沿用第一个任务的结果
+            result.put("duplicateOf", dedupKey);
+            return;
+        }
+        batch.dedupResults.put(dedupKey, result);
+        batch.dedupTasks.put(dedupKey, scheduled);
+        batch.dedupQueues.put(dedupKey, queue);
+        batch.dedupKeyOfTask.put(scheduled, dedupKey);
+    }
+
+    /**
+     * 带幂等键的任务写入本地入队日志，幂等键留到重放时检查
+     */
+    private void journalDedupTasks(TaskBatch batch) {
+        for (Map.Entry<String, Map<String, Object>> entry : batch.dedupResults.entrySet()) {
+            ClaimedTask task = batch.dedupTasks.get(entry.getKey());
+            markJournaled(entry.getValue(), journalTask(task.getTaskId(), entry.getKey(), task.getExecuteTime(), task.getRecord()));
+        }
+    }
+
+    /**
+     * 占用批次中的幂等键，已存在的直接返回首次添加的任务ID，其余加入各自队列的写入列表
+     */
+    private void resolveIdempotencyKeys(TaskBatch batch) {
+        Map<String, String> existing;
         try {
-            long executeTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay);
-            redisTemplate.opsForZSet().add(DELAY_QUEUE_KEY, taskId, executeTime);
-            log.info("Task {} added to delay queue, will execute at {}", taskId, executeTime);
+            existing = claimIdempotencyKeys(batch.dedupTasks);
+        } catch (DataAccessException e) {
+            if (journal == null) {
+                throw e;
+            }
+            // 幂等键无法检查，带幂等键的任务直接写入本地入队日志，重放时再检查
+            log.error("Failed to check idempotency keys: {}", e.getMessage());
+            journalDedupTasks(batch);
+            return;
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : batch.dedupResults.entrySet()) {
+            String existingId = existing.get(entry.getKey());
+            if (existingId != null) {
+                entry.getValue().put("taskId", existingId);
+                entry.getValue().put("success", true);
+                entry.getValue().put("duplicate", true);
+                continue;
+            }
+            batch.add(batch.dedupQueues.get(entry.getKey()), batch.dedupTasks.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * 在一次脚本调用中写入同一队列的任务，失败时改写本地入队日志或释放幂等键
+     */
+    private void writeQueueTasks(TaskBatch batch, QueueRuntime queue, List<ClaimedTask> tasks) {
+        List<Map<String, Object>> queueResults = batch.resultsByQueue.get(queue);
+        boolean success = true;
+        String message = null;
+        try {
+            queue.scheduleAll(tasks);
+            log.info("{} task(s) added to delay queue [{}]", tasks.size(), queue.getName());
+        } catch (DataAccessException e) {
+            log.error("Failed to add {} task(s) to delay queue [{}]: {}", tasks.size(), queue.getName(), e.getMessage());
+            if (journal != null) {
+                // 幂等键已占用，重放时按任务记录去重
+                for (int i = 0; i < tasks.size(); i++) {
+                    ClaimedTask task = tasks.get(i);
+                    boolean journaled = journalTask(task.getTaskId(), null, task.getExecuteTime(), task.getRecord());
+                    markJournaled(queueResults.get(i), journaled);
+                    if (!journaled && batch.dedupKeyOfTask.containsKey(task)) {
+                        releaseIdempotencyKey(batch.dedupKeyOfTask.get(task));
+                    }
+                }
+                return;
+            }
+            success = false;
+            message = "Redis connection error";
+        }
+        for (Map<String, Object> result : queueResults) {
+            result.put("success", success);
+            if (message != null) {
+                result.put("message", message);
+            }
+        }
+        if (!success) {
+            // 写入失败的任务释放幂等键，允许客户端重试
+            for (ClaimedTask task : tasks) {
+                String dedupKey = batch.dedupKeyOfTask.get(task);
+                if (dedupKey != null) {
+                    releaseIdempotencyKey(dedupKey);
+                }
+            }
+        }
+    }
+
+    private static void markJournaled(Map<String, Object> result, boolean journaled) {
+        result.put("success", journaled);
+        if (journaled) {
+            result.put("journaled", true);
+        } else {
+            result.put("message", "Redis connection error");
+        }
+    }
+
+    /**
+     * 在一次管道往返中为一批幂等键执行 SET NX，已存在的键再一次性取回对应的任务ID
+     * @param dedupTasks 幂等键 -> 待添加的任务
+     * @return 已存在的幂等键 -> 首次添加的任务ID
+     */
+    private Map<String, String> claimIdempotencyKeys(Map<String, ClaimedTask> dedupTasks) {
+        List<String> keys = new ArrayList<>(dedupTasks.keySet());
+        long windowMs = TimeUnit.SECONDS.toMillis(idempotencyWindowSeconds);
+        List<Object> claimed = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.set(key, dedupTasks.get(key).getTaskId(), Expiration.milliseconds(windowMs), RedisStringCommands.SetOption.SET_IF_ABSENT);
+            }
+            return null;
+        });
+        List<String> duplicates = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (!Boolean.TRUE.equals(claimed.get(i))) {
+                duplicates.add(keys.get(i));
+            }
+        }
+        Map<String, String> existing = new HashMap<>();
+        if (duplicates.isEmpty()) {
+            return existing;
+        }
+        List<String> taskIds = redisTemplate.opsForValue().multiGet(duplicates);
+        for (int i = 0; i < duplicates.size(); i++) {
+            String key = duplicates.get(i);
+            String taskId = taskIds != null ? taskIds.get(i) : null;
+            if (taskId == null) {
+                // 幂等键在 SET NX 和 GET 之间过期，重新占用
+                taskId = claimIdempotencyKey(key, dedupTasks.get(key).getTaskId());
+            }
+            if (taskId != null) {
+                existing.put(key, taskId);
+            }
+        }
+        return existing;
+    }
+
+    private void addTask(QueueRuntime queue, String taskId, TaskRecord record, long delay) {
+        if (taskId == null || taskId.trim().isEmpty()) {
+            throw new IllegalArgumentException("Task ID cannot be null or empty");
+        }
+        long executeTime = executeTimeOf(record, delay);
+        try {
+            queue.schedule(taskId, executeTime, record);
+            log.info("Task {} added to delay queue [{}], will execute at {}", taskId, queue.getName(), executeTime);
         } catch (DataAccessException e) {
             log.error("Failed to add task {} to delay queue: {}", taskId, e.getMessage());
+            if (journal != null && journalTask(taskId, null, executeTime, record)) {
+                return;
+            }
             throw new RuntimeException("Redis connection error", e);
         }
     }
 
     /**
-     * 启动延迟队列消费者
+     * 校验延迟时间和重复方式，计算首次执行时间
      */
-    private void startDelayQueueConsumer() {
-        executorService.submit(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    // 获取当前时间
-                    long now = System.currentTimeMillis();
-                    // 获取到期的任务
-                    Set<Object> tasks = null;
-                    try {
-                        tasks = redisTemplate.opsForZSet().rangeByScore(DELAY_QUEUE_KEY, 0, now);
-                    } catch (DataAccessException e) {
-                        log.error("Failed to fetch tasks from delay queue: {}", e.getMessage());
-                        Thread.sleep(5000); // 等待5秒后重试
-                        continue;
-                    }
-                    
-                    if (tasks != null && !tasks.isEmpty()) {
-                        for (Object task : tasks) {
-                            try {
-                                // 处理任务
-                                processTask(task.toString());
-                                // 从队列中移除任务
-                                redisTemplate.opsForZSet().remove(DELAY_QUEUE_KEY, task);
-                            } catch (DataAccessException e) {
-                                log.error("Failed to process or remove task {}: {}", task, e.getMessage());
-                            }
-                        }
+    private static long executeTimeOf(TaskRecord record, long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Delay time cannot be negative");
+        }
+        Recurrence.validate(record);
+        return Recurrence.firstRunTime(record, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay));
+    }
+
+    /**
+     * Redis不可用时将任务追加到本地入队日志，写入成功后进入Redis不可用状态，直到日志重放完毕
+     * @param dedupKey 尚未检查的幂等键，重放时检查，可为 null
+     * @return 是否写入成功，未启用日志时返回 false
+     */
+    private boolean journalTask(String taskId, String dedupKey, long executeTime, TaskRecord record) {
+        EnqueueJournal current = journal;
+        if (current == null) {
+            return false;
+        }
+        try {
+            current.append(taskId, dedupKey, executeTime, record.encode());
+            if (!redisDown) {
+                redisDown = true;
+                log.warn("Redis unavailable, new tasks go to the enqueue journal until it is replayed");
+            }
+            log.debug("Task {} written to the enqueue journal", taskId);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to write task {} to the enqueue journal: {}", taskId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 将本地入队日志中的任务按写入顺序重放到Redis，Redis仍不可用时等到下一次
+     * 已有入队标记（之前的写入实际已成功或已重放过）或幂等键已被其他任务占用时跳过
+     * 日志全部重放后（没有待重放的任务时以 PING 确认连接）退出Redis不可用状态，新任务恢复直接写入Redis
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void replayJournal() {
+        EnqueueJournal current = journal;
+        if (current == null || (current.pending() == 0 && !redisDown)) {
+            return;
+        }
+        long replayed = 0;
+        long skipped = 0;
+        try {
+            List<EnqueueJournal.Entry> entries;
+            while (!(entries = current.peek(JOURNAL_REPLAY_BATCH)).isEmpty()) {
+                for (EnqueueJournal.Entry entry : entries) {
+                    if (replayJournalEntry(entry)) {
+                        replayed++;
+                    } else {
+                        skipped++;
                     }
-                    
-                    // 休眠100ms，避免过于频繁的轮询
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    log.error("Error processing delay queue", e);
+                    current.commit(entry);
                 }
             }
-        });
+            if (redisDown) {
+                redisTemplate.execute((RedisCallback<String>) RedisConnection::ping);
+                redisDown = false;
+                log.info("Redis available again, new tasks are written to Redis directly");
+            }
+        } catch (DataAccessException e) {
+            log.warn("Redis still unavailable, {} journaled task(s) waiting: {}", current.pending(), e.getMessage());
+        } finally {
+            if (replayed + skipped > 0) {
+                log.info("Replayed {} journaled task(s), {} skipped as duplicates", replayed, skipped);
+            }
+        }
+    }
+
+    private boolean replayJournalEntry(EnqueueJournal.Entry entry) {
+        TaskRecord record = TaskRecord.decode(entry.getTaskId(), entry.getEncodedRecord());
+        String queueName = record.getQueueName() != null ? record.getQueueName() : defaultQueue.getName();
+        QueueRuntime queue = queues.get(queueName);
+        if (queue == null) {
+            // 启动时Redis不可用，命名队列可能还没有同步
+            syncNamedQueues();
+            queue = queues.get(queueName);
+        }
+        if (queue == null) {
+            log.warn("Drop journaled task {}: queue {} no longer exists", entry.getTaskId(), queueName);
+            return false;
+        }
+        String dedupKey = entry.getDedupKey();
+        if (dedupKey != null) {
+            String existing = claimIdempotencyKey(dedupKey, entry.getTaskId());
+            if (existing != null && !existing.equals(entry.getTaskId())) {
+                log.info("Journaled task {} skipped, idempotency key already used by task {}", entry.getTaskId(), existing);
+                return false;
+            }
+        }
+        return queue.scheduleIfAbsent(entry.getTaskId(), entry.getExecuteTime(), record);
     }
 
     /**
-     * 处理任务
-     * @param taskId 任务ID
+     * 本地入队日志的状态
+     * @return enabled / pending（等待重放的任务数）/ redisDown（是否处于Redis不可用状态，期间新任务直接写入日志）
+     */
+    public Map<String, Object> getJournalStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        EnqueueJournal current = journal;
+        stats.put("enabled", current != null);
+        stats.put("pending", current != null ? current.pending() : 0L);
+        stats.put("redisDown", redisDown);
+        return stats;
+    }
+
+    /**
+     * 处理其他实例发布的唤醒通知
+     * @param message 实例ID|分片键|执行时间
+     */
+    private void onWakeupMessage(String message) {
+        String[] parts = message.split("\\|");
+        if (parts.length != 3 || instanceId.equals(parts[0])) {
+            return;
+        }
+        try {
+            long executeTime = Long.parseLong(parts[2]);
+            for (QueueRuntime runtime : queues.values()) {
+                if (runtime.wakeUp(parts[1], executeTime)) {
+                    return;
+                }
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Ignore malformed wakeup message: {}", message);
+        }
+    }
+
+    /**
+     * 获取各队列的触发延迟统计（任务实际开始执行时间与计划执行时间之差）
+     * @return 队列名 -> count / avgMs / maxMs / p50Ms / p90Ms / p99Ms / p999Ms，以及按任务类型的 types
+     */
+    public Map<String, Object> getFireLagStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (QueueRuntime runtime : queues.values()) {
+            stats.put(runtime.getName(), runtime.getFireLagStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 获取各队列的处理器执行耗时统计
+     * @return 队列名 -> count / avgMs / maxMs / p50Ms / p90Ms / p99Ms / p999Ms，以及按任务类型的 types
+     */
+    public Map<String, Object> getHandlerLatencyStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (QueueRuntime runtime : queues.values()) {
+            stats.put(runtime.getName(), runtime.getHandlerLatencyStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 获取所有队列合并后的延迟统计
+     * @return fireLag / handler -> count / avgMs / maxMs / p50Ms / p90Ms / p99Ms / p999Ms
+     */
+    public Map<String, Object> getLatencySummary() {
+        LatencyHistogram fireLag = new LatencyHistogram();
+        LatencyHistogram handler = new LatencyHistogram();
+        for (QueueRuntime runtime : queues.values()) {
+            runtime.mergeFireLag(fireLag);
+            runtime.mergeHandlerLatency(handler);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("fireLag", fireLag.summary());
+        summary.put("handler", handler.summary());
+        return summary;
+    }
+
+    /**
+     * 获取当前生效的分发限流规则
+     * @return 桶名称（type:xxx / queue:xxx）-> ratePerSecond / burst
+     */
+    public Map<String, Object> getRateLimits() {
+        return rateLimiter.getRules();
+    }
+
+    /**
+     * 获取各任务处理器的执行统计
+     * @return 任务类型 -> active / queued / succeeded / failed / timedOut / avgMs / maxMs
      */
-    private void processTask(String taskId) {
-        log.info("Processing task: {}", taskId);
-        // 这里可以添加具体的任务处理逻辑
+    public Map<String, Object> getHandlerStats() {
+        return taskHandlerRegistry.getHandlerStats();
+    }
+
+    /**
+     * 处理任务：按任务类型交给注册的 TaskHandler，超时上限为任务租约时长
+     * @param record 任务记录
+     * @param executionTimes 记录处理器执行耗时的直方图
+     * @param onExit 处理器退出后回调一次
+     * @return 处理完成时结束的 Future
+     */
+    CompletableFuture<Void> processTask(TaskRecord record, LatencyHistogram executionTimes, Runnable onExit) {
+        return taskHandlerRegistry.dispatch(record, leaseTimeoutMs, executionTimes, onExit);
+    }
+    
+    /**
+     * 获取所有队列中待执行的任务
+     * @return 任务列表
+     */
+    public Set<String> getAllPendingTasks() {
+        Set<String> tasks = new LinkedHashSet<>();
+        for (QueueRuntime runtime : queues.values()) {
+            tasks.addAll(getAllPendingTasks(runtime.getName()));
+        }
+        return tasks;
     }
     
     /**
-     * 获取所有待执行的任务
+     * 获取指定队列中待执行的任务
+     * @param queueName 队列名称
      * @return 任务列表
      */
-    public Set<Object> getAllPendingTasks() {
+    public Set<String> getAllPendingTasks(String queueName) {
         try {
-            return redisTemplate.opsForZSet().range(DELAY_QUEUE_KEY, 0, -1);
+            return queueOf(queueName).browser().getAllPendingTasks();
         } catch (DataAccessException e) {
             log.error("Failed to get pending tasks: {}", e.getMessage());
             return Set.of();
@@ -122,43 +1152,96 @@ public class RedisDelayQueue {
     }
     
     /**
-     * 获取任务统计信息
+     * 分页列出队列中尚未认领的任务，只传输一页数据，执行时间和任务记录随列表一并返回
+     * 指定关键字时按任务ID做 ZSCAN 搜索（只支持游标翻页），否则按执行时间排序
+     * @param queueName 队列名称，为空时使用默认队列
+     * @param status 状态筛选：READY / PENDING / CANCELLED，为空时不限
+     * @param keyword 任务ID关键字
+     * @param cursor 上一页返回的游标，为空时从 offset 开始
+     * @param offset 没有游标时跳过的任务数，offset + size 不能超过 MAX_LIST_WINDOW
+     * @param size 每页数量
+     * @return 一页任务
+     */
+    public TaskPage listTasks(String queueName, String status, String keyword, String cursor, int offset, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        boolean hasCursor = cursor != null && !cursor.isEmpty();
+        if (!hasCursor && (offset < 0 || offset + size > MAX_LIST_WINDOW)) {
+            throw new IllegalArgumentException("Offset paging is limited to the first " + MAX_LIST_WINDOW + " tasks, use the cursor instead");
+        }
+        try {
+            QueueRuntime queue = queueOf(queueName);
+            if (keyword != null && !keyword.trim().isEmpty()) {
+                return queue.browser().searchTasks(status, keyword.trim(), cursor, size);
+            }
+            return queue.browser().listTasks(status, cursor, offset, size);
+        } catch (DataAccessException e) {
+            log.error("Failed to list tasks: {}", e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+    }
+    
+    /**
+     * 获取所有队列汇总的任务统计信息
      * @return 统计信息
      */
     public Map<String, Long> getTaskStats() {
-        Map<String, Long> stats = new HashMap<>();
+        Map<String, Long> stats = emptyStats();
+        for (QueueRuntime runtime : queues.values()) {
+            getTaskStats(runtime.getName()).forEach((key, value) -> stats.merge(key, value, Long::sum));
+        }
+        return stats;
+    }
+    
+    /**
+     * 获取指定队列的任务统计信息
+     * @param queueName 队列名称
+     * @return 统计信息
+     */
+    public Map<String, Long> getTaskStats(String queueName) {
+        Map<String, Long> stats = emptyStats();
         try {
-            Long totalTasks = redisTemplate.opsForZSet().count(DELAY_QUEUE_KEY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
-            long now = System.currentTimeMillis();
-            Long pendingTasks = redisTemplate.opsForZSet().count(DELAY_QUEUE_KEY, now, Double.POSITIVE_INFINITY);
-            Long readyTasks = redisTemplate.opsForZSet().count(DELAY_QUEUE_KEY, Double.NEGATIVE_INFINITY, now);
-            
-            stats.put("total", totalTasks != null ? totalTasks : 0L);
-            stats.put("pending", pendingTasks != null ? pendingTasks : 0L);
-            stats.put("ready", readyTasks != null ? readyTasks : 0L);
-            stats.put("running", 0L); // 暂时设为0，可以后续扩展
-            stats.put("completed", 0L); // 暂时设为0，可以后续扩展
-            stats.put("failed", 0L); // 暂时设为0，可以后续扩展
+            stats.putAll(queueOf(queueName).getTaskStats());
         } catch (DataAccessException e) {
             log.error("Failed to get task stats: {}", e.getMessage());
-            stats.put("total", 0L);
-            stats.put("pending", 0L);
-            stats.put("ready", 0L);
-            stats.put("running", 0L);
-            stats.put("completed", 0L);
-            stats.put("failed", 0L);
         }
         return stats;
     }
     
+    private static Map<String, Long> emptyStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("total", 0L);
+        stats.put("pending", 0L);
+        stats.put("bucketed", 0L);
+        stats.put("ready", 0L);
+        stats.put("leased", 0L);
+        stats.put("running", 0L);
+        stats.put("deadLetter", 0L);
+        stats.put("cancelled", 0L);
+        stats.put("completed", 0L);
+        stats.put("failed", 0L);
+        return stats;
+    }
+    
     /**
-     * 获取任务详细信息
+     * 获取默认队列中任务的详细信息
      * @param taskId 任务ID
      * @return 任务执行时间，如果任务不存在返回null
      */
     public Double getTaskScore(String taskId) {
+        return getTaskScore(taskId, null);
+    }
+    
+    /**
+     * 获取任务详细信息
+     * @param taskId 任务ID
+     * @param queueName 队列名称，为空时使用默认队列
+     * @return 任务执行时间，如果任务不存在返回null
+     */
+    public Double getTaskScore(String taskId, String queueName) {
         try {
-            return redisTemplate.opsForZSet().score(DELAY_QUEUE_KEY, taskId);
+            return queueOf(queueName).browser().getTaskScore(taskId);
         } catch (DataAccessException e) {
             log.error("Failed to get task score for {}: {}", taskId, e.getMessage());
             return null;
@@ -166,20 +1249,33 @@ public class RedisDelayQueue {
     }
     
     /**
-     * 重试任务
+     * 重试默认队列中的任务
      * @param taskId 任务ID
      * @return 是否成功
      */
     public boolean retryTask(String taskId) {
+        return retryTask(taskId, null);
+    }
+    
+    /**
+     * 重试任务
+     * @param taskId 任务ID
+     * @param queueName 队列名称，为空时使用默认队列
+     * @return 是否成功
+     */
+    public boolean retryTask(String taskId, String queueName) {
         try {
-            Double score = getTaskScore(taskId);
-            if (score == null) {
+            QueueRuntime queue = queueOf(queueName);
+            // 死信任务直接重新入队
+            if (queue.admin().requeueDeadLetter(taskId)) {
+                log.info("Dead letter task {} requeued", taskId);
+                return true;
+            }
+            // 按第一次重试的退避时间重新排期，批量重试时各任务的执行时间自然错开
+            long newExecuteTime = System.currentTimeMillis() + retryDelayMs(1);
+            if (!queue.admin().reschedule(taskId, newExecuteTime)) {
                 return false; // 任务不存在
             }
-            
-            // 设置为5秒后执行
-            long newExecuteTime = System.currentTimeMillis() + 5000;
-            redisTemplate.opsForZSet().add(DELAY_QUEUE_KEY, taskId, newExecuteTime);
             log.info("Task {} rescheduled to {}", taskId, newExecuteTime);
             return true;
         } catch (DataAccessException e) {
@@ -189,19 +1285,26 @@ public class RedisDelayQueue {
     }
     
     /**
-     * 取消任务
+     * 取消默认队列中的任务
      * @param taskId 任务ID
      * @return 是否成功
      */
     public boolean cancelTask(String taskId) {
+        return cancelTask(taskId, null);
+    }
+    
+    /**
+     * 取消任务
+     * @param taskId 任务ID
+     * @param queueName 队列名称，为空时使用默认队列
+     * @return 是否成功
+     */
+    public boolean cancelTask(String taskId, String queueName) {
         try {
-            Double score = getTaskScore(taskId);
-            if (score == null) {
+            // 移入取消集合，不再占用调度ZSET
+            if (!queueOf(queueName).admin().cancel(taskId)) {
                 return false; // 任务不存在
             }
-            
-            // 设置为永不执行（很远的将来）
-            redisTemplate.opsForZSet().add(DELAY_QUEUE_KEY, taskId, Double.MAX_VALUE);
             log.info("Task {} cancelled", taskId);
             return true;
         } catch (DataAccessException e) {
@@ -211,14 +1314,23 @@ public class RedisDelayQueue {
     }
     
     /**
-     * 删除任务
+     * 删除默认队列中的任务
      * @param taskId 任务ID
      * @return 是否成功
      */
     public boolean deleteTask(String taskId) {
+        return deleteTask(taskId, null);
+    }
+    
+    /**
+     * 删除任务
+     * @param taskId 任务ID
+     * @param queueName 队列名称，为空时使用默认队列
+     * @return 是否成功
+     */
+    public boolean deleteTask(String taskId, String queueName) {
         try {
-            Long removed = redisTemplate.opsForZSet().remove(DELAY_QUEUE_KEY, taskId);
-            boolean success = removed != null && removed > 0;
+            boolean success = queueOf(queueName).admin().remove(taskId);
             if (success) {
                 log.info("Task {} deleted", taskId);
             } else {
@@ -231,23 +1343,162 @@ public class RedisDelayQueue {
         }
     }
     
+    /**
+     * 按任务ID批量取消 / 删除 / 重新排期
+     * @param action 操作类型
+     * @param taskIds 任务ID列表
+     * @param queueName 队列名称，为空时使用默认队列
+     * @param executeTime 重新排期的执行时间（毫秒时间戳），仅 RESCHEDULE 需要
+     * @return 受影响的任务数
+     */
+    public long bulkApply(BulkAction action, Collection<String> taskIds, String queueName, Long executeTime) {
+        validateBulkAction(action, executeTime);
+        if (taskIds == null || taskIds.isEmpty()) {
+            return 0L;
+        }
+        try {
+            long affected = queueOf(queueName).admin().apply(action, taskIds, executeTime != null ? executeTime : 0L);
+            log.info("Bulk {} applied to {} of {} task(s) in queue [{}]", action, affected, taskIds.size(), queueName);
+            return affected;
+        } catch (DataAccessException e) {
+            log.error("Failed to apply bulk {}: {}", action, e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+    }
+    
+    /**
+     * 按筛选条件（任务类型、执行时间范围）批量取消 / 删除 / 重新排期尚未认领的任务
+     * @param action 操作类型
+     * @param filter 筛选条件
+     * @param executeTime 重新排期的执行时间（毫秒时间戳），仅 RESCHEDULE 需要
+     * @return 受影响的任务数
+     */
+    public long bulkApply(BulkAction action, TaskFilter filter, Long executeTime) {
+        validateBulkAction(action, executeTime);
+        if (filter == null) {
+            throw new IllegalArgumentException("Task filter cannot be null");
+        }
+        try {
+            long affected = queueOf(filter.getQueueName()).admin().apply(action, filter, executeTime != null ? executeTime : 0L);
+            log.info("Bulk {} applied to {} task(s) matching {}", action, affected, filter);
+            return affected;
+        } catch (DataAccessException e) {
+            log.error("Failed to apply bulk {}: {}", action, e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+    }
+    
+    private static void validateBulkAction(BulkAction action, Long executeTime) {
+        if (action == null) {
+            throw new IllegalArgumentException("Bulk action cannot be null");
+        }
+        if (action == BulkAction.RESCHEDULE && executeTime == null) {
+            throw new IllegalArgumentException("Execute time is required for reschedule");
+        }
+    }
+    
+    /**
+     * 列出死信任务
+     * @param queueName 队列名称，为空时使用默认队列
+     * @param limit 最多返回的数量
+     * @return 死信任务，按进入死信队列的时间倒序
+     */
+    public List<Map<String, Object>> getDeadLetters(String queueName, int limit) {
+        try {
+            return queueOf(queueName).admin().getDeadLetters(Math.max(limit, 1));
+        } catch (DataAccessException e) {
+            log.error("Failed to get dead letters: {}", e.getMessage());
+            return List.of();
+        }
+    }
+    
+    /**
+     * 将死信任务重新入队立即执行，重试次数清零
+     * @param taskId 任务ID
+     * @param queueName 队列名称，为空时使用默认队列
+     * @return 任务是否在死信队列中
+     */
+    public boolean requeueDeadLetter(String taskId, String queueName) {
+        try {
+            boolean success = queueOf(queueName).admin().requeueDeadLetter(taskId);
+            if (success) {
+                log.info("Dead letter task {} requeued", taskId);
+            }
+            return success;
+        } catch (DataAccessException e) {
+            log.error("Failed to requeue dead letter task {}: {}", taskId, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 清空死信队列
+     * @param queueName 队列名称，为空时使用默认队列
+     * @return 清除的任务数
+     */
+    public long purgeDeadLetters(String queueName) {
+        try {
+            return queueOf(queueName).admin().purgeDeadLetters();
+        } catch (DataAccessException e) {
+            log.error("Failed to purge dead letters of queue {}: {}", queueName, e.getMessage());
+            throw new RuntimeException("Redis connection error", e);
+        }
+    }
+    
     /**
      * 优雅关闭
      */
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down delay queue consumer...");
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
+        for (QueueRuntime runtime : queues.values()) {
+            runtime.stop();
+        }
+        rateLimiter.shutdown();
+        if (journal != null) {
+            journal.close();
+        }
+        log.info("Delay queue consumer shutdown completed");
+    }
+
+    /**
+     * addTasks 一次调用的中间状态：按队列分组的待写入任务和每个输入任务的结果
+     */
+    private static final class TaskBatch {
+        private final List<Map<String, Object>> results;
+        private final Map<QueueRuntime, List<ClaimedTask>> byQueue = new LinkedHashMap<>();
+        private final Map<QueueRuntime, List<Map<String, Object>>> resultsByQueue = new HashMap<>();
+        // 带幂等键的任务：幂等键 -> 结果，在写入前统一去重
+        private final Map<String, Map<String, Object>> dedupResults = new LinkedHashMap<>();
+        private final Map<String, ClaimedTask> dedupTasks = new HashMap<>();
+        private final Map<String, QueueRuntime> dedupQueues = new HashMap<>();
+        private final Map<ClaimedTask, String> dedupKeyOfTask = new IdentityHashMap<>();
+
+        TaskBatch(int size) {
+            this.results = new ArrayList<>(size);
+        }
+
+        void add(QueueRuntime queue, ClaimedTask task, Map<String, Object> result) {
+            byQueue.computeIfAbsent(queue, key -> new ArrayList<>()).add(task);
+            resultsByQueue.computeIfAbsent(queue, key -> new ArrayList<>()).add(result);
+        }
+
+        /**
+         * 批次内重复的幂等键与第一个任务的结果一致
+         */
+        void copyDuplicateResults() {
+            for (Map<String, Object> result : results) {
+                Object duplicateOf = result.remove("duplicateOf");
+                if (duplicateOf != null) {
+                    Map<String, Object> first = dedupResults.get(duplicateOf.toString());
+                    result.put("taskId", first.get("taskId"));
+                    result.put("success", first.get("success"));
+                    result.put("duplicate", true);
+                    if (first.get("message") != null) {
+                        result.put("message", first.get("message"));
+                    }
                 }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
             }
         }
-        log.info("Delay queue consumer shutdown completed");
     }
-}
\ No newline at end of file
+}
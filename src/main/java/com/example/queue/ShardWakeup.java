@@ -0,0 +1,72 @@
+package com.example.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分片轮询线程的休眠/唤醒控制
+ * 轮询线程休眠到下一个任务的到期时间；期间如有更早到期的任务加入，则提前唤醒
+ */
+final class ShardWakeup {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+
+    // 本轮认领之后新加入任务的最早到期时间
+    private long earliestOffered = Long.MAX_VALUE;
+
+    /**
+     * 开始新一轮认领：此前加入的任务都会被本轮认领或下一次的 peek 看到
+     */
+    void beginCycle() {
+        lock.lock();
+        try {
+            earliestOffered = Long.MAX_VALUE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 通知有新任务加入
+     * @param executeTime 新任务的执行时间
+     */
+    void offer(long executeTime) {
+        lock.lock();
+        try {
+            if (executeTime < earliestOffered) {
+                earliestOffered = executeTime;
+                condition.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 立即唤醒轮询线程（用于关闭）
+     */
+    void wakeUpNow() {
+        offer(Long.MIN_VALUE);
+    }
+
+    /**
+     * 休眠到 deadline，或者到更早加入任务的执行时间
+     * @param deadline 计划唤醒时间（毫秒时间戳）
+     */
+    void awaitUntil(long deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long remaining = Math.min(deadline, earliestOffered) - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                condition.await(remaining, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
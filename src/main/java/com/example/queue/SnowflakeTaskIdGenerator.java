@@ -0,0 +1,175 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 雪花算法任务ID生成器
+ * 64位ID = 41位毫秒时间戳（自 2024-01-01 起）+ 10位节点ID + 12位毫秒内序号，每个节点每毫秒最多生成 4096 个ID，
+ * 以36进制编码（13个字符以内）拼接在"任务类型_"之后，比"类型_毫秒时间戳"更短且不会在同一毫秒内冲突。
+ * 未配置节点ID时，首次生成ID时在Redis中租用一个空闲节点ID（SET NX + 过期时间），运行期间定时续期，关闭时释放；
+ * 租约被其他实例占用时重新租用，Redis不可用导致无法租用时拒绝生成（不随机选取，避免与其他实例冲突）。
+ */
+@Slf4j
+@Component
+public class SnowflakeTaskIdGenerator implements TaskIdGenerator {
+
+    private static final long EPOCH = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // 时钟回拨不超过该值（毫秒）时等待追上，超过则拒绝生成
+    private static final long MAX_CLOCK_BACKWARD_MS = 5;
+    private static final String NODE_LEASE_KEY_PREFIX = "delay:id:node:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean configured;
+    private final long leaseSeconds;
+    // 节点租约键的值，区分同一节点ID的不同持有者
+    private final String instanceId = UUID.randomUUID().toString();
+    // 当前节点ID，未配置且尚未租用时为 -1
+    private volatile long nodeId;
+    private long lastTimestamp = -1L;
+    private long sequence;
+
+    public SnowflakeTaskIdGenerator(StringRedisTemplate redisTemplate,
+                                    @Value("${delay-queue.id.node-id:-1}") long configuredNodeId,
+                                    @Value("${delay-queue.id.node-lease-seconds:60}") long leaseSeconds) {
+        if (configuredNodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("delay-queue.id.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.redisTemplate = redisTemplate;
+        this.configured = configuredNodeId >= 0;
+        this.leaseSeconds = leaseSeconds;
+        this.nodeId = configuredNodeId;
+    }
+
+    /**
+     * 当前节点ID，未配置时先租用
+     */
+    long nodeId() {
+        long current = nodeId;
+        if (current < 0) {
+            synchronized (this) {
+                if (nodeId < 0) {
+                    nodeId = leaseNodeId();
+                }
+                current = nodeId;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 从随机位置开始依次尝试 SET NX 租用一个空闲节点ID
+     */
+    private long leaseNodeId() {
+        long offset = ThreadLocalRandom.current().nextLong(MAX_NODE_ID + 1);
+        try {
+            for (long i = 0; i <= MAX_NODE_ID; i++) {
+                long candidate = (offset + i) & MAX_NODE_ID;
+                if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(NODE_LEASE_KEY_PREFIX + candidate,
+                        instanceId, leaseSeconds, TimeUnit.SECONDS))) {
+                    log.info("Task ID generator leased node id {}", candidate);
+                    return candidate;
+                }
+            }
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Failed to lease task ID node id from Redis, "
+                    + "configure delay-queue.id.node-id to generate ids without Redis", e);
+        }
+        throw new IllegalStateException("All " + (MAX_NODE_ID + 1) + " task ID node ids are leased");
+    }
+
+    /**
+     * 定时续期节点租约（间隔应明显小于租约时长）；租约已被其他实例占用时放弃当前节点ID，下次生成时重新租用
+     */
+    @Scheduled(fixedDelayString = "${delay-queue.id.node-renew-interval-ms:20000}")
+    public void renewNodeLease() {
+        long current = nodeId;
+        if (configured || current < 0) {
+            return;
+        }
+        Long renewed;
+        try {
+            renewed = redisTemplate.execute(DelayQueueScripts.RENEW_NODE_LEASE,
+                    Collections.singletonList(NODE_LEASE_KEY_PREFIX + current), instanceId, String.valueOf(leaseSeconds));
+        } catch (DataAccessException e) {
+            // Redis不可用期间其他实例也无法租用，恢复后续期时再判断是否被占用
+            log.warn("Failed to renew task ID node id {} lease: {}", current, e.getMessage());
+            return;
+        }
+        if (renewed == null || renewed == 0L) {
+            synchronized (this) {
+                if (nodeId == current) {
+                    nodeId = -1;
+                }
+            }
+            log.warn("Task ID node id {} lease was taken by another instance, lease a new one", current);
+        }
+    }
+
+    @PreDestroy
+    public void releaseNodeLease() {
+        long current = nodeId;
+        if (configured || current < 0) {
+            return;
+        }
+        try {
+            redisTemplate.execute(DelayQueueScripts.RELEASE_NODE_LEASE,
+                    Collections.singletonList(NODE_LEASE_KEY_PREFIX + current), instanceId);
+        } catch (DataAccessException e) {
+            log.warn("Failed to release task ID node id {} lease: {}", current, e.getMessage());
+        }
+    }
+
+    @Override
+    public String nextId(String taskType) {
+        return taskType + "_" + Long.toString(nextLong(), Character.MAX_RADIX);
+    }
+
+    /**
+     * 生成64位ID
+     */
+    synchronized long nextLong() {
+        long timestamp = System.currentTimeMillis();
+        if (timestamp < lastTimestamp) {
+            long backward = lastTimestamp - timestamp;
+            if (backward > MAX_CLOCK_BACKWARD_MS) {
+                throw new IllegalStateException("Clock moved backwards by " + backward + " ms, refuse to generate task id");
+            }
+            timestamp = waitUntilAfter(lastTimestamp - 1);
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // 本毫秒序号用尽，等待下一毫秒
+                timestamp = waitUntilAfter(lastTimestamp);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        return ((timestamp - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId() << SEQUENCE_BITS) | sequence;
+    }
+
+    private static long waitUntilAfter(long timestamp) {
+        long now = System.currentTimeMillis();
+        while (now <= timestamp) {
+            Thread.onSpinWait();
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stream 模式下队列的消费者：每个分片一个搬运线程将到期任务从优先级通道移入分片的 Stream，
+ * 一个消费线程通过消费者组（XREADGROUP / XAUTOCLAIM）领取条目后交给队列的执行线程池，租约由消费者组的待确认列表跟踪
+ * 轮询线程池、执行槽位、限流和分发仍由所属的 QueueRuntime 负责
+ */
+@Slf4j
+final class StreamConsumer {
+
+    private final QueueRuntime queue;
+    private final RedisDelayQueue owner;
+    private final StringRedisTemplate redisTemplate;
+    // 各分片 XAUTOCLAIM 的扫描起点
+    private final Map<String, String> reclaimCursors = new ConcurrentHashMap<>();
+
+    StreamConsumer(QueueRuntime queue, RedisDelayQueue owner) {
+        this.queue = queue;
+        this.owner = owner;
+        this.redisTemplate = owner.getRedisTemplate();
+    }
+
+    /**
+     * 创建分片的消费者组，启动搬运线程和消费线程
+     * @param shardKey 分片ZSET键
+     */
+    void start(String shardKey) {
+        ensureGroup(shardKey);
+        startMover(shardKey);
+        startReader(shardKey);
+    }
+
+    /**
+     * 启动指定分片的 Stream 搬运线程：将到期任务从优先级通道移入 Stream，休眠方式与 ZSET 模式的轮询线程相同
+     * 各实例都运行搬运线程，搬运在脚本中原子完成，同一任务只会被写入一次
+     * @param shardKey 分片ZSET键
+     */
+    private void startMover(String shardKey) {
+        ShardWakeup wakeup = queue.wakeupOf(shardKey);
+        List<String> keys = Arrays.asList(TaskPriority.HIGH.laneKey(shardKey), TaskPriority.NORMAL.laneKey(shardKey),
+                TaskPriority.LOW.laneKey(shardKey), QueueRuntime.streamKeyOf(shardKey), QueueRuntime.dataKeyOf(shardKey),
+                QueueRuntime.statsKeyOf(shardKey));
+        queue.submitPoller(() -> {
+            long cycle = 0;
+            long nextPromoteTime = 0;
+            long nextPurgeTime = 0;
+            while (queue.isRunning() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    wakeup.beginCycle();
+                    if (System.currentTimeMillis() >= nextPromoteTime) {
+                        queue.promoteDueBuckets(shardKey);
+                        nextPromoteTime = System.currentTimeMillis() + owner.getScanInterval();
+                    }
+                    if (System.currentTimeMillis() >= nextPurgeTime) {
+                        queue.purgeExpiredCancellations(shardKey);
+                        nextPurgeTime = System.currentTimeMillis() + QueueRuntime.CANCEL_PURGE_INTERVAL_MS;
+                    }
+                    int limit = owner.getBatchSize();
+                    List<Object> result;
+                    try {
+                        result = pushDueToStream(keys, limit, cycle++);
+                    } catch (DataAccessException e) {
+                        log.error("Failed to move due tasks into stream {}: {}", QueueRuntime.streamKeyOf(shardKey), e.getMessage());
+                        Thread.sleep(5000); // 等待5秒后重试
+                        continue;
+                    }
+                    if (result == null || result.size() < 3) {
+                        continue;
+                    }
+                    // 本批已满说明还有积压，立即继续搬运
+                    if (QueueRuntime.toLong(result.get(0)) >= limit) {
+                        continue;
+                    }
+                    // Stream 已满时等待消费者确认腾出空间，最长一个扫描间隔；否则休眠到下一个任务到期
+                    long deadline = System.currentTimeMillis() + owner.getScanInterval();
+                    String next = result.get(1).toString();
+                    if (QueueRuntime.toLong(result.get(2)) > 0 && !next.isEmpty()) {
+                        deadline = Math.min(deadline, (long) Double.parseDouble(next));
+                    }
+                    wakeup.awaitUntil(deadline);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("Error moving due tasks of delay queue {}", shardKey, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按通道份额将一批到期任务搬入 Stream
+     * @param keys PUSH_DUE_TO_STREAM 的 KEYS
+     * @param limit 本次最多搬运的数量
+     * @param cycle 本分片的搬运轮次，用于计算低优先级通道的保底份额
+     * @return [搬运数量, 剩余最早任务的执行时间, Stream剩余容量]
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> pushDueToStream(List<String> keys, int limit, long cycle) {
+        return redisTemplate.execute(DelayQueueScripts.PUSH_DUE_TO_STREAM, keys,
+                String.valueOf(System.currentTimeMillis()), String.valueOf(limit),
+                String.valueOf(QueueRuntime.laneReserve(limit, owner.getNormalLaneShare(), cycle)),
+                String.valueOf(QueueRuntime.laneReserve(limit, owner.getLowLaneShare(), cycle)),
+                String.valueOf(owner.getStreamMaxBacklog()));
+    }
+
+    /**
+     * 启动指定分片的 Stream 消费线程：占用执行槽位后通过 XREADGROUP 阻塞读取，
+     * 每个扫描间隔通过 XAUTOCLAIM 接管其他消费者租约过期的条目
+     * @param shardKey 分片ZSET键
+     */
+    private void startReader(String shardKey) {
+        queue.submitPoller(() -> {
+            long nextReclaimTime = 0;
+            while (queue.isRunning() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    int limit = queue.acquireWorkerSlots(owner.getBatchSize());
+                    List<ClaimedTask> tasks = Collections.emptyList();
+                    try {
+                        if (System.currentTimeMillis() >= nextReclaimTime) {
+                            tasks = reclaim(shardKey, limit);
+                            nextReclaimTime = System.currentTimeMillis() + owner.getScanInterval();
+                        }
+                        if (tasks.isEmpty()) {
+                            tasks = read(shardKey, limit);
+                        }
+                    } catch (DataAccessException e) {
+                        queue.releaseWorkerSlots(limit);
+                        if (isMissingGroup(e)) {
+                            // Stream 被清空或删除后消费者组随之消失，重新创建
+                            ensureGroup(shardKey);
+                            continue;
+                        }
+                        log.error("Failed to read tasks from stream {}: {}", QueueRuntime.streamKeyOf(shardKey), e.getMessage());
+                        Thread.sleep(5000); // 等待5秒后重试
+                        continue;
+                    }
+                    if (tasks.size() < limit) {
+                        queue.releaseWorkerSlots(limit - tasks.size());
+                    }
+                    for (ClaimedTask task : queue.throttle(shardKey, tasks)) {
+                        queue.dispatch(task);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    log.error("Error consuming stream of delay queue {}", shardKey, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 以本实例为消费者从分片的 Stream 读取新条目，最长阻塞一个扫描间隔，任务记录在一次 HMGET 中取回
+     * 任务记录已被删除的条目直接确认并删除
+     * @param shardKey 分片ZSET键
+     * @param limit 最多读取的数量
+     * @return 读取到的任务
+     */
+    @SuppressWarnings("unchecked")
+    private List<ClaimedTask> read(String shardKey, int limit) {
+        String streamKey = QueueRuntime.streamKeyOf(shardKey);
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+                Consumer.from(QueueRuntime.STREAM_GROUP, owner.getInstanceId()),
+                StreamReadOptions.empty().count(limit).block(Duration.ofMillis(Math.max(owner.getScanInterval(), 1))),
+                StreamOffset.create(streamKey, ReadOffset.lastConsumed()));
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> taskIds = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> entry : records) {
+            taskIds.add(String.valueOf(entry.getValue().get("id")));
+        }
+        List<Object> encoded = redisTemplate.opsForHash().multiGet(QueueRuntime.dataKeyOf(shardKey), taskIds);
+        List<ClaimedTask> tasks = new ArrayList<>(records.size());
+        List<RecordId> orphaned = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> entry = records.get(i);
+            String taskId = taskIds.get(i).toString();
+            if (encoded.get(i) == null) {
+                orphaned.add(entry.getId());
+                continue;
+            }
+            Object score = entry.getValue().get("s");
+            long executeTime = score != null ? (long) Double.parseDouble(score.toString()) : 0L;
+            tasks.add(new ClaimedTask(taskId, executeTime, TaskRecord.decode(taskId, encoded.get(i).toString()),
+                    entry.getId().getValue()));
+        }
+        if (!orphaned.isEmpty()) {
+            RecordId[] ids = orphaned.toArray(new RecordId[0]);
+            redisTemplate.opsForStream().acknowledge(streamKey, QueueRuntime.STREAM_GROUP, ids);
+            redisTemplate.opsForStream().delete(streamKey, ids);
+            log.info("Skipped {} deleted task(s) in stream {}", orphaned.size(), streamKey);
+        }
+        return tasks;
+    }
+
+    /**
+     * 接管空闲时间超过租约时长的待确认条目（其消费者崩溃或执行超时），由本实例重新执行
+     * @param shardKey 分片ZSET键
+     * @param limit 最多接管的数量
+     * @return 接管的任务
+     */
+    @SuppressWarnings("unchecked")
+    private List<ClaimedTask> reclaim(String shardKey, int limit) {
+        List<Object> raw = redisTemplate.execute(DelayQueueScripts.RECLAIM_STREAM,
+                Arrays.asList(QueueRuntime.streamKeyOf(shardKey), QueueRuntime.dataKeyOf(shardKey), QueueRuntime.statsKeyOf(shardKey)),
+                QueueRuntime.STREAM_GROUP, owner.getInstanceId(), String.valueOf(owner.getLeaseTimeoutMs()),
+                reclaimCursors.getOrDefault(shardKey, "0-0"), String.valueOf(limit));
+        if (raw == null || raw.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 扫描起点回到 0-0 表示本轮已扫描完整个待确认列表
+        reclaimCursors.put(shardKey, raw.get(0).toString());
+        List<ClaimedTask> tasks = new ArrayList<>((raw.size() - 1) / 4);
+        for (int i = 1; i + 3 < raw.size(); i += 4) {
+            String taskId = raw.get(i + 1).toString();
+            long executeTime = (long) Double.parseDouble(raw.get(i + 2).toString());
+            tasks.add(new ClaimedTask(taskId, executeTime, TaskRecord.decode(taskId, raw.get(i + 3).toString()),
+                    raw.get(i).toString()));
+        }
+        if (!tasks.isEmpty()) {
+            log.warn("Reclaimed {} stream entries with expired lease in delay queue {}", tasks.size(), shardKey);
+        }
+        return tasks;
+    }
+
+    /**
+     * 创建分片 Stream 的消费者组（Stream 不存在时一并创建），已存在时忽略
+     */
+    void ensureGroup(String shardKey) {
+        byte[] streamKey = QueueRuntime.streamKeyOf(shardKey).getBytes(StandardCharsets.UTF_8);
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(streamKey, QueueRuntime.STREAM_GROUP, ReadOffset.from("0-0"), true));
+        } catch (DataAccessException e) {
+            if (!String.valueOf(e.getMostSpecificCause().getMessage()).contains("BUSYGROUP")) {
+                log.error("Failed to create consumer group for stream {}: {}", QueueRuntime.streamKeyOf(shardKey), e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isMissingGroup(DataAccessException e) {
+        return String.valueOf(e.getMostSpecificCause().getMessage()).contains("NOGROUP");
+    }
+}
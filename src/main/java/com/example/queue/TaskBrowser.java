@@ -0,0 +1,305 @@
+package com.example.queue;
+
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 队列中尚未认领的任务的只读查询：分页列表、关键字搜索、待执行任务及单个任务的执行时间
+ * 读取的通道和远期桶由所属的 QueueRuntime 确定
+ */
+final class TaskBrowser {
+
+    // 关键字搜索时单次请求最多的 ZSCAN 次数
+    private static final int SCAN_CALLS_PER_PAGE = 50;
+
+    private final QueueRuntime queue;
+    private final StringRedisTemplate redisTemplate;
+
+    TaskBrowser(QueueRuntime queue, StringRedisTemplate redisTemplate) {
+        this.queue = queue;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 获取所有待执行的任务，包括远期桶中的任务
+     */
+    Set<String> getAllPendingTasks() {
+        Set<String> tasks = new LinkedHashSet<>();
+        for (String shardKey : queue.getShardKeys()) {
+            for (String key : queue.sourceKeysOf(shardKey, false, "+inf")) {
+                Set<String> laneTasks = redisTemplate.opsForZSet().range(key, 0, -1);
+                if (laneTasks != null) {
+                    tasks.addAll(laneTasks);
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * 按执行时间顺序分页列出尚未认领的任务，每个分片一次脚本调用，执行时间和任务记录随列表一并返回
+     * 有游标时从游标之后继续；没有游标时跳过 offset 个任务（每条通道需多读 offset 个，只适合浅分页）
+     * @param status 状态筛选：READY / PENDING / CANCELLED（从取消集合按取消时间列出），为空时列出所有可调度的任务，其他状态返回空页
+     * @param cursor 上一页返回的游标
+     * @param offset 没有游标时跳过的任务数
+     * @param size 每页数量
+     * @return 一页任务
+     */
+    @SuppressWarnings("unchecked")
+    TaskPage listTasks(String status, String cursor, int offset, int size) {
+        long now = System.currentTimeMillis();
+        String[] range = scoreRangeOf(status, now);
+        if (range == null) {
+            return new TaskPage(Collections.emptyList(), null, 0L);
+        }
+        String cursorScore = "";
+        String cursorMember = "";
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] decoded = decodeCursor(cursor, 2);
+            if (decoded.length != 2) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            // 游标早于执行时间下限时（状态筛选变化）从下限开始
+            if ("-inf".equals(range[0]) || Double.parseDouble(decoded[0]) >= Double.parseDouble(range[0])) {
+                cursorScore = decoded[0];
+                cursorMember = decoded[1];
+            }
+            offset = 0;
+        }
+        int perLane = offset + size;
+        boolean cancelled = isCancelledStatus(status);
+        List<ListedTask> merged = new ArrayList<>();
+        for (String shardKey : queue.getShardKeys()) {
+            List<String> keys = new ArrayList<>(queue.sourceKeysOf(shardKey, cancelled, range[1]));
+            keys.add(QueueRuntime.dataKeyOf(shardKey));
+            List<Object> raw = redisTemplate.execute(DelayQueueScripts.LIST_PAGE, keys,
+                    range[0], range[1], cursorScore, cursorMember, String.valueOf(perLane));
+            if (raw != null) {
+                for (int i = 0; i + 2 < raw.size(); i += 3) {
+                    merged.add(new ListedTask(raw.get(i).toString(), raw.get(i + 1).toString(), raw.get(i + 2).toString(), cancelled));
+                }
+            }
+        }
+        merged.sort(null);
+        List<Map<String, Object>> content = new ArrayList<>(size);
+        ListedTask last = null;
+        for (int i = offset; i < merged.size() && content.size() < size; i++) {
+            last = merged.get(i);
+            content.add(last.toView(now));
+        }
+        String nextCursor = content.size() == size && last != null ? encodeCursor(last.score + "\n" + last.taskId) : null;
+        return new TaskPage(content, nextCursor, countTasks(range[0], range[1], cancelled));
+    }
+
+    /**
+     * 按任务ID关键字分页搜索尚未认领的任务，依次对每个分片的每条通道及远期桶做 ZSCAN，结果不保证按执行时间排序
+     * 每次请求最多扫描 SCAN_CALLS_PER_PAGE 次，匹配很少时可能返回不足一页但仍带有游标
+     * 翻页期间远期桶被提升或新建时，桶中的任务可能遗漏或重复出现
+     * @param status 状态筛选，为空时不限
+     * @param keyword 任务ID关键字
+     * @param cursor 上一页返回的游标
+     * @param size 每页数量（ZSCAN 按批返回，实际数量可能略多）
+     * @return 一页任务，总数为 -1
+     */
+    @SuppressWarnings("unchecked")
+    TaskPage searchTasks(String status, String keyword, String cursor, int size) {
+        long now = System.currentTimeMillis();
+        String[] range = scoreRangeOf(status, now);
+        if (range == null) {
+            return new TaskPage(Collections.emptyList(), null, 0L);
+        }
+        double min = "-inf".equals(range[0]) ? Double.NEGATIVE_INFINITY : Double.parseDouble(range[0]);
+        double max = "+inf".equals(range[1]) ? Double.POSITIVE_INFINITY : Double.parseDouble(range[1]);
+        String pattern = "*" + keyword.replaceAll("([*?\\[\\]\\\\])", "\\\\$1") + "*";
+        boolean cancelled = isCancelledStatus(status);
+        int shardIndex = 0;
+        int laneIndex = 0;
+        String scanCursor = "0";
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] decoded = decodeCursor(cursor, 3);
+            if (decoded.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            shardIndex = Integer.parseInt(decoded[0]);
+            laneIndex = Integer.parseInt(decoded[1]);
+            scanCursor = decoded[2];
+        }
+        List<Map<String, Object>> content = new ArrayList<>();
+        int calls = 0;
+        while (shardIndex < queue.getShardKeys().size() && content.size() < size && calls++ < SCAN_CALLS_PER_PAGE) {
+            String shardKey = queue.getShardKeys().get(shardIndex);
+            List<String> sources = queue.sourceKeysOf(shardKey, cancelled, range[1]);
+            if (laneIndex >= sources.size()) {
+                // 游标指向的远期桶已被提升，继续下一个分片
+                laneIndex = 0;
+                scanCursor = "0";
+                shardIndex++;
+                continue;
+            }
+            List<Object> raw = redisTemplate.execute(DelayQueueScripts.SCAN_PAGE,
+                    Arrays.asList(sources.get(laneIndex), QueueRuntime.dataKeyOf(shardKey)),
+                    scanCursor, pattern, String.valueOf(Math.max(size, 100)));
+            if (raw == null || raw.isEmpty()) {
+                break;
+            }
+            for (int i = 1; i + 2 < raw.size(); i += 3) {
+                ListedTask task = new ListedTask(raw.get(i).toString(), raw.get(i + 1).toString(), raw.get(i + 2).toString(), cancelled);
+                if (task.scoreValue >= min && task.scoreValue <= max) {
+                    content.add(task.toView(now));
+                }
+            }
+            scanCursor = raw.get(0).toString();
+            if ("0".equals(scanCursor)) {
+                // 本通道扫描完毕，继续下一条通道或下一个分片
+                if (++laneIndex == sources.size()) {
+                    laneIndex = 0;
+                    shardIndex++;
+                }
+            }
+        }
+        String nextCursor = shardIndex < queue.getShardKeys().size()
+                ? encodeCursor(shardIndex + "\n" + laneIndex + "\n" + scanCursor) : null;
+        return new TaskPage(content, nextCursor, -1L);
+    }
+
+    /**
+     * 状态对应的分数范围 [下限, 上限]，CANCELLED 对应取消集合中的全部任务，其他不在优先级通道中的状态返回null
+     */
+    private static String[] scoreRangeOf(String status, long now) {
+        if (status == null || status.trim().isEmpty()) {
+            return new String[]{"-inf", "+inf"};
+        }
+        switch (status.trim().toUpperCase()) {
+            case "READY":
+                return new String[]{"-inf", String.valueOf(now)};
+            case "PENDING":
+                return new String[]{String.valueOf(now + 1), "+inf"};
+            case "CANCELLED":
+                return new String[]{"-inf", "+inf"};
+            default:
+                // 执行中、已完成、失败等状态的任务不在优先级通道中
+                return null;
+        }
+    }
+
+    private static boolean isCancelledStatus(String status) {
+        return status != null && "CANCELLED".equalsIgnoreCase(status.trim());
+    }
+
+    /**
+     * 统计分数在范围内的任务数（含远期桶），所有分片、通道和桶的 ZCOUNT 在一次管道往返中完成
+     */
+    private long countTasks(String min, String max, boolean cancelled) {
+        List<String> sources = new ArrayList<>();
+        for (String shardKey : queue.getShardKeys()) {
+            sources.addAll(queue.sourceKeysOf(shardKey, cancelled, max));
+        }
+        double from = "-inf".equals(min) ? Double.NEGATIVE_INFINITY : Double.parseDouble(min);
+        double to = "+inf".equals(max) ? Double.POSITIVE_INFINITY : Double.parseDouble(max);
+        List<Object> counts = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : sources) {
+                conn.zCount(key, from, to);
+            }
+            return null;
+        });
+        long total = 0;
+        for (Object count : counts) {
+            total += QueueRuntime.toLong(count);
+        }
+        return total;
+    }
+
+    private static String encodeCursor(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor, int parts) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", parts);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * 列表中的一个任务，按 (执行时间, 任务ID字节序) 排序，与Redis中同分数成员的顺序一致
+     */
+    private final class ListedTask implements Comparable<ListedTask> {
+        private final String taskId;
+        private final String score;
+        private final double scoreValue;
+        private final String encoded;
+        // 来自取消集合时分数为取消时间
+        private final boolean cancelled;
+
+        ListedTask(String taskId, String score, String encoded, boolean cancelled) {
+            this.taskId = taskId;
+            this.score = score;
+            this.scoreValue = Double.parseDouble(score);
+            this.encoded = encoded;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public int compareTo(ListedTask other) {
+            int byScore = Double.compare(scoreValue, other.scoreValue);
+            return byScore != 0 ? byScore : Arrays.compareUnsigned(
+                    taskId.getBytes(StandardCharsets.UTF_8), other.taskId.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Map<String, Object> toView(long now) {
+            TaskRecord record = TaskRecord.decode(taskId, encoded);
+            Map<String, Object> view = new HashMap<>();
+            view.put("id", taskId);
+            view.put("taskType", record.getTaskType());
+            view.put("queueName", queue.getName());
+            view.put("executeTime", cancelled ? null : (long) scoreValue);
+            view.put("cancelTime", cancelled ? (long) scoreValue : null);
+            view.put("status", cancelled ? "CANCELLED" : scoreValue > now ? "PENDING" : "READY");
+            view.put("priority", TaskPriority.of(record.getPriority()).name());
+            view.put("attempts", record.getAttempts() != null ? record.getAttempts() : 0);
+            view.put("recurrence", record.getRecurrence());
+            view.put("createTime", record.getCreateTime());
+            return view;
+        }
+    }
+
+    /**
+     * 获取任务的执行时间，各优先级通道的 ZSCORE 在一次管道往返中完成
+     */
+    Double getTaskScore(String taskId) {
+        String shardKey = queue.shardKeyOf(taskId);
+        List<Object> scores = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (TaskPriority lane : TaskPriority.values()) {
+                conn.zScore(lane.laneKey(shardKey), taskId);
+            }
+            return null;
+        });
+        for (Object score : scores) {
+            if (score instanceof Number) {
+                return ((Number) score).doubleValue();
+            }
+        }
+        // 不在优先级通道中时按任务记录中的桶起始时间查找远期桶
+        Object data = redisTemplate.opsForHash().get(QueueRuntime.dataKeyOf(shardKey), taskId);
+        if (data == null) {
+            return null;
+        }
+        String bucketKey = queue.recordBucketKey(shardKey, taskId, data.toString());
+        return bucketKey != null ? redisTemplate.opsForZSet().score(bucketKey, taskId) : null;
+    }
+}
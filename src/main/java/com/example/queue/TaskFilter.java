@@ -0,0 +1,34 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量操作的任务筛选条件，只匹配尚未认领的任务，各条件为空时不限制
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskFilter {
+
+    /**
+     * 队列名称，为空时使用默认队列
+     */
+    private String queueName;
+
+    /**
+     * 任务类型
+     */
+    private String taskType;
+
+    /**
+     * 执行时间下限（毫秒时间戳，包含）
+     */
+    private Long fromTime;
+
+    /**
+     * 执行时间上限（毫秒时间戳，包含）
+     */
+    private Long toTime;
+}
@@ -0,0 +1,37 @@
+package com.example.queue;
+
+/**
+ * 延迟任务处理器
+ * 实现该接口并注册为Spring Bean即可处理对应类型的任务，每个处理器拥有独立的执行线程、并发上限和超时时间，
+ * 一种任务的积压或卡顿不会占用其他任务类型的执行线程。
+ * 处理器正常返回即确认任务完成；抛出异常或超时则按重试策略重新排期，超过最大重试次数后进入死信队列。
+ */
+public interface TaskHandler {
+
+    /**
+     * 处理的任务类型，与 TaskRecord.taskType 对应，每种类型只能有一个处理器
+     */
+    String getTaskType();
+
+    /**
+     * 处理任务
+     * @param record 任务记录
+     * @throws Exception 处理失败
+     */
+    void handle(TaskRecord record) throws Exception;
+
+    /**
+     * 该处理器在本实例上的最大并发数
+     */
+    default int getConcurrency() {
+        return 4;
+    }
+
+    /**
+     * 单个任务的处理超时时间（毫秒），超时后中断处理线程并视为失败；
+     * 0 表示使用 QueueSettings.taskTimeout，且不会超过该值（超过租约的任务会被重新投递）
+     */
+    default long getTimeoutMs() {
+        return 0L;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务处理器注册表
+ * 收集所有 TaskHandler Bean 并按任务类型分发，每个处理器使用独立的线程池（线程数 = 并发上限）执行，
+ * 超时由共享的调度线程负责中断；没有注册处理器的任务类型只记录日志（与旧版 processTask 行为一致）。
+ */
+@Slf4j
+@Component
+public class TaskHandlerRegistry {
+
+    private final ObjectProvider<TaskHandler> handlerProvider;
+    // 处理器在第一次分发时才解析，处理器可以注入 RedisDelayQueue 而不形成构造循环
+    private volatile Map<String, HandlerRuntime> handlers;
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "delay-queue-handler-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TaskHandlerRegistry(ObjectProvider<TaskHandler> handlerProvider) {
+        this.handlerProvider = handlerProvider;
+    }
+
+    private Map<String, HandlerRuntime> handlers() {
+        Map<String, HandlerRuntime> resolved = handlers;
+        if (resolved == null) {
+            synchronized (this) {
+                resolved = handlers;
+                if (resolved == null) {
+                    resolved = new HashMap<>();
+                    for (TaskHandler handler : (Iterable<TaskHandler>) handlerProvider.orderedStream()::iterator) {
+                        String taskType = handler.getTaskType();
+                        if (taskType == null || taskType.trim().isEmpty()) {
+                            throw new IllegalStateException("Task handler " + handler.getClass().getName() + " has no task type");
+                        }
+                        if (resolved.containsKey(taskType)) {
+                            throw new IllegalStateException("Duplicate task handler for type " + taskType);
+                        }
+                        resolved.put(taskType, new HandlerRuntime(handler));
+                        log.info("Registered task handler {} for type {}, concurrency: {}", handler.getClass().getSimpleName(),
+                                taskType, Math.max(handler.getConcurrency(), 1));
+                    }
+                    handlers = resolved;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * 将任务交给对应类型的处理器异步执行
+     * @param record 任务记录
+     * @param maxTimeoutMs 超时上限（毫秒），即任务的租约时长
+     * @param executionTimes 记录处理器执行耗时的直方图，可为 null
+     * @param onExit 处理器真正退出后回调一次（超时的处理器可能在 Future 结束后仍在运行），用于归还执行槽位
+     * @return 处理完成时结束的 Future，处理失败或超时时异常结束
+     */
+    CompletableFuture<Void> dispatch(TaskRecord record, long maxTimeoutMs, LatencyHistogram executionTimes, Runnable onExit) {
+        HandlerRuntime runtime = record.getTaskType() != null ? handlers().get(record.getTaskType()) : null;
+        if (runtime == null) {
+            log.info("Processing task: {}, type: {}", record.getId(), record.getTaskType());
+            onExit.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        return runtime.submit(record, maxTimeoutMs, executionTimes, onExit);
+    }
+
+    /**
+     * 各处理器的执行统计
+     * @return 任务类型 -> active / queued / succeeded / failed / timedOut / avgMs / maxMs
+     */
+    public Map<String, Object> getHandlerStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        handlers().forEach((taskType, runtime) -> stats.put(taskType, runtime.getStats()));
+        return stats;
+    }
+
+    /**
+     * 已注册处理器的任务类型
+     */
+    public Map<String, Integer> getRegisteredTypes() {
+        Map<String, Integer> types = new LinkedHashMap<>();
+        handlers().forEach((taskType, runtime) -> types.put(taskType, runtime.concurrency));
+        return Collections.unmodifiableMap(types);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Map<String, HandlerRuntime> resolved = handlers;
+        if (resolved != null) {
+            resolved.values().forEach(HandlerRuntime::shutdown);
+        }
+        timeoutScheduler.shutdownNow();
+    }
+
+    /**
+     * 单个处理器的执行线程池和统计
+     */
+    private final class HandlerRuntime {
+        private final TaskHandler handler;
+        private final int concurrency;
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder timedOut = new LongAdder();
+        private final LongAdder totalMs = new LongAdder();
+        private final AtomicLong maxMs = new AtomicLong();
+
+        HandlerRuntime(TaskHandler handler) {
+            this.handler = handler;
+            this.concurrency = Math.max(handler.getConcurrency(), 1);
+            AtomicInteger counter = new AtomicInteger(1);
+            // 等待队列不设上限：进入这里的任务已占用所属队列的执行槽位，总量由队列的背压控制
+            this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "delay-queue-handler-" + handler.getTaskType() + "-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        CompletableFuture<Void> submit(TaskRecord record, long maxTimeoutMs, LatencyHistogram executionTimes, Runnable onExit) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            long timeoutMs = handler.getTimeoutMs() > 0 ? Math.min(handler.getTimeoutMs(), maxTimeoutMs) : maxTimeoutMs;
+            try {
+                executor.execute(() -> {
+                    try {
+                        run(record, timeoutMs, executionTimes, future);
+                    } finally {
+                        onExit.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+                onExit.run();
+            }
+            return future;
+        }
+
+        private void run(TaskRecord record, long timeoutMs, LatencyHistogram executionTimes, CompletableFuture<Void> future) {
+            Execution execution = new Execution(Thread.currentThread());
+            // 超时时间从开始执行算起，不包括在线程池中排队的时间
+            ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+                if (future.completeExceptionally(new TimeoutException("Task " + record.getId() + " timed out after " + timeoutMs + " ms"))) {
+                    timedOut.increment();
+                    execution.interrupt();
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            active.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                handler.handle(record);
+                if (future.complete(null)) {
+                    succeeded.increment();
+                }
+            } catch (Exception e) {
+                if (future.completeExceptionally(e)) {
+                    failed.increment();
+                }
+            } finally {
+                execution.finish();
+                timeout.cancel(false);
+                active.decrementAndGet();
+                long elapsedNanos = System.nanoTime() - start;
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+                totalMs.add(elapsed);
+                maxMs.accumulateAndGet(elapsed, Math::max);
+                if (executionTimes != null) {
+                    executionTimes.record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+                }
+                // finish 之后不会再有超时中断，清除已送达的中断标记，避免影响线程池中的下一个任务
+                Thread.interrupted();
+            }
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            long completed = succeeded.sum() + failed.sum() + timedOut.sum();
+            stats.put("concurrency", concurrency);
+            stats.put("active", active.get());
+            stats.put("queued", executor.getQueue().size());
+            stats.put("succeeded", succeeded.sum());
+            stats.put("failed", failed.sum());
+            stats.put("timedOut", timedOut.sum());
+            stats.put("avgMs", completed > 0 ? Math.round((double) totalMs.sum() / completed * 100.0) / 100.0 : 0.0);
+            stats.put("maxMs", maxMs.get());
+            return stats;
+        }
+
+        void shutdown() {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 一次处理器执行：超时线程只在处理器仍在运行时中断执行线程，与执行线程结束处理在同一把锁下判断，
+     * 不会中断已经结束、正在执行下一个任务的线程
+     */
+    private static final class Execution {
+        private final Thread worker;
+        private boolean running = true;
+
+        Execution(Thread worker) {
+            this.worker = worker;
+        }
+
+        synchronized void interrupt() {
+            if (running) {
+                worker.interrupt();
+            }
+        }
+
+        synchronized void finish() {
+            running = false;
+        }
+    }
+}
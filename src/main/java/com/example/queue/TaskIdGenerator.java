@@ -0,0 +1,16 @@
+package com.example.queue;
+
+/**
+ * 任务ID生成器
+ * 默认实现为 SnowflakeTaskIdGenerator，声明一个 @Primary 的实现Bean即可替换。
+ * 生成的ID需以"任务类型_"开头，按类型筛选任务时依赖该前缀。
+ */
+public interface TaskIdGenerator {
+
+    /**
+     * 生成全局唯一的任务ID
+     * @param taskType 任务类型
+     * @return 任务ID
+     */
+    String nextId(String taskType);
+}
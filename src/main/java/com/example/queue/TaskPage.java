@@ -0,0 +1,30 @@
+package com.example.queue;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务列表的一页
+ */
+@Data
+@AllArgsConstructor
+public class TaskPage {
+
+    /**
+     * 本页任务：id / taskType / queueName / executeTime / status / priority / attempts / createTime
+     */
+    private List<Map<String, Object>> content;
+
+    /**
+     * 获取下一页的游标，为null表示没有更多数据
+     */
+    private String nextCursor;
+
+    /**
+     * 符合条件的任务总数，无法低成本统计时（关键字搜索）为 -1
+     */
+    private long totalElements;
+}
@@ -0,0 +1,45 @@
+package com.example.queue;
+
+/**
+ * 任务优先级
+ * 每个分片按优先级拆分为三条通道（ZSET）：NORMAL 沿用分片键本身，HIGH / LOW 在分片键后加后缀，
+ * 与分片键共用哈希标签，认领脚本可以在一次调用中跨通道挑选任务。
+ */
+public enum TaskPriority {
+
+    HIGH(":high"),
+    NORMAL(""),
+    LOW(":low");
+
+    private final String laneSuffix;
+
+    TaskPriority(String laneSuffix) {
+        this.laneSuffix = laneSuffix;
+    }
+
+    /**
+     * 该优先级在指定分片上的通道键
+     * @param shardKey 分片键
+     * @return 通道ZSET键
+     */
+    public String laneKey(String shardKey) {
+        return shardKey + laneSuffix;
+    }
+
+    /**
+     * 解析优先级，空值或无法识别时为 NORMAL
+     * @param value 优先级字符串，大小写不敏感
+     * @return 优先级
+     */
+    public static TaskPriority of(String value) {
+        if (value == null) {
+            return NORMAL;
+        }
+        for (TaskPriority priority : values()) {
+            if (priority.name().equalsIgnoreCase(value.trim())) {
+                return priority;
+            }
+        }
+        return NORMAL;
+    }
+}
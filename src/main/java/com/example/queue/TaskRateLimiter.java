@@ -0,0 +1,190 @@
+package com.example.queue;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务分发限流器
+ * 按任务类型和队列配置令牌桶（速率 + 突发容量），在Redis中以 GCRA 算法为每个任务预约执行时间，所有实例共享同一组桶。
+ * 超出速率的任务不会被丢弃，而是按预约时间平滑地往后排，避免同一时刻到期的大量任务瞬间打满下游。
+ *
+ * 规则格式（QueueSettings.rateLimits，逗号分隔）：
+ * type:sms_reminder=50/100 表示 sms_reminder 类型每秒 50 个、突发 100 个；
+ * queue:default=200 表示 default 队列每秒 200 个；不带前缀时视为任务类型；突发容量默认为一秒的量。
+ */
+@Slf4j
+class TaskRateLimiter {
+
+    static final String RATE_LIMIT_KEY = "delay:rate";
+    private static final String TYPE_PREFIX = "type:";
+    private static final String QUEUE_PREFIX = "queue:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "delay-queue-rate-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile String spec = "";
+    // 桶名称（type:xxx / queue:xxx）-> 规则
+    private volatile Map<String, Rule> rules = Collections.emptyMap();
+
+    TaskRateLimiter(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 更新限流规则，规则无效时保留原有规则
+     * @param newSpec 规则配置
+     */
+    void update(String newSpec) {
+        String normalized = newSpec != null ? newSpec.trim() : "";
+        if (normalized.equals(spec)) {
+            return;
+        }
+        try {
+            rules = parse(normalized);
+            spec = normalized;
+            log.info("Task rate limits updated: {}", normalized.isEmpty() ? "none" : normalized);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignore invalid task rate limits [{}]: {}", normalized, e.getMessage());
+        }
+    }
+
+    boolean isEnabled() {
+        return !rules.isEmpty();
+    }
+
+    /**
+     * 当前生效的限流规则
+     * @return 桶名称 -> ratePerSecond / burst
+     */
+    Map<String, Object> getRules() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        rules.forEach((bucket, rule) -> view.put(bucket, Map.of("ratePerSecond", rule.ratePerSecond, "burst", rule.burst)));
+        return view;
+    }
+
+    /**
+     * 为一批任务预约执行时间，一次脚本调用完成
+     * @param queueName 队列名称
+     * @param tasks 任务
+     * @param now 当前时间
+     * @return 与 tasks 一一对应的预约时间（不早于任务的计划执行时间），没有任何任务受限时返回 null
+     */
+    long[] reserve(String queueName, List<ClaimedTask> tasks, long now) {
+        Map<String, Rule> current = rules;
+        if (current.isEmpty() || tasks.isEmpty()) {
+            return null;
+        }
+        Map<String, Integer> bucketIndexes = new LinkedHashMap<>();
+        List<String> taskArgs = new ArrayList<>(tasks.size());
+        Rule queueRule = current.get(QUEUE_PREFIX + queueName);
+        for (ClaimedTask task : tasks) {
+            StringBuilder indexes = new StringBuilder();
+            String taskType = task.getRecord() != null ? task.getRecord().getTaskType() : null;
+            if (taskType != null && current.containsKey(TYPE_PREFIX + taskType)) {
+                indexes.append(bucketIndexes.computeIfAbsent(TYPE_PREFIX + taskType, key -> bucketIndexes.size() + 1));
+            }
+            if (queueRule != null) {
+                if (indexes.length() > 0) {
+                    indexes.append(',');
+                }
+                indexes.append(bucketIndexes.computeIfAbsent(QUEUE_PREFIX + queueName, key -> bucketIndexes.size() + 1));
+            }
+            taskArgs.add(Math.max(now, task.getExecuteTime()) + "|" + indexes);
+        }
+        if (bucketIndexes.isEmpty()) {
+            return null;
+        }
+        List<String> args = new ArrayList<>(2 + bucketIndexes.size() * 3 + taskArgs.size());
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(bucketIndexes.size()));
+        for (String bucket : bucketIndexes.keySet()) {
+            Rule rule = current.get(bucket);
+            args.add(bucket);
+            args.add(String.valueOf(rule.intervalMs));
+            args.add(String.valueOf(rule.toleranceMs));
+        }
+        args.addAll(taskArgs);
+        List<?> raw = redisTemplate.execute(DelayQueueScripts.RESERVE_RATE_SLOTS,
+                Collections.singletonList(RATE_LIMIT_KEY), args.toArray());
+        long[] slots = new long[tasks.size()];
+        for (int i = 0; i < slots.length; i++) {
+            Object slot = raw != null && i < raw.size() ? raw.get(i) : null;
+            slots[i] = slot instanceof Number ? ((Number) slot).longValue() : Math.max(now, tasks.get(i).getExecuteTime());
+        }
+        return slots;
+    }
+
+    /**
+     * 在指定时间执行
+     */
+    void runAt(long time, Runnable action) {
+        scheduler.schedule(action, Math.max(time - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static Map<String, Rule> parse(String spec) {
+        if (spec.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Rule> parsed = new LinkedHashMap<>();
+        for (String item : spec.split(",")) {
+            String entry = item.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected <type|queue>:<name>=<rate>[/<burst>] but got " + entry);
+            }
+            String bucket = entry.substring(0, separator).trim();
+            if (!bucket.startsWith(TYPE_PREFIX) && !bucket.startsWith(QUEUE_PREFIX)) {
+                bucket = TYPE_PREFIX + bucket;
+            }
+            String[] values = entry.substring(separator + 1).trim().split("/");
+            try {
+                double rate = Double.parseDouble(values[0].trim());
+                double burst = values.length > 1 ? Double.parseDouble(values[1].trim()) : Math.max(rate, 1);
+                if (rate <= 0 || burst < 1 || values.length > 2) {
+                    throw new IllegalArgumentException("Rate must be positive and burst at least 1: " + entry);
+                }
+                parsed.put(bucket, new Rule(rate, burst));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid rate in " + entry);
+            }
+        }
+        return Collections.unmodifiableMap(parsed);
+    }
+
+    /**
+     * 单个桶的规则：GCRA 的发射间隔 = 1000 / rate，容忍度 = (burst - 1) * 发射间隔
+     */
+    private static final class Rule {
+        private final double ratePerSecond;
+        private final double burst;
+        private final double intervalMs;
+        private final double toleranceMs;
+
+        Rule(double ratePerSecond, double burst) {
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+            this.intervalMs = 1000.0 / ratePerSecond;
+            this.toleranceMs = (burst - 1) * intervalMs;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.queue;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 延迟任务记录
+ * 与ZSET中的调度项一同写入分片的数据Hash（字段为任务ID），认领时在同一个脚本中取回。
+ * 序列化时使用单字母字段名并省略空值，任务ID本身即Hash字段不重复存储，以减少内存占用。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TaskRecord {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 任务ID
+     */
+    @JsonIgnore
+    private String id;
+
+    /**
+     * 任务类型
+     */
+    @JsonProperty("t")
+    private String taskType;
+
+    /**
+     * 队列名称
+     */
+    @JsonProperty("q")
+    private String queueName;
+
+    /**
+     * 任务数据
+     */
+    @JsonProperty("d")
+    private String payload;
+
+    /**
+     * 优先级：HIGH / NORMAL / LOW
+     */
+    @JsonProperty("p")
+    private String priority;
+
+    /**
+     * 最大重试次数
+     */
+    @JsonProperty("r")
+    private Integer maxRetries;
+
+    /**
+     * 已尝试次数
+     */
+    @JsonProperty("a")
+    private Integer attempts;
+
+    /**
+     * 最近一次失败的原因
+     */
+    @JsonProperty("e")
+    private String lastError;
+
+    /**
+     * 重复方式：FIXED_RATE / FIXED_DELAY / CRON，为空表示一次性任务
+     */
+    @JsonProperty("k")
+    private String recurrence;
+
+    /**
+     * FIXED_RATE / FIXED_DELAY 的间隔（毫秒）
+     */
+    @JsonProperty("i")
+    private Long intervalMs;
+
+    /**
+     * CRON 表达式
+     */
+    @JsonProperty("x")
+    private String cron;
+
+    /**
+     * 限流预约的执行时间：被限流推迟放回队列的任务带有该标记，再次认领时直接执行，不再重复预约
+     */
+    @JsonProperty("g")
+    private Long rateSlot;
+
+    /**
+     * 远期桶的起始时间：写入远期桶的任务带有该标记，取消、删除和重新排期时据此定位所在的桶
+     */
+    @JsonProperty("b")
+    private Long bucket;
+
+    /**
+     * 创建时间（毫秒时间戳）
+     */
+    @JsonProperty("c")
+    private Long createTime;
+
+    /**
+     * 为只有ID的任务构建记录：旧版接口按ID添加的任务在入队时据此写入任务记录，旧版本遗留的无记录任务在读取时据此补全
+     * 任务类型按ID格式"类型_序号"取最后一个下划线之前的部分（类型本身可以包含下划线）
+     * @param taskId 任务ID
+     * @return 任务记录
+     */
+    public static TaskRecord ofId(String taskId) {
+        TaskRecord record = new TaskRecord();
+        record.setId(taskId);
+        record.setTaskType(typeOfId(taskId));
+        return record;
+    }
+
+    /**
+     * 从"类型_序号"格式的任务ID中取出任务类型，序号（时间戳或雪花ID）只包含字母和数字；
+     * 不符合该格式时整个ID作为任务类型
+     * @param taskId 任务ID
+     * @return 任务类型
+     */
+    public static String typeOfId(String taskId) {
+        int separator = taskId.lastIndexOf('_');
+        if (separator <= 0 || separator == taskId.length() - 1) {
+            return taskId;
+        }
+        for (int i = separator + 1; i < taskId.length(); i++) {
+            if (!Character.isLetterOrDigit(taskId.charAt(i))) {
+                return taskId;
+            }
+        }
+        return taskId.substring(0, separator);
+    }
+
+    /**
+     * 序列化为紧凑JSON
+     */
+    public String encode() {
+        try {
+            return MAPPER.writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode task record " + id, e);
+        }
+    }
+
+    /**
+     * 从紧凑JSON反序列化，内容为空时返回仅包含ID的记录，无法解析时保留原始内容作为任务数据
+     * @param taskId 任务ID
+     * @param encoded 序列化内容
+     * @return 任务记录
+     */
+    public static TaskRecord decode(String taskId, String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return ofId(taskId);
+        }
+        try {
+            TaskRecord record = MAPPER.readValue(encoded, TaskRecord.class);
+            record.setId(taskId);
+            return record;
+        } catch (JsonProcessingException e) {
+            TaskRecord record = ofId(taskId);
+            record.setPayload(encoded);
+            return record;
+        }
+    }
+}
@@ -164,6 +164,7 @@ public class SystemMonitorService {
     /**
      * 获取队列统计信息
      */
+    @SuppressWarnings("unchecked")
     public Map<String, Object> getQueueStats() {
         Map<String, Object> queueStats = new HashMap<>();
         
@@ -172,9 +173,10 @@ public class SystemMonitorService {
             
             queueStats.put("totalTasks", taskStats.getOrDefault("total", 0L));
             queueStats.put("pendingTasks", taskStats.getOrDefault("pending", 0L));
-            queueStats.put("processingTasks", taskStats.getOrDefault("processing", 0L));
+            queueStats.put("processingTasks", taskStats.getOrDefault("running", 0L));
             queueStats.put("completedTasks", taskStats.getOrDefault("completed", 0L));
             queueStats.put("failedTasks", taskStats.getOrDefault("failed", 0L));
+            queueStats.put("cancelledTasks", taskStats.getOrDefault("cancelled", 0L));
             
             // 计算处理率
             long total = taskStats.getOrDefault("total", 0L);
@@ -182,8 +184,19 @@ public class SystemMonitorService {
             double processingRate = total > 0 ? (double) completed / total * 100 : 0;
             queueStats.put("processingRate", Math.round(processingRate * 100.0) / 100.0);
             
-            // 模拟平均处理时间（实际项目中应该从真实数据计算）
-            queueStats.put("avgProcessingTime", 150 + new Random().nextInt(100));
+            // 处理器执行耗时和触发延迟（毫秒），来自各队列的延迟直方图
+            Map<String, Object> latency = redisDelayQueue.getLatencySummary();
+            Map<String, Object> handler = (Map<String, Object>) latency.get("handler");
+            Map<String, Object> fireLag = (Map<String, Object>) latency.get("fireLag");
+            queueStats.put("avgProcessingTime", handler.get("avgMs"));
+            queueStats.put("processingTimeP50", handler.get("p50Ms"));
+            queueStats.put("processingTimeP90", handler.get("p90Ms"));
+            queueStats.put("processingTimeP99", handler.get("p99Ms"));
+            queueStats.put("processingTimeP999", handler.get("p999Ms"));
+            queueStats.put("fireLagP50", fireLag.get("p50Ms"));
+            queueStats.put("fireLagP90", fireLag.get("p90Ms"));
+            queueStats.put("fireLagP99", fireLag.get("p99Ms"));
+            queueStats.put("fireLagP999", fireLag.get("p999Ms"));
             
         } catch (Exception e) {
             log.error("获取队列统计信息失败", e);
@@ -252,7 +252,10 @@ public class SystemSettingsService {
         return settings;
     }
     
-    private SystemSettingsDTO.QueueSettings getQueueSettings() {
+    /**
+     * 获取队列设置
+     */
+    public SystemSettingsDTO.QueueSettings getQueueSettings() {
         SystemSettingsDTO.QueueSettings settings = new SystemSettingsDTO.QueueSettings();
         settings.setDefaultQueueName(getSettingValue("queue", "defaultQueueName", "default"));
         settings.setMaxRetryCount(Integer.parseInt(getSettingValue("queue", "maxRetryCount", "3")));
@@ -260,6 +263,7 @@ public class SystemSettingsService {
         settings.setBatchSize(Integer.parseInt(getSettingValue("queue", "batchSize", "100")));
         settings.setScanInterval(Integer.parseInt(getSettingValue("queue", "scanInterval", "1000")));
         settings.setEnablePriority(Boolean.parseBoolean(getSettingValue("queue", "enablePriority", "true")));
+        settings.setRateLimits(getSettingValue("queue", "rateLimits", ""));
         return settings;
     }
     
@@ -287,7 +291,10 @@ public class SystemSettingsService {
         return settings;
     }
     
-    private SystemSettingsDTO.PerformanceSettings getPerformanceSettings() {
+    /**
+     * 获取性能优化设置
+     */
+    public SystemSettingsDTO.PerformanceSettings getPerformanceSettings() {
         SystemSettingsDTO.PerformanceSettings settings = new SystemSettingsDTO.PerformanceSettings();
         settings.setThreadPoolSize(Integer.parseInt(getSettingValue("performance", "threadPoolSize", "10")));
         settings.setQueueCapacity(Integer.parseInt(getSettingValue("performance", "queueCapacity", "1000")));
@@ -328,6 +335,7 @@ public class SystemSettingsService {
         saveDefaultSetting("queue", "batchSize", "100", "批处理大小");
         saveDefaultSetting("queue", "scanInterval", "1000", "扫描间隔(ms)");
         saveDefaultSetting("queue", "enablePriority", "true", "启用优先级");
+        saveDefaultSetting("queue", "rateLimits", "", "分发限流规则(type:任务类型=每秒数量/突发, queue:队列名=每秒数量)");
     }
     
     private void initializeSecuritySettings() {
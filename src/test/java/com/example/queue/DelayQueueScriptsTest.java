@@ -0,0 +1,166 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 认领和远期桶提升脚本在真实Redis上的行为
+ */
+class DelayQueueScriptsTest extends EmbeddedRedisSupport {
+
+    private static final String SHARD = "{test}";
+    private static final String HIGH = TaskPriority.HIGH.laneKey(SHARD);
+    private static final String NORMAL = TaskPriority.NORMAL.laneKey(SHARD);
+    private static final String LOW = TaskPriority.LOW.laneKey(SHARD);
+    private static final String INFLIGHT = QueueRuntime.inflightKeyOf(SHARD);
+    private static final String DATA = QueueRuntime.dataKeyOf(SHARD);
+    private static final String STATS = QueueRuntime.statsKeyOf(SHARD);
+    private static final long LEASE_MS = 30000;
+
+    @Test
+    void claimTakesLaneReservesBeforeFillingFromHigh() {
+        long now = 1_000_000L;
+        for (int i = 0; i < 10; i++) {
+            redisTemplate.opsForZSet().add(HIGH, "high-" + i, now - 100 + i);
+            redisTemplate.opsForZSet().add(NORMAL, "normal-" + i, now - 100 + i);
+            redisTemplate.opsForZSet().add(LOW, "low-" + i, now - 100 + i);
+        }
+
+        List<Object> raw = claim(now, 5, 1, 1, now);
+
+        assertThat(membersOf(raw)).containsExactly("high-0", "high-1", "high-2", "normal-0", "low-0");
+        assertThat(redisTemplate.opsForZSet().zCard(HIGH)).isEqualTo(7);
+        assertThat(redisTemplate.opsForZSet().zCard(NORMAL)).isEqualTo(9);
+        assertThat(redisTemplate.opsForZSet().zCard(LOW)).isEqualTo(9);
+        assertThat(redisTemplate.opsForZSet().zCard(INFLIGHT)).isEqualTo(5);
+        assertThat(redisTemplate.opsForHash().get(STATS, "claimed")).isEqualTo("5");
+    }
+
+    @Test
+    void claimFillsFromLowerLanesWhenHigherLanesAreEmpty() {
+        long now = 1_000_000L;
+        redisTemplate.opsForZSet().add(NORMAL, "normal-0", now - 10);
+        for (int i = 0; i < 5; i++) {
+            redisTemplate.opsForZSet().add(LOW, "low-" + i, now - 10 + i);
+        }
+
+        List<Object> raw = claim(now, 4, 2, 1, now);
+
+        assertThat(membersOf(raw)).containsExactly("normal-0", "low-0", "low-1", "low-2");
+    }
+
+    @Test
+    void claimLeasesFromTheLaterOfExecuteTimeAndNow() {
+        long now = 1_000_000L;
+        redisTemplate.opsForZSet().add(NORMAL, "overdue", now - 5000);
+        // 认领截止时间包含提前量，尚未到期的任务租约从执行时间算起
+        redisTemplate.opsForZSet().add(NORMAL, "ahead", now + 500);
+        redisTemplate.opsForHash().put(DATA, "overdue", "{\"taskType\":\"email\"}");
+
+        List<Object> raw = claim(now + 1000, 10, 0, 0, now);
+
+        assertThat(membersOf(raw)).containsExactly("overdue", "ahead");
+        assertThat(raw.get(2)).isEqualTo("{\"taskType\":\"email\"}");
+        assertThat(raw.get(5)).isEqualTo("");
+        assertThat(redisTemplate.opsForZSet().score(INFLIGHT, "overdue")).isEqualTo((double) (now + LEASE_MS));
+        assertThat(redisTemplate.opsForZSet().score(INFLIGHT, "ahead")).isEqualTo((double) (now + 500 + LEASE_MS));
+        // 任务记录保留到确认为止
+        assertThat(redisTemplate.opsForHash().hasKey(DATA, "overdue")).isTrue();
+    }
+
+    @Test
+    void claimReturnsEarliestRemainingScoreAcrossLanes() {
+        long now = 1_000_000L;
+        redisTemplate.opsForZSet().add(HIGH, "due", now - 1);
+        redisTemplate.opsForZSet().add(HIGH, "high-later", now + 9000);
+        redisTemplate.opsForZSet().add(LOW, "low-later", now + 3000);
+
+        List<Object> raw = claim(now, 10, 0, 0, now);
+
+        assertThat(membersOf(raw)).containsExactly("due");
+        assertThat(Double.parseDouble(raw.get(raw.size() - 1).toString())).isEqualTo((double) (now + 3000));
+    }
+
+    @Test
+    void claimOnEmptyQueueReturnsOnlyAnEmptyNextScore() {
+        List<Object> raw = claim(1_000_000L, 10, 1, 1, 1_000_000L);
+
+        assertThat(raw).containsExactly("");
+        assertThat(redisTemplate.hasKey(STATS)).isFalse();
+    }
+
+    @Test
+    void promoteBucketMovesTasksWithTheirScoresInChunks() {
+        String bucket = QueueRuntime.bucketKeyOf(LOW, 3_600_000L);
+        String index = QueueRuntime.bucketIndexKeyOf(SHARD);
+        redisTemplate.opsForZSet().add(bucket, "a", 3_600_100);
+        redisTemplate.opsForZSet().add(bucket, "b", 3_600_200);
+        redisTemplate.opsForZSet().add(bucket, "c", 3_600_300);
+        redisTemplate.opsForZSet().add(index, bucket, 3_600_000);
+        redisTemplate.opsForHash().put(STATS, "bucketed", "3");
+        List<String> keys = Arrays.asList(bucket, LOW, index, STATS);
+
+        Long first = redisTemplate.execute(DelayQueueScripts.PROMOTE_BUCKET, keys, "2");
+
+        assertThat(first).isEqualTo(2L);
+        assertThat(redisTemplate.opsForZSet().score(LOW, "a")).isEqualTo(3_600_100D);
+        assertThat(redisTemplate.opsForZSet().score(LOW, "b")).isEqualTo(3_600_200D);
+        assertThat(redisTemplate.opsForZSet().range(index, 0, -1)).containsExactly(bucket);
+        assertThat(redisTemplate.opsForHash().get(STATS, "bucketed")).isEqualTo("1");
+
+        Long second = redisTemplate.execute(DelayQueueScripts.PROMOTE_BUCKET, keys, "2");
+
+        assertThat(second).isEqualTo(1L);
+        assertThat(redisTemplate.opsForZSet().zCard(LOW)).isEqualTo(3);
+        assertThat(redisTemplate.hasKey(bucket)).isFalse();
+        assertThat(redisTemplate.opsForZSet().zCard(index)).isZero();
+        assertThat(redisTemplate.opsForHash().get(STATS, "bucketed")).isEqualTo("0");
+    }
+
+    @Test
+    void promoteBucketDropsAnEmptyBucketFromTheIndex() {
+        String bucket = QueueRuntime.bucketKeyOf(NORMAL, 7_200_000L);
+        String index = QueueRuntime.bucketIndexKeyOf(SHARD);
+        redisTemplate.opsForZSet().add(index, bucket, 7_200_000);
+
+        Long moved = redisTemplate.execute(DelayQueueScripts.PROMOTE_BUCKET, Arrays.asList(bucket, NORMAL, index, STATS), "10");
+
+        assertThat(moved).isZero();
+        Set<ZSetOperations.TypedTuple<String>> remaining = redisTemplate.opsForZSet().rangeWithScores(index, 0, -1);
+        assertThat(remaining).isEmpty();
+    }
+
+    @Test
+    void laneReserveRoundsDownAndKeepsLongRunShareForSmallBatches() {
+        assertThat(QueueRuntime.laneReserve(100, 0.2, 0)).isEqualTo(20);
+        assertThat(QueueRuntime.laneReserve(100, 0, 0)).isZero();
+        // 2 * 0.1 向下取整为0：每10轮保底1个
+        int reserved = 0;
+        for (long cycle = 0; cycle < 100; cycle++) {
+            reserved += QueueRuntime.laneReserve(2, 0.1, cycle);
+        }
+        assertThat(reserved).isEqualTo(10);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> claim(long cutoff, int limit, int normalReserve, int lowReserve, long now) {
+        return redisTemplate.execute(DelayQueueScripts.CLAIM_DUE, Arrays.asList(HIGH, NORMAL, LOW, INFLIGHT, DATA, STATS),
+                String.valueOf(cutoff), String.valueOf(limit), String.valueOf(normalReserve), String.valueOf(lowReserve),
+                String.valueOf(now), String.valueOf(LEASE_MS));
+    }
+
+    private static List<String> membersOf(List<Object> raw) {
+        List<String> members = new ArrayList<>();
+        for (int i = 0; i + 1 < raw.size(); i += 3) {
+            members.add(raw.get(i).toString());
+        }
+        return members;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 在随机端口上启动嵌入式Redis，每个测试前清空数据
+ */
+abstract class EmbeddedRedisSupport {
+
+    static RedisServer server;
+    static LettuceConnectionFactory connectionFactory;
+    static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new RedisServer(port);
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @BeforeEach
+    void flushRedis() {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.flushAll();
+        }
+    }
+
+    /**
+     * 只提供队列运行时需要的配置，不启动轮询线程
+     */
+    static RedisDelayQueue ownerOf(boolean hashTaggedKeys) {
+        RedisDelayQueue owner = mock(RedisDelayQueue.class);
+        when(owner.getRedisTemplate()).thenReturn(redisTemplate);
+        when(owner.isHashTaggedKeys()).thenReturn(hashTaggedKeys);
+        when(owner.isPriorityEnabled()).thenReturn(true);
+        when(owner.getBatchSize()).thenReturn(100);
+        when(owner.getCancelRetentionMs()).thenReturn(86400000L);
+        return owner;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EnqueueJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private EnqueueJournal journal;
+
+    @AfterEach
+    void closeJournal() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void entriesAreReadBackInWriteOrder() throws IOException {
+        journal = open(SEGMENT_SIZE);
+        journal.append("email_1", "delay:idem:default:k1", 1000, "{\"taskType\":\"email\"}");
+        journal.append("email_2", null, 2000, "{}");
+
+        List<EnqueueJournal.Entry> entries = journal.peek(10);
+
+        assertThat(entries).extracting(EnqueueJournal.Entry::getTaskId).containsExactly("email_1", "email_2");
+        assertThat(entries.get(0).getDedupKey()).isEqualTo("delay:idem:default:k1");
+        assertThat(entries.get(0).getExecuteTime()).isEqualTo(1000);
+        assertThat(entries.get(0).getEncodedRecord()).isEqualTo("{\"taskType\":\"email\"}");
+        assertThat(entries.get(1).getDedupKey()).isNull();
+        assertThat(journal.pending()).isEqualTo(2);
+    }
+
+    @Test
+    void restartMidSegmentResumesAfterTheLastCommittedEntry() throws IOException {
+        journal = open(SEGMENT_SIZE);
+        for (int i = 1; i <= 4; i++) {
+            journal.append("email_" + i, null, i, "{}");
+        }
+        List<EnqueueJournal.Entry> entries = journal.peek(2);
+        journal.commit(entries.get(0));
+        journal.commit(entries.get(1));
+        journal.close();
+
+        journal = open(SEGMENT_SIZE);
+        assertThat(journal.pending()).isEqualTo(2);
+        journal.append("email_5", null, 5, "{}");
+
+        assertThat(taskIds(journal.peek(10))).containsExactly("email_3", "email_4", "email_5");
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    @Test
+    void corruptTailEntryIsTruncatedAndOverwritten() throws IOException {
+        journal = open(SEGMENT_SIZE);
+        journal.append("email_1", null, 1, "{}");
+        journal.append("email_2", null, 2, "{}");
+        journal.close();
+        journal = null;
+        Path segment = segmentFiles().get(0);
+        // 第二个条目内容损坏：校验和不匹配
+        int second = 8 + 8 + entryLength(segment, 8);
+        overwrite(segment, second + 8 + 2, new byte[]{0x7f, 0x7f});
+
+        journal = open(SEGMENT_SIZE);
+        assertThat(journal.pending()).isEqualTo(1);
+        journal.append("email_3", null, 3, "{}");
+
+        assertThat(taskIds(journal.peek(10))).containsExactly("email_1", "email_3");
+    }
+
+    @Test
+    void tornTailWithLengthButIncompleteContentIsIgnored() throws IOException {
+        journal = open(SEGMENT_SIZE);
+        journal.append("email_1", null, 1, "{}");
+        journal.close();
+        journal = null;
+        Path segment = segmentFiles().get(0);
+        int tail = 8 + 8 + entryLength(segment, 8);
+        // 长度已写入，但校验和与内容仍是旧值（全零）
+        overwrite(segment, tail, ByteBuffer.allocate(4).putInt(40).array());
+
+        journal = open(SEGMENT_SIZE);
+        assertThat(journal.pending()).isEqualTo(1);
+        journal.append("email_2", null, 2, "{}");
+        journal.close();
+
+        journal = open(SEGMENT_SIZE);
+        assertThat(taskIds(journal.peek(10))).containsExactly("email_1", "email_2");
+    }
+
+    @Test
+    void replayedSegmentsAreDeletedOnceTheWriterHasRolledPastThem() throws IOException {
+        journal = open(256);
+        for (int i = 1; i <= 20; i++) {
+            journal.append("email_" + i, null, i, "{\"taskType\":\"email\"}");
+        }
+        int segmentsBefore = segmentFiles().size();
+        assertThat(segmentsBefore).isGreaterThan(2);
+
+        List<EnqueueJournal.Entry> entries = journal.peek(100);
+        assertThat(taskIds(entries)).hasSize(20).startsWith("email_1").endsWith("email_20");
+        for (EnqueueJournal.Entry entry : entries.subList(0, 10)) {
+            journal.commit(entry);
+        }
+        int segmentsAfterHalf = segmentFiles().size();
+        assertThat(segmentsAfterHalf).isLessThan(segmentsBefore);
+
+        journal.close();
+        journal = open(256);
+        assertThat(journal.pending()).isEqualTo(10);
+        entries = journal.peek(100);
+        assertThat(taskIds(entries)).startsWith("email_11").endsWith("email_20");
+        entries.forEach(journal::commit);
+
+        // 当前写入段保留，其余已重放的段全部删除
+        assertThat(journal.pending()).isZero();
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(journal.peek(10)).isEmpty();
+    }
+
+    @Test
+    void rollDeletesAFullyReplayedWriteSegment() throws IOException {
+        journal = open(256);
+        // 一个条目占去大半个分段，下一个条目写入时换段
+        String record = "{\"payload\":\"" + "x".repeat(130) + "\"}";
+        journal.append("email_1", null, 1, record);
+        journal.peek(1).forEach(journal::commit);
+        Path first = segmentFiles().get(0);
+
+        journal.append("email_2", null, 2, record);
+
+        assertThat(Files.exists(first)).isFalse();
+        assertThat(segmentFiles()).hasSize(1);
+        assertThat(taskIds(journal.peek(10))).containsExactly("email_2");
+    }
+
+    private EnqueueJournal open(int segmentSize) throws IOException {
+        return new EnqueueJournal(directory, segmentSize, 60_000);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> taskIds(List<EnqueueJournal.Entry> entries) {
+        List<String> ids = new ArrayList<>();
+        entries.forEach(entry -> ids.add(entry.getTaskId()));
+        return ids;
+    }
+
+    private static int entryLength(Path segment, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            channel.read(buffer, offset);
+            buffer.flip();
+            return buffer.getInt();
+        }
+    }
+
+    private static void overwrite(Path segment, int offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+}
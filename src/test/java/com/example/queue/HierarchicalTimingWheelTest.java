@@ -0,0 +1,80 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HierarchicalTimingWheelTest {
+
+    private final List<ClaimedTask> fired = new CopyOnWriteArrayList<>();
+    private CountDownLatch latch = new CountDownLatch(0);
+    private final HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, 8, task -> {
+        fired.add(task);
+        latch.countDown();
+    });
+
+    @AfterEach
+    void stopWheel() {
+        wheel.stop();
+    }
+
+    @Test
+    void rejectsTasksThatAreAlreadyDue() {
+        // 早于时间轮当前时钟（创建时间）的任务
+        assertThat(wheel.add(task("due", System.currentTimeMillis() - 60_000))).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void firesTasksInExecuteTimeOrderAcrossOverflowLevels() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        latch = new CountDownLatch(3);
+        // 8 个 1ms 槽位的最底层只覆盖 8ms，100ms 和 300ms 的任务先进入溢出轮再逐层降级
+        assertThat(wheel.add(task("late", now + 300))).isTrue();
+        assertThat(wheel.add(task("near", now + 5))).isTrue();
+        assertThat(wheel.add(task("middle", now + 100))).isTrue();
+        assertThat(wheel.size()).isEqualTo(3);
+        wheel.start("timing-wheel-test");
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(fired).extracting(ClaimedTask::getTaskId).containsExactly("near", "middle", "late");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void doesNotFireBeforeTheExecuteTime() throws InterruptedException {
+        long executeTime = System.currentTimeMillis() + 150;
+        latch = new CountDownLatch(1);
+        wheel.add(task("task", executeTime));
+        wheel.start("timing-wheel-test");
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(executeTime);
+    }
+
+    @Test
+    void stopReturnsTasksThatHaveNotFired() {
+        long now = System.currentTimeMillis();
+        wheel.add(task("a", now + 60_000));
+        wheel.add(task("b", now + 3_600_000));
+        wheel.start("timing-wheel-test");
+
+        List<ClaimedTask> remaining = wheel.stop();
+
+        assertThat(remaining).extracting(ClaimedTask::getTaskId).containsExactlyInAnyOrder("a", "b");
+        assertThat(fired).isEmpty();
+        assertThat(wheel.size()).isZero();
+    }
+
+    private static ClaimedTask task(String taskId, long executeTime) {
+        return new ClaimedTask(taskId, executeTime, TaskRecord.ofId(taskId));
+    }
+}
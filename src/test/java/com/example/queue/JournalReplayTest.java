@@ -0,0 +1,112 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * 本地入队日志重放到Redis时依靠入队标记去重
+ */
+class JournalReplayTest extends EmbeddedRedisSupport {
+
+    @TempDir
+    Path directory;
+
+    private QueueRuntime queue;
+    private EnqueueJournal journal;
+
+    @BeforeEach
+    void createQueue() throws IOException {
+        RedisDelayQueue owner = ownerOf(true);
+        when(owner.getJournalMarkerSeconds()).thenReturn(3600L);
+        queue = new QueueRuntime(owner, "default", "delay:queue", 2, 1, 1, 0);
+        journal = new EnqueueJournal(directory, 4096, 60_000);
+    }
+
+    @AfterEach
+    void closeJournal() {
+        journal.close();
+    }
+
+    @Test
+    void writeThatReachedRedisBeforeTheTimeoutIsNotReplayedAgain() throws IOException {
+        long executeTime = System.currentTimeMillis() + 3_600_000;
+        TaskRecord record = record("email_1");
+        // 写入实际已成功，但客户端超时后又写入了本地日志
+        queue.schedule("email_1", executeTime, record);
+        journal.append("email_1", null, executeTime, record.encode());
+        // 重放前任务已被认领并执行完毕
+        String shardKey = queue.shardKeyOf("email_1");
+        redisTemplate.opsForZSet().remove(TaskPriority.NORMAL.laneKey(shardKey), "email_1");
+        redisTemplate.opsForHash().delete(QueueRuntime.dataKeyOf(shardKey), "email_1");
+
+        assertThat(replay()).isZero();
+
+        assertThat(redisTemplate.opsForZSet().score(TaskPriority.NORMAL.laneKey(shardKey), "email_1")).isNull();
+        assertThat(redisTemplate.opsForHash().hasKey(QueueRuntime.dataKeyOf(shardKey), "email_1")).isFalse();
+        assertThat(journal.pending()).isZero();
+    }
+
+    @Test
+    void journaledTaskIsWrittenOnceEvenWhenReplayedTwice() throws IOException {
+        long executeTime = System.currentTimeMillis() + 3_600_000;
+        journal.append("email_2", null, executeTime, record("email_2").encode());
+        List<EnqueueJournal.Entry> entries = journal.peek(10);
+        String shardKey = queue.shardKeyOf("email_2");
+
+        assertThat(queue.scheduleIfAbsent("email_2", executeTime, record("email_2"))).isTrue();
+        // 写入成功后、提交重放偏移量前进程退出，重启后再次重放同一条目
+        assertThat(replay()).isZero();
+
+        assertThat(entries).hasSize(1);
+        assertThat(redisTemplate.opsForZSet().score(TaskPriority.NORMAL.laneKey(shardKey), "email_2"))
+                .isEqualTo((double) executeTime);
+        assertThat(redisTemplate.hasKey(QueueRuntime.markerKeyOf(shardKey, "email_2"))).isTrue();
+    }
+
+    @Test
+    void taskThatNeverReachedRedisIsReplayedAtItsExecuteTime() throws IOException {
+        long executeTime = System.currentTimeMillis() + 3_600_000;
+        journal.append("email_3", null, executeTime, record("email_3").encode());
+
+        assertThat(replay()).isEqualTo(1);
+
+        String shardKey = queue.shardKeyOf("email_3");
+        assertThat(redisTemplate.opsForZSet().score(TaskPriority.NORMAL.laneKey(shardKey), "email_3"))
+                .isEqualTo((double) executeTime);
+        assertThat(journal.pending()).isZero();
+    }
+
+    /**
+     * 与 RedisDelayQueue.replayJournal 相同：逐条写入后提交重放偏移量
+     * @return 实际写入的任务数
+     */
+    private int replay() {
+        int written = 0;
+        List<EnqueueJournal.Entry> entries;
+        while (!(entries = journal.peek(100)).isEmpty()) {
+            for (EnqueueJournal.Entry entry : entries) {
+                TaskRecord record = TaskRecord.decode(entry.getTaskId(), entry.getEncodedRecord());
+                if (queue.scheduleIfAbsent(entry.getTaskId(), entry.getExecuteTime(), record)) {
+                    written++;
+                }
+                journal.commit(entry);
+            }
+        }
+        return written;
+    }
+
+    private static TaskRecord record(String taskId) {
+        TaskRecord record = TaskRecord.ofId(taskId);
+        record.setQueueName("default");
+        return record;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        Map<String, Object> summary = new LatencyHistogram().summary();
+
+        assertThat(summary).containsEntry("count", 0L).containsEntry("avgMs", 0.0).containsEntry("maxMs", 0.0)
+                .containsEntry("p50Ms", 0.0).containsEntry("p999Ms", 0.0);
+    }
+
+    @Test
+    void smallValuesAreRecordedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 10; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+
+        Map<String, Object> summary = histogram.summary();
+
+        assertThat(summary).containsEntry("count", 11L).containsEntry("maxMs", 9.0);
+        // 平均值 45000 / 11 微秒，四舍五入到微秒
+        assertThat(summary).containsEntry("avgMs", 4.091);
+    }
+
+    @Test
+    void percentilesStayWithinOneSixteenthOfTheRecordedValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros);
+        }
+
+        Map<String, Object> summary = histogram.summary();
+
+        assertThat((double) summary.get("p50Ms")).isCloseTo(50.0, within(50.0 / 16));
+        assertThat((double) summary.get("p90Ms")).isCloseTo(90.0, within(90.0 / 16));
+        assertThat((double) summary.get("p99Ms")).isCloseTo(99.0, within(99.0 / 16));
+        assertThat((double) summary.get("p999Ms")).isLessThanOrEqualTo(100.0);
+        assertThat(summary).containsEntry("maxMs", 100.0);
+    }
+
+    @Test
+    void percentileNeverExceedsTheRecordedMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_001);
+
+        assertThat(histogram.summary()).containsEntry("p50Ms", 1000.001).containsEntry("maxMs", 1000.001);
+    }
+
+    @Test
+    void mergeAddsCountsAndKeepsTheLargerMaximum() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            fast.record(1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.record(500_000);
+        }
+        LatencyHistogram total = new LatencyHistogram();
+
+        fast.mergeInto(total);
+        slow.mergeInto(total);
+
+        Map<String, Object> summary = total.summary();
+        assertThat(total.getCount()).isEqualTo(100);
+        assertThat(summary).containsEntry("maxMs", 500.0);
+        assertThat((double) summary.get("p50Ms")).isCloseTo(1.0, within(1.0 / 16));
+        assertThat((double) summary.get("p99Ms")).isCloseTo(500.0, within(500.0 / 16));
+        assertThat(fast.getCount()).isEqualTo(90);
+    }
+}
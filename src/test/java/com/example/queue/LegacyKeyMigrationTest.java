@@ -0,0 +1,74 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LegacyKeyMigrationTest extends EmbeddedRedisSupport {
+
+    @Test
+    void rewritesJacksonQuotedMembersInPlace() {
+        QueueRuntime queue = new QueueRuntime(ownerOf(false), "default", "delay:queue", 1, 1, 1, 0);
+        redisTemplate.opsForZSet().add("delay:queue", "\"email_1\"", 5000);
+        redisTemplate.opsForZSet().add("delay:queue", "\"email_2\"", Double.MAX_VALUE);
+        redisTemplate.opsForZSet().add("delay:queue", "sms_3", 6000);
+
+        long migrated = new LegacyKeyMigration(redisTemplate).migrate(queue, "delay:queue", 1);
+
+        assertThat(migrated).isEqualTo(1);
+        assertThat(redisTemplate.opsForZSet().range("delay:queue", 0, -1)).containsExactly("email_1", "sms_3");
+        assertThat(redisTemplate.opsForZSet().score("delay:queue", "email_1")).isEqualTo(5000D);
+        Object record = redisTemplate.opsForHash().get(QueueRuntime.dataKeyOf("delay:queue"), "email_1");
+        assertThat(TaskRecord.decode("email_1", record.toString()).getTaskType()).isEqualTo("email");
+    }
+
+    @Test
+    void movesTheSingleKeyOntoShardsAndRunsOnlyOnce() {
+        QueueRuntime queue = new QueueRuntime(ownerOf(true), "default", "delay:queue", 2, 1, 1, 0);
+        redisTemplate.opsForZSet().add("delay:queue", "\"email_1\"", 5000);
+        redisTemplate.opsForZSet().add("delay:queue", "\"email_2\"", 7000);
+        LegacyKeyMigration migration = new LegacyKeyMigration(redisTemplate);
+
+        assertThat(migration.migrate(queue, "delay:queue", 2)).isEqualTo(2);
+        redisTemplate.opsForZSet().add("delay:queue", "\"email_3\"", 8000);
+        assertThat(migration.migrate(queue, "delay:queue", 2)).isZero();
+
+        assertThat(redisTemplate.opsForZSet().score(queue.shardKeyOf("email_1"), "email_1")).isEqualTo(5000D);
+        assertThat(redisTemplate.opsForZSet().score(queue.shardKeyOf("email_2"), "email_2")).isEqualTo(7000D);
+        assertThat(redisTemplate.opsForZSet().range("delay:queue", 0, -1)).containsExactly("\"email_3\"");
+    }
+
+    @Test
+    void movesInflightStreamDeadAndCancelledEntriesOfUnhashedShards() {
+        QueueRuntime queue = new QueueRuntime(ownerOf(true), "default", "delay:queue", 1, 1, 1, 0);
+        String legacy = "delay:queue";
+        String current = queue.getShardKeys().get(0);
+        String record = TaskRecord.ofId("email_1").encode();
+        for (String taskId : new String[]{"email_1", "email_2", "email_3", "email_4"}) {
+            redisTemplate.opsForHash().put(QueueRuntime.dataKeyOf(legacy), taskId, record.replace("email_1", taskId));
+        }
+        redisTemplate.opsForZSet().add(QueueRuntime.inflightKeyOf(legacy), "email_1", 99_999_999_999_999D);
+        redisTemplate.opsForStream().add(QueueRuntime.streamKeyOf(legacy), Collections.singletonMap("id", "email_2"));
+        redisTemplate.opsForZSet().add(QueueRuntime.deadKeyOf(legacy), "email_3", 1000);
+        redisTemplate.opsForZSet().add(QueueRuntime.cancelledKeyOf(legacy), "email_4", 2000);
+
+        long before = System.currentTimeMillis();
+        long migrated = new LegacyKeyMigration(redisTemplate).migrate(queue, legacy, 1);
+
+        assertThat(migrated).isEqualTo(2);
+        // 执行中的任务立即放回通道，不沿用租约到期时间
+        assertThat(redisTemplate.opsForZSet().score(current, "email_1")).isBetween((double) before, (double) System.currentTimeMillis());
+        assertThat(redisTemplate.opsForZSet().score(current, "email_2")).isNotNull();
+        assertThat(redisTemplate.opsForZSet().score(QueueRuntime.deadKeyOf(current), "email_3")).isEqualTo(1000D);
+        assertThat(redisTemplate.opsForZSet().score(QueueRuntime.cancelledKeyOf(current), "email_4")).isEqualTo(2000D);
+        assertThat(redisTemplate.opsForHash().keys(QueueRuntime.dataKeyOf(current)))
+                .containsExactlyInAnyOrder("email_1", "email_2", "email_3", "email_4");
+        assertThat(redisTemplate.hasKey(QueueRuntime.inflightKeyOf(legacy))).isFalse();
+        assertThat(redisTemplate.hasKey(QueueRuntime.streamKeyOf(legacy))).isFalse();
+        assertThat(redisTemplate.hasKey(QueueRuntime.deadKeyOf(legacy))).isFalse();
+        assertThat(redisTemplate.hasKey(QueueRuntime.cancelledKeyOf(legacy))).isFalse();
+        assertThat(redisTemplate.hasKey(QueueRuntime.dataKeyOf(legacy))).isFalse();
+    }
+}
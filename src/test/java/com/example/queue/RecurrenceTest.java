@@ -0,0 +1,94 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecurrenceTest {
+
+    @Test
+    void parsesCaseInsensitivelyAndTreatsBlankAsOneOff() {
+        assertThat(Recurrence.of(" fixed_rate ")).isEqualTo(Recurrence.FIXED_RATE);
+        assertThat(Recurrence.of("Cron")).isEqualTo(Recurrence.CRON);
+        assertThat(Recurrence.of("")).isNull();
+        assertThat(Recurrence.of(null)).isNull();
+        assertThatThrownBy(() -> Recurrence.of("hourly")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void validateNormalizesTheNameAndChecksParameters() {
+        TaskRecord record = record("fixed_delay", 1000L, null);
+        Recurrence.validate(record);
+        assertThat(record.getRecurrence()).isEqualTo("FIXED_DELAY");
+
+        assertThatThrownBy(() -> Recurrence.validate(record("FIXED_RATE", 0L, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Recurrence.validate(record("FIXED_RATE", null, null)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Recurrence.validate(record("CRON", null, "* * *")))
+                .isInstanceOf(IllegalArgumentException.class);
+        Recurrence.validate(record(null, null, null));
+    }
+
+    @Test
+    void fixedRateKeepsThePhaseAndSkipsMissedPeriods() {
+        TaskRecord record = record("FIXED_RATE", 1000L, null);
+
+        assertThat(Recurrence.nextRunTime(record, 10_000, 10_200)).isEqualTo(11_000);
+        // 执行超过三个周期，跳过错过的周期，不补发
+        assertThat(Recurrence.nextRunTime(record, 10_000, 13_500)).isEqualTo(14_000);
+        assertThat(Recurrence.nextRunTime(record, 10_000, 11_000)).isEqualTo(12_000);
+    }
+
+    @Test
+    void fixedDelayCountsFromTheEndOfTheRun() {
+        TaskRecord record = record("FIXED_DELAY", 1000L, null);
+
+        assertThat(Recurrence.nextRunTime(record, 10_000, 13_500)).isEqualTo(14_500);
+    }
+
+    @Test
+    void cronTakesTheNextMatchAfterScheduledTimeAndNow() {
+        TaskRecord record = record("CRON", null, "0 0 * * * *");
+        long nineOClock = epochMillis(LocalDateTime.of(2026, 1, 1, 9, 0));
+
+        assertThat(Recurrence.nextRunTime(record, nineOClock, nineOClock + 5_000))
+                .isEqualTo(epochMillis(LocalDateTime.of(2026, 1, 1, 10, 0)));
+        assertThat(Recurrence.nextRunTime(record, nineOClock, epochMillis(LocalDateTime.of(2026, 1, 1, 12, 30))))
+                .isEqualTo(epochMillis(LocalDateTime.of(2026, 1, 1, 13, 0)));
+    }
+
+    @Test
+    void firstRunTimeAlignsCronToTheFirstMatchNotBeforeEarliest() {
+        TaskRecord cron = record("CRON", null, "0 0 * * * *");
+        long tenOClock = epochMillis(LocalDateTime.of(2026, 1, 1, 10, 0));
+
+        assertThat(Recurrence.firstRunTime(cron, tenOClock)).isEqualTo(tenOClock);
+        assertThat(Recurrence.firstRunTime(cron, tenOClock + 1)).isEqualTo(tenOClock + 3_600_000);
+        assertThat(Recurrence.firstRunTime(record("FIXED_RATE", 1000L, null), tenOClock + 1)).isEqualTo(tenOClock + 1);
+        assertThat(Recurrence.firstRunTime(null, tenOClock)).isEqualTo(tenOClock);
+    }
+
+    @Test
+    void oneOffAndUnknownRecurrenceHaveNoNextRun() {
+        assertThat(Recurrence.nextRunTime(record(null, null, null), 10_000, 10_500)).isNull();
+        assertThat(Recurrence.nextRunTime(record("weekly", 1000L, null), 10_000, 10_500)).isNull();
+        assertThat(Recurrence.nextRunTime(null, 10_000, 10_500)).isNull();
+    }
+
+    private static TaskRecord record(String recurrence, Long intervalMs, String cron) {
+        TaskRecord record = TaskRecord.ofId("report_1");
+        record.setRecurrence(recurrence);
+        record.setIntervalMs(intervalMs);
+        record.setCron(cron);
+        return record;
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 配置了节点ID的生成器不访问Redis
+ */
+class SnowflakeTaskIdGeneratorTest {
+
+    @Test
+    void idsArePrefixedWithTheTaskType() {
+        SnowflakeTaskIdGenerator generator = new SnowflakeTaskIdGenerator(null, 7, 60);
+
+        String id = generator.nextId("email");
+
+        assertThat(id).startsWith("email_");
+        assertThat(id.substring("email_".length())).matches("[0-9a-z]{1,13}");
+    }
+
+    @Test
+    void idsEncodeTheNodeIdAndIncreaseMonotonically() {
+        SnowflakeTaskIdGenerator generator = new SnowflakeTaskIdGenerator(null, 513, 60);
+        long previous = -1;
+        for (int i = 0; i < 10_000; i++) {
+            long id = generator.nextLong();
+            assertThat(id).isGreaterThan(previous);
+            assertThat((id >>> 12) & 1023).isEqualTo(513);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreadsAndSequenceOverflow() throws InterruptedException {
+        SnowflakeTaskIdGenerator generator = new SnowflakeTaskIdGenerator(null, 1, 60);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                // 每个线程生成的数量超过单毫秒 4096 个序号
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextLong());
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(ids).hasSize(40_000);
+    }
+
+    @Test
+    void differentNodesNeverCollide() {
+        SnowflakeTaskIdGenerator first = new SnowflakeTaskIdGenerator(null, 0, 60);
+        SnowflakeTaskIdGenerator second = new SnowflakeTaskIdGenerator(null, 1, 60);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 5_000; i++) {
+            ids.add(first.nextLong());
+            ids.add(second.nextLong());
+        }
+
+        assertThat(ids).hasSize(10_000);
+    }
+
+    @Test
+    void rejectsNodeIdsOutOfRange() {
+        assertThatThrownBy(() -> new SnowflakeTaskIdGenerator(null, 1024, 60))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void configuredNodeIdSkipsLeaseRenewalAndRelease() {
+        SnowflakeTaskIdGenerator generator = new SnowflakeTaskIdGenerator(null, 3, 60);
+
+        generator.renewNodeLease();
+        generator.releaseNodeLease();
+
+        assertThat(generator.nodeId()).isEqualTo(3);
+    }
+}